@@ -0,0 +1,97 @@
+package org.cano.junitapp.ejemplo.benchmarks;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Transferencias entre cuentas elegidas con distribucion uniforme o Zipf (cuentas calientes)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancoBenchmark {
+    private static final BigDecimal MONTO = BigDecimal.ONE;
+
+    @Param({"10000"})
+    int cuentas;
+
+    @Param({"UNIFORME", "ZIPF"})
+    String distribucion;
+
+    Banco banco;
+    Cuenta[] arreglo;
+    DistribucionZipf zipf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        banco = new Banco();
+        arreglo = new Cuenta[cuentas];
+        for (int i = 0; i < cuentas; i++) {
+            arreglo[i] = new Cuenta("Persona" + i, new BigDecimal("1000000000"));
+            banco.addCuenta(arreglo[i]);
+        }
+        zipf = "ZIPF".equals(distribucion) ? new DistribucionZipf(cuentas, 1.0) : null;
+    }
+
+    //Los pares origen/destino se generan antes de medir para no medir el generador aleatorio
+    @State(Scope.Thread)
+    public static class Pares {
+        private static final int TAMANIO = 1 << 16;
+        int[] origenes = new int[TAMANIO];
+        int[] destinos = new int[TAMANIO];
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(BancoBenchmark estado) {
+            SplittableRandom aleatorio = new SplittableRandom(Thread.currentThread().getId());
+            for (int i = 0; i < TAMANIO; i++) {
+                origenes[i] = elegir(estado, aleatorio);
+                do {
+                    destinos[i] = elegir(estado, aleatorio);
+                } while (destinos[i] == origenes[i]);
+            }
+        }
+
+        private static int elegir(BancoBenchmark estado, SplittableRandom aleatorio) {
+            return estado.zipf != null ? estado.zipf.siguiente(aleatorio) : aleatorio.nextInt(estado.cuentas);
+        }
+
+        int siguiente() {
+            cursor = (cursor + 1) & (TAMANIO - 1);
+            return cursor;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResultadoOperacion transferir(Pares pares) {
+        int i = pares.siguiente();
+        return banco.tryTransferir(arreglo[pares.origenes[i]], arreglo[pares.destinos[i]], MONTO);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResultadoOperacion transferirContendido(Pares pares) {
+        int i = pares.siguiente();
+        return banco.tryTransferir(arreglo[pares.origenes[i]], arreglo[pares.destinos[i]], MONTO);
+    }
+}
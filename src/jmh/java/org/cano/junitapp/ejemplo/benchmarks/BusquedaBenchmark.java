@@ -0,0 +1,67 @@
+package org.cano.junitapp.ejemplo.benchmarks;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Busqueda de cuentas por id y por persona con bancos de distintos tamanios
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BusquedaBenchmark {
+    private static final int CLAVES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    int cuentas;
+
+    Banco banco;
+    long[] ids = new long[CLAVES];
+    String[] personas = new String[CLAVES];
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        banco = new Banco(Runtime.getRuntime().availableProcessors() * 16, cuentas);
+        Cuenta[] arreglo = new Cuenta[cuentas];
+        for (int i = 0; i < cuentas; i++) {
+            arreglo[i] = new Cuenta("Persona" + i, BigDecimal.TEN);
+            banco.addCuenta(arreglo[i]);
+        }
+        SplittableRandom aleatorio = new SplittableRandom(42);
+        for (int i = 0; i < CLAVES; i++) {
+            Cuenta cuenta = arreglo[aleatorio.nextInt(cuentas)];
+            ids[i] = cuenta.getId();
+            personas[i] = cuenta.getPersona();
+        }
+    }
+
+    @Benchmark
+    public Cuenta buscarPorId() {
+        cursor = (cursor + 1) & (CLAVES - 1);
+        return banco.buscarCuenta(ids[cursor]);
+    }
+
+    @Benchmark
+    public Cuenta buscarPorPersona() {
+        cursor = (cursor + 1) & (CLAVES - 1);
+        return banco.buscarCuenta(personas[cursor]);
+    }
+}
@@ -0,0 +1,110 @@
+package org.cano.junitapp.ejemplo.benchmarks;
+
+import org.cano.junitapp.ejemplo.exceptions.DineroInsuficienteException;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+//Debito y credito sobre una sola cuenta, en un hilo y con varios hilos compitiendo por la misma cuenta
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CuentaBenchmark {
+    private static final BigDecimal SALDO_INICIAL = new BigDecimal("1000000000000");
+    private static final BigDecimal MONTO = new BigDecimal("1.25");
+
+    Cuenta decimal;
+    Cuenta fija;
+    Cuenta sinFondos;
+    Cuenta sinFondosSinTraza;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        decimal = new Cuenta("Andres", SALDO_INICIAL);
+        fija = new Cuenta("Andres", SALDO_INICIAL, 2);
+        sinFondos = new Cuenta("Juan", BigDecimal.ZERO);
+        sinFondosSinTraza = new Cuenta("Pedro", BigDecimal.ZERO);
+        Banco banco = new Banco();
+        banco.setExcepcionesSinTraza(true);
+        banco.addCuenta(sinFondosSinTraza);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BigDecimal creditoDebitoDecimal() {
+        decimal.credito(MONTO);
+        decimal.debito(MONTO);
+        return decimal.getSaldo();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BigDecimal creditoDebitoDecimalContendido() {
+        decimal.credito(MONTO);
+        decimal.debito(MONTO);
+        return decimal.getSaldo();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long creditoDebitoUnidades() {
+        fija.creditoUnidades(125);
+        fija.debitoUnidades(125);
+        return fija.getSaldoUnidades();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long creditoDebitoUnidadesContendido() {
+        fija.creditoUnidades(125);
+        fija.debitoUnidades(125);
+        return fija.getSaldoUnidades();
+    }
+
+    //Camino de fondos insuficientes: excepcion con traza, excepcion compartida sin traza y API sin excepciones
+    @Benchmark
+    @Threads(1)
+    public Object sinFondosExcepcion() {
+        try {
+            sinFondos.debito(MONTO);
+            return null;
+        } catch (DineroInsuficienteException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object sinFondosExcepcionSinTraza() {
+        try {
+            sinFondosSinTraza.debito(MONTO);
+            return null;
+        } catch (DineroInsuficienteException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResultadoOperacion sinFondosTryDebito() {
+        return sinFondos.tryDebito(MONTO);
+    }
+}
@@ -0,0 +1,26 @@
+package org.cano.junitapp.ejemplo.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//Genera indices en [0, n) con distribucion Zipf: pocas cuentas reciben la mayoria de las operaciones
+final class DistribucionZipf {
+    private final double[] acumulada;
+
+    DistribucionZipf(int n, double exponente) {
+        acumulada = new double[n];
+        double suma = 0;
+        for (int i = 0; i < n; i++) {
+            suma += 1.0 / Math.pow(i + 1, exponente);
+            acumulada[i] = suma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulada[i] /= suma;
+        }
+    }
+
+    int siguiente(SplittableRandom aleatorio) {
+        int indice = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+        return indice >= 0 ? indice : Math.min(-indice - 1, acumulada.length - 1);
+    }
+}
@@ -0,0 +1,30 @@
+package org.cano.junitapp.ejemplo.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Ejecuta todos los benchmarks con el profiler de GC para reportar bytes asignados por operacion (gc.alloc.rate.norm).
+//Los resultados quedan en jmh-result.json para compararlos entre versiones.
+//Acepta las mismas opciones de linea de comandos de JMH, por ejemplo: java -jar target/benchmarks.jar BancoBenchmark -f 2
+public class EjecutarBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions lineaComandos = new CommandLineOptions(args);
+        OptionsBuilder opciones = new OptionsBuilder();
+        opciones.parent(lineaComandos);
+        if (lineaComandos.getIncludes().isEmpty()) {
+            opciones.include(EjecutarBenchmarks.class.getPackage().getName() + ".*");
+        }
+        Options finales = opciones
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(lineaComandos.getResult().orElse("jmh-result.json"))
+                .build();
+        new Runner(finales).run();
+    }
+}
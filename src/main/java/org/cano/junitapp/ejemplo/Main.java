@@ -1,7 +1,26 @@
 package org.cano.junitapp.ejemplo;
 
+import org.cano.junitapp.ejemplo.simulacion.ConfiguracionCarga;
+import org.cano.junitapp.ejemplo.simulacion.GeneradorCarga;
+import org.cano.junitapp.ejemplo.simulacion.ReporteCarga;
+
+//Prueba de carga sobre un banco en memoria, por ejemplo:
+//java -cp target/classes org.cano.junitapp.ejemplo.Main --modo=motor --distribucion=zipf --tasa=200000
 public class Main {
-    public static void main(String[] args) {
-        System.out.println("Hello world!");
+    public static void main(String[] args) throws InterruptedException {
+        ConfiguracionCarga configuracion;
+        try {
+            configuracion = ConfiguracionCarga.desdeArgumentos(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ConfiguracionCarga.uso());
+            System.exit(2);
+            return;
+        }
+        ReporteCarga reporte = new GeneradorCarga(configuracion).ejecutar();
+        System.out.println(reporte);
+        if (!reporte.isSaldoConservado()) {
+            System.exit(1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,284 @@
+package org.cano.junitapp.ejemplo.carga;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoLote;
+import org.cano.junitapp.ejemplo.models.Transferencia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Carga masiva de archivos con la forma de data.csv / data2.csv: primero montos y despues nombres, separados por coma.
+//  cuentas:         saldo,persona          (se usa el primer monto y el primer nombre)
+//  transferencias:  monto,origen,destino   (se usa el ultimo monto y los dos primeros nombres)
+//El archivo se divide en bloques que terminan en un salto de linea y cada bloque se procesa en el pool fork-join.
+//Solo hay un numero limitado de bloques en memoria a la vez, sin importar el tamanio del archivo.
+//Las transferencias de bloques distintos pueden aplicarse en cualquier orden, como si vinieran de clientes concurrentes.
+public class CargadorCsv {
+    public static final int TAMANIO_BLOQUE_DEFAULT = 4 * 1024 * 1024;
+    public static final int TAMANIO_LOTE_DEFAULT = 1024;
+    public static final int MAXIMO_ERRORES_DETALLE = 1000;
+    //Un bloque se lee en un solo arreglo, incluida la fila que cruza su limite
+    public static final int MAXIMO_BLOQUE = Integer.MAX_VALUE - 8;
+
+    private final Banco banco;
+    private final ForkJoinPool pool;
+    private final int tamanioBloque;
+    private final int tamanioLote;
+
+    public CargadorCsv(Banco banco) {
+        this(banco, ForkJoinPool.commonPool(), TAMANIO_BLOQUE_DEFAULT, TAMANIO_LOTE_DEFAULT);
+    }
+
+    public CargadorCsv(Banco banco, ForkJoinPool pool, int tamanioBloque, int tamanioLote) {
+        if (tamanioBloque <= 0 || tamanioLote <= 0) {
+            throw new IllegalArgumentException("El tamanio de bloque y de lote deben ser mayores que 0");
+        }
+        if (tamanioBloque > MAXIMO_BLOQUE) {
+            throw new IllegalArgumentException("El tamanio de bloque no puede ser mayor que " + MAXIMO_BLOQUE);
+        }
+        this.banco = banco;
+        this.pool = pool;
+        this.tamanioBloque = tamanioBloque;
+        this.tamanioLote = tamanioLote;
+    }
+
+    public ResultadoCarga cargarCuentas(Path archivo) throws IOException {
+        return cargar(archivo, true);
+    }
+
+    public ResultadoCarga cargarTransferencias(Path archivo) throws IOException {
+        return cargar(archivo, false);
+    }
+
+    private ResultadoCarga cargar(Path archivo, boolean cuentas) throws IOException {
+        Acumulado acumulado = new Acumulado();
+        //Se limita cuantos bloques estan leidos o en proceso al mismo tiempo
+        Semaphore enProceso = new Semaphore(pool.getParallelism() * 2);
+        List<ForkJoinTask<?>> tareas = new ArrayList<>();
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            long inicio = 0;
+            while (inicio < tamanio) {
+                long fin = finDeBloque(canal, Math.min(inicio + tamanioBloque, tamanio), tamanio);
+                if (fin - inicio > MAXIMO_BLOQUE) {
+                    throw new IOException("La fila que cruza el byte " + (inicio + tamanioBloque)
+                            + " hace que el bloque pase de " + MAXIMO_BLOQUE + " bytes");
+                }
+                enProceso.acquireUninterruptibly();
+                Bloque bloque = new Bloque(canal, inicio, (int) (fin - inicio), cuentas, acumulado, enProceso);
+                tareas.add(pool.submit(bloque));
+                inicio = fin;
+                //Las tareas ya terminadas no se conservan; si alguna fallo se deja de leer el archivo
+                for (Iterator<ForkJoinTask<?>> it = tareas.iterator(); it.hasNext(); ) {
+                    ForkJoinTask<?> tarea = it.next();
+                    if (tarea.isCompletedAbnormally()) {
+                        throw new ExecutionException(tarea.getException());
+                    }
+                    if (tarea.isDone()) {
+                        it.remove();
+                    }
+                }
+            }
+            for (ForkJoinTask<?> tarea : tareas) {
+                tarea.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Carga interrumpida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error al procesar el archivo " + archivo, e.getCause());
+        }
+        return acumulado.resultado();
+    }
+
+    //Avanza el fin del bloque hasta despues del siguiente salto de linea para no partir una fila
+    private static long finDeBloque(FileChannel canal, long fin, long tamanio) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long posicion = fin;
+        while (posicion < tamanio) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') {
+                    return posicion + i + 1;
+                }
+            }
+            posicion += leidos;
+        }
+        return tamanio;
+    }
+
+    private static final class Acumulado {
+        final LongAdder filas = new LongAdder();
+        final LongAdder aplicadas = new LongAdder();
+        final LongAdder rechazadas = new LongAdder();
+        final LongAdder errores = new LongAdder();
+        final AtomicInteger detalle = new AtomicInteger();
+        final ConcurrentLinkedQueue<ErrorCarga> detalleErrores = new ConcurrentLinkedQueue<>();
+
+        void error(long posicion, String fila, String motivo) {
+            errores.increment();
+            if (detalle.getAndIncrement() < MAXIMO_ERRORES_DETALLE) {
+                detalleErrores.add(new ErrorCarga(posicion, fila, motivo));
+            }
+        }
+
+        ResultadoCarga resultado() {
+            List<ErrorCarga> lista = new ArrayList<>(detalleErrores);
+            lista.sort((a, b) -> Long.compare(a.getPosicion(), b.getPosicion()));
+            return new ResultadoCarga(filas.sum(), aplicadas.sum(), rechazadas.sum(), errores.sum(), lista);
+        }
+    }
+
+    private final class Bloque extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel canal;
+        private final long inicio;
+        private final int longitud;
+        private final boolean cuentas;
+        private final Acumulado acumulado;
+        private final Semaphore enProceso;
+        private final List<Transferencia> lote = new ArrayList<>();
+
+        Bloque(FileChannel canal, long inicio, int longitud, boolean cuentas, Acumulado acumulado, Semaphore enProceso) {
+            this.canal = canal;
+            this.inicio = inicio;
+            this.longitud = longitud;
+            this.cuentas = cuentas;
+            this.acumulado = acumulado;
+            this.enProceso = enProceso;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                byte[] datos = leer();
+                int desde = 0;
+                for (int i = 0; i <= datos.length; i++) {
+                    if (i == datos.length || datos[i] == '\n') {
+                        int hasta = i > desde && datos[i - 1] == '\r' ? i - 1 : i;
+                        if (hasta > desde && datos[desde] != '#') {
+                            procesarFila(new String(datos, desde, hasta - desde, StandardCharsets.UTF_8), inicio + desde);
+                        }
+                        desde = i + 1;
+                    }
+                }
+                aplicarLote();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                enProceso.release();
+            }
+        }
+
+        private byte[] leer() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(longitud);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, inicio + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return buffer.array();
+        }
+
+        private void procesarFila(String fila, long posicion) {
+            acumulado.filas.increment();
+            String[] campos = fila.split(",");
+            List<BigDecimal> montos = new ArrayList<>(2);
+            List<String> nombres = new ArrayList<>(2);
+            for (String campo : campos) {
+                String valor = campo.trim();
+                if (nombres.isEmpty() && esNumero(valor)) {
+                    try {
+                        montos.add(new BigDecimal(valor));
+                    } catch (NumberFormatException e) {
+                        acumulado.error(posicion, fila, "Monto invalido: " + valor);
+                        return;
+                    }
+                } else if (!valor.isEmpty()) {
+                    nombres.add(valor);
+                }
+            }
+            if (montos.isEmpty()) {
+                acumulado.error(posicion, fila, "La fila no tiene monto");
+                return;
+            }
+            if (cuentas) {
+                if (nombres.isEmpty()) {
+                    acumulado.error(posicion, fila, "La fila no tiene persona");
+                    return;
+                }
+                banco.addCuenta(new Cuenta(nombres.get(0), montos.get(0)));
+                acumulado.aplicadas.increment();
+                return;
+            }
+            if (nombres.size() < 2) {
+                acumulado.error(posicion, fila, "La transferencia necesita origen y destino");
+                return;
+            }
+            BigDecimal monto = montos.get(montos.size() - 1);
+            if (monto.signum() <= 0) {
+                acumulado.error(posicion, fila, "El monto debe ser mayor que 0");
+                return;
+            }
+            Cuenta origen = banco.buscarCuenta(nombres.get(0));
+            Cuenta destino = banco.buscarCuenta(nombres.get(1));
+            if (origen == null || destino == null) {
+                acumulado.error(posicion, fila, "No existe la cuenta " + (origen == null ? nombres.get(0) : nombres.get(1)));
+                return;
+            }
+            //Un monto que alguna cuenta no puede representar haria fallar todo el lote
+            try {
+                origen.validarMonto(monto);
+                destino.validarMonto(monto);
+            } catch (ArithmeticException e) {
+                acumulado.error(posicion, fila, "Monto invalido para las cuentas: " + e.getMessage());
+                return;
+            }
+            lote.add(new Transferencia(origen, destino, monto));
+            if (lote.size() >= tamanioLote) {
+                aplicarLote();
+            }
+        }
+
+        private void aplicarLote() {
+            if (lote.isEmpty()) {
+                return;
+            }
+            ResultadoLote resultado = banco.transferirLote(lote);
+            acumulado.aplicadas.add(resultado.getAplicadas());
+            acumulado.rechazadas.add(lote.size() - resultado.getAplicadas());
+            lote.clear();
+        }
+    }
+
+    private static boolean esNumero(String valor) {
+        if (valor.isEmpty()) {
+            return false;
+        }
+        char c = valor.charAt(0);
+        return Character.isDigit(c) || c == '-' || c == '+' || c == '.';
+    }
+}
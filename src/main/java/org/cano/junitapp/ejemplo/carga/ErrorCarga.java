@@ -0,0 +1,31 @@
+package org.cano.junitapp.ejemplo.carga;
+
+//Fila que no se pudo cargar; la posicion es el byte donde empieza la fila dentro del archivo
+public final class ErrorCarga {
+    private final long posicion;
+    private final String fila;
+    private final String motivo;
+
+    ErrorCarga(long posicion, String fila, String motivo) {
+        this.posicion = posicion;
+        this.fila = fila;
+        this.motivo = motivo;
+    }
+
+    public long getPosicion() {
+        return posicion;
+    }
+
+    public String getFila() {
+        return fila;
+    }
+
+    public String getMotivo() {
+        return motivo;
+    }
+
+    @Override
+    public String toString() {
+        return "byte " + posicion + ": " + motivo + " [" + fila + "]";
+    }
+}
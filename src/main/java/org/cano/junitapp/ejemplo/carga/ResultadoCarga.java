@@ -0,0 +1,46 @@
+package org.cano.junitapp.ejemplo.carga;
+
+import java.util.List;
+
+//Resumen de una carga: filas leidas, aplicadas, rechazadas por fondos insuficientes y filas con error
+public final class ResultadoCarga {
+    private final long filas;
+    private final long aplicadas;
+    private final long rechazadas;
+    private final long errores;
+    private final List<ErrorCarga> detalleErrores;
+
+    ResultadoCarga(long filas, long aplicadas, long rechazadas, long errores, List<ErrorCarga> detalleErrores) {
+        this.filas = filas;
+        this.aplicadas = aplicadas;
+        this.rechazadas = rechazadas;
+        this.errores = errores;
+        this.detalleErrores = List.copyOf(detalleErrores);
+    }
+
+    public long getFilas() {
+        return filas;
+    }
+
+    public long getAplicadas() {
+        return aplicadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public long getErrores() {
+        return errores;
+    }
+
+    //Solo se conservan los primeros errores para que la memoria no dependa del tamanio del archivo
+    public List<ErrorCarga> getDetalleErrores() {
+        return detalleErrores;
+    }
+
+    @Override
+    public String toString() {
+        return "filas=" + filas + ", aplicadas=" + aplicadas + ", rechazadas=" + rechazadas + ", errores=" + errores;
+    }
+}
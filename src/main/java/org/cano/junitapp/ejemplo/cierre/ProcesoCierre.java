@@ -0,0 +1,671 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+//Cierre del dia: aplica las reglas (intereses, comisiones) a todas las cuentas del banco y escribe los estados de cuenta.
+//Las cuentas se ordenan por id y se dividen en bloques que se procesan en paralelo en el pool fork-join. Cada bloque:
+//  1. calcula los movimientos de todas sus cuentas sin cambiar nada (si una regla falla, el bloque queda intacto),
+//  2. los aplica; en punto fijo se usan creditoUnidades/tryDebitoUnidades sin crear BigDecimal,
+//  3. escribe su parte del estado de cuenta y registra el bloque en el archivo de avance (con fsync).
+//Si la corrida falla, volver a llamar ejecutar con la misma fecha salta los bloques registrados en el avance.
+//Al terminar todos los bloques, las partes se unen en estados-<fecha>.csv y se borra el avance.
+//La primera corrida guarda en el avance el rango de ids de cada bloque; al reanudar se usan esos rangos, asi las
+//cuentas abiertas despues no cambian los bloques ni reciben el cierre del dia.
+//Antes de aplicar un bloque se registra su inicio y cada cuenta se marca con el dia (getUltimoCierre) antes de
+//moverla: al reanudar, las cuentas marcadas no se vuelven a aplicar aunque el bloque no llegara al avance. La marca
+//vive en memoria con la cuenta; si un bloque iniciado no tiene ninguna cuenta marcada (el banco se reconstruyo despues
+//de una caida) el cierre falla en vez de cobrar otra vez. Si una operacion falla a medias del paso 2 se deshacen los
+//movimientos del bloque y se quitan las marcas; las cuentas que no se pueden deshacer se quedan marcadas.
+//Las operaciones concurrentes con el cierre no se bloquean; el estado de cuenta muestra el saldo que leyo el cierre
+public class ProcesoCierre {
+    public static final int TAMANIO_BLOQUE_DEFAULT = 65_536;
+    public static final int ESCALA_DEFAULT = 2;
+
+    private static final long[] POTENCIAS = new long[19];
+    private static final String APLICADO = "aplicado";
+
+    static {
+        POTENCIAS[0] = 1;
+        for (int i = 1; i < POTENCIAS.length; i++) {
+            POTENCIAS[i] = POTENCIAS[i - 1] * 10;
+        }
+    }
+
+    private final Banco banco;
+    private final List<ReglaCierre> reglas;
+    private final Path directorio;
+    private final ForkJoinPool pool;
+    private final int tamanioBloque;
+    //Para las cuentas con saldo BigDecimal; las de punto fijo usan su propia escala
+    private int escala = ESCALA_DEFAULT;
+    private RoundingMode redondeo = RoundingMode.HALF_EVEN;
+
+    public ProcesoCierre(Banco banco, List<ReglaCierre> reglas, Path directorio) {
+        this(banco, reglas, directorio, ForkJoinPool.commonPool(), TAMANIO_BLOQUE_DEFAULT);
+    }
+
+    public ProcesoCierre(Banco banco, List<ReglaCierre> reglas, Path directorio, ForkJoinPool pool, int tamanioBloque) {
+        if (tamanioBloque <= 0) {
+            throw new IllegalArgumentException("El tamanio de bloque debe ser mayor que 0");
+        }
+        this.banco = banco;
+        this.reglas = List.copyOf(reglas);
+        this.directorio = directorio;
+        this.pool = pool;
+        this.tamanioBloque = tamanioBloque;
+    }
+
+    public Path getEstados(LocalDate fecha) {
+        return directorio.resolve("estados-" + fecha + ".csv");
+    }
+
+    public ResultadoCierre ejecutar(LocalDate fecha) throws IOException {
+        Path estados = getEstados(fecha);
+        if (Files.exists(estados)) {
+            throw new IllegalStateException("El cierre del " + fecha + " ya se ejecuto");
+        }
+        Cuenta[] cuentas = banco.getCuentas().toArray(new Cuenta[0]);
+        Arrays.parallelSort(cuentas, Comparator.comparingLong(Cuenta::getId));
+        StringBuilder nombres = new StringBuilder();
+        for (ReglaCierre regla : reglas) {
+            nombres.append(nombres.length() == 0 ? "" : ";").append(regla.getNombre());
+        }
+        //Si las reglas cambian, los bloques de la corrida anterior ya no corresponden
+        String encabezado = "#cierre," + fecha + "," + nombres;
+
+        Path archivoAvance = directorio.resolve("cierre-" + fecha + ".avance");
+        Map<Integer, Avance> anteriores = new HashMap<>();
+        int reanudados;
+        int bloques;
+        try (RegistroAvance registro = new RegistroAvance(archivoAvance, encabezado, anteriores)) {
+            if (!registro.tieneRangos()) {
+                registro.registrarRangos(rangos(cuentas));
+            }
+            reanudados = anteriores.size();
+            bloques = registro.rangos.size();
+            long dia = fecha.toEpochDay();
+            List<ForkJoinTask<?>> tareas = new ArrayList<>();
+            for (int b = 0; b < bloques; b++) {
+                if (anteriores.containsKey(b)) {
+                    continue;
+                }
+                Cuenta[] delBloque = seleccionar(cuentas, registro.rangos.get(b));
+                if (registro.iniciados.contains(b) && !algunaMarcada(delBloque, dia)) {
+                    //El bloque empezo a aplicarse y no hay marcas del cierre en sus cuentas: el banco se reconstruyo
+                    //despues de una caida y no se sabe que movimientos quedaron; aplicarlo podria cobrar dos veces
+                    throw new IllegalStateException("El bloque " + b + " del cierre del " + fecha
+                            + " quedo a medias y sus cuentas no tienen la marca del cierre; se debe conciliar antes de reanudar");
+                }
+                tareas.add(pool.submit(new Bloque(fecha, delBloque, b, registro)));
+            }
+            esperar(tareas);
+            anteriores.putAll(registro.nuevos);
+        }
+        unir(fecha, estados, bloques, anteriores);
+        Files.deleteIfExists(archivoAvance);
+
+        long total = 0;
+        BigDecimal abonos = BigDecimal.ZERO;
+        BigDecimal cargos = BigDecimal.ZERO;
+        long rechazados = 0;
+        int sinEstado = 0;
+        for (Avance avance : anteriores.values()) {
+            total += avance.cuentas;
+            abonos = abonos.add(avance.abonos);
+            cargos = cargos.add(avance.cargos);
+            rechazados += avance.rechazados;
+            sinEstado += avance.conEstado ? 0 : 1;
+        }
+        return new ResultadoCierre(fecha, total, bloques, reanudados, sinEstado, abonos, cargos, rechazados, estados);
+    }
+
+    //Rangos de ids de cada bloque: contiguos, el ultimo termina en el id mayor al empezar el cierre, asi las cuentas
+    //que se abran despues no entran en ningun bloque aunque se reanude
+    private List<long[]> rangos(Cuenta[] cuentas) {
+        List<long[]> rangos = new ArrayList<>();
+        for (int inicio = 0; inicio < cuentas.length; inicio += tamanioBloque) {
+            int siguiente = inicio + tamanioBloque;
+            long hasta = siguiente < cuentas.length ? cuentas[siguiente].getId() - 1 : cuentas[cuentas.length - 1].getId();
+            rangos.add(new long[]{inicio == 0 ? Long.MIN_VALUE : cuentas[inicio].getId(), hasta});
+        }
+        return rangos;
+    }
+
+    //Las cuentas (ordenadas por id) con desde <= id <= hasta
+    private static Cuenta[] seleccionar(Cuenta[] cuentas, long[] rango) {
+        return Arrays.copyOfRange(cuentas, primeroDesde(cuentas, rango[0]), primeroDesde(cuentas, rango[1] + 1));
+    }
+
+    private static int primeroDesde(Cuenta[] cuentas, long id) {
+        int bajo = 0;
+        int alto = cuentas.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (cuentas[medio].getId() < id) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private static boolean algunaMarcada(Cuenta[] cuentas, long dia) {
+        for (Cuenta cuenta : cuentas) {
+            if (cuenta.getUltimoCierre() >= dia) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Espera a todos los bloques aunque alguno falle, asi al reanudar no queda ninguno a medias en otro hilo
+    private static void esperar(List<ForkJoinTask<?>> tareas) throws IOException {
+        Throwable error = null;
+        for (ForkJoinTask<?> tarea : tareas) {
+            try {
+                tarea.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Cierre interrumpido", e);
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if (error instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) error).getCause();
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IOException("Error en el cierre del dia", error);
+        }
+    }
+
+    //Une las partes en orden en un archivo temporal y lo renombra; el archivo final indica que el cierre termino
+    private void unir(LocalDate fecha, Path estados, int bloques, Map<Integer, Avance> avances) throws IOException {
+        Path temporal = estados.resolveSibling(estados.getFileName() + ".tmp");
+        try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder titulos = new StringBuilder("id,saldo_anterior");
+            for (ReglaCierre regla : reglas) {
+                titulos.append(',').append(regla.getNombre());
+            }
+            titulos.append(",saldo_final,persona\n");
+            ByteBuffer buffer = ByteBuffer.wrap(titulos.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                salida.write(buffer);
+            }
+            for (int b = 0; b < bloques; b++) {
+                if (!avances.get(b).conEstado) {
+                    continue;
+                }
+                try (FileChannel parte = FileChannel.open(parte(fecha, b), StandardOpenOption.READ)) {
+                    long tamanio = parte.size();
+                    long copiados = 0;
+                    while (copiados < tamanio) {
+                        copiados += parte.transferTo(copiados, tamanio - copiados, salida);
+                    }
+                }
+            }
+            salida.force(true);
+        }
+        Files.move(temporal, estados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int b = 0; b < bloques; b++) {
+            Files.deleteIfExists(parte(fecha, b));
+        }
+    }
+
+    //Linea de una cuenta que ya recibio el cierre: el saldo actual sin movimientos
+    private static void escribirAplicada(StringBuilder estado, Cuenta cuenta, int reglas) {
+        String saldo;
+        if (cuenta.isPuntoFijo()) {
+            StringBuilder unidades = new StringBuilder();
+            escribirUnidades(unidades, cuenta.getSaldoUnidades(), cuenta.getEscala());
+            saldo = unidades.toString();
+        } else {
+            saldo = cuenta.getSaldo().toPlainString();
+        }
+        estado.append(saldo);
+        for (int k = 0; k < reglas; k++) {
+            estado.append(',').append(APLICADO);
+        }
+        estado.append(',').append(saldo);
+    }
+
+    //Suma los totales en unidades de cada escala al total decimal
+    private static BigDecimal sumar(BigDecimal total, long[] porEscala) {
+        for (int e = 0; e < porEscala.length; e++) {
+            if (porEscala[e] != 0) {
+                total = total.add(BigDecimal.valueOf(porEscala[e], e));
+            }
+        }
+        return total;
+    }
+
+    private Path parte(LocalDate fecha, int bloque) {
+        return directorio.resolve("cierre-" + fecha + "-" + bloque + ".parte");
+    }
+
+    //Escribe unidades de punto fijo como decimal sin pasar por BigDecimal
+    static void escribirUnidades(StringBuilder destino, long unidades, int escala) {
+        if (escala == 0) {
+            destino.append(unidades);
+            return;
+        }
+        if (unidades < 0) {
+            destino.append('-');
+            unidades = -unidades;
+        }
+        long factor = POTENCIAS[escala];
+        destino.append(unidades / factor).append('.');
+        long fraccion = unidades % factor;
+        for (long posicion = factor / 10; posicion > 0; posicion /= 10) {
+            destino.append((char) ('0' + fraccion / posicion % 10));
+        }
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    public void setEscala(int escala) {
+        if (escala < 0) {
+            throw new IllegalArgumentException("La escala no puede ser negativa");
+        }
+        this.escala = escala;
+    }
+
+    public RoundingMode getRedondeo() {
+        return redondeo;
+    }
+
+    public void setRedondeo(RoundingMode redondeo) {
+        this.redondeo = redondeo;
+    }
+
+    //Linea del archivo de avance: bloque,cuentas,abonos,cargos,rechazados,conEstado
+    private static final class Avance {
+        final int bloque;
+        final long cuentas;
+        final BigDecimal abonos;
+        final BigDecimal cargos;
+        final long rechazados;
+        final boolean conEstado;
+
+        Avance(int bloque, long cuentas, BigDecimal abonos, BigDecimal cargos, long rechazados, boolean conEstado) {
+            this.bloque = bloque;
+            this.cuentas = cuentas;
+            this.abonos = abonos;
+            this.cargos = cargos;
+            this.rechazados = rechazados;
+            this.conEstado = conEstado;
+        }
+
+        //null si la linea esta incompleta
+        static Avance leer(String linea) {
+            String[] campos = linea.split(",");
+            if (campos.length != 6) {
+                return null;
+            }
+            try {
+                return new Avance(Integer.parseInt(campos[0]), Long.parseLong(campos[1]), new BigDecimal(campos[2]),
+                        new BigDecimal(campos[3]), Long.parseLong(campos[4]), "1".equals(campos[5]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String linea() {
+            return bloque + "," + cuentas + "," + abonos.toPlainString() + "," + cargos.toPlainString() + ","
+                    + rechazados + "," + (conEstado ? 1 : 0) + "\n";
+        }
+    }
+
+    //Archivo de avance que solo crece; una linea final sin salto (caida a mitad de escritura) se descarta
+    private static final class RegistroAvance implements AutoCloseable {
+        static final String RANGO = "#rango,";
+        static final String INICIO = "#inicio,";
+        static final String DESHECHO = "#deshecho,";
+
+        final FileChannel canal;
+        final Map<Integer, Avance> nuevos = new HashMap<>();
+        //Rango de ids [desde, hasta] de cada bloque
+        final List<long[]> rangos = new ArrayList<>();
+        //Bloques que empezaron a aplicarse y no se registraron ni se deshicieron
+        final Set<Integer> iniciados = new HashSet<>();
+
+        RegistroAvance(Path archivo, String encabezado, Map<Integer, Avance> anteriores) throws IOException {
+            long validos = 0;
+            if (Files.exists(archivo)) {
+                String contenido = Files.readString(archivo, StandardCharsets.UTF_8);
+                int fin = contenido.lastIndexOf('\n') + 1;
+                String[] lineas = contenido.substring(0, fin).split("\n");
+                if (fin > 0 && !lineas[0].equals(encabezado)) {
+                    throw new IllegalStateException("El avance " + archivo + " es de otro cierre: " + lineas[0]);
+                }
+                for (int i = 1; i < lineas.length; i++) {
+                    String[] campos = lineas[i].split(",");
+                    if (lineas[i].startsWith(RANGO) && campos.length == 4) {
+                        rangos.add(new long[]{Long.parseLong(campos[2]), Long.parseLong(campos[3])});
+                    } else if (lineas[i].startsWith(INICIO) && campos.length == 2) {
+                        iniciados.add(Integer.parseInt(campos[1]));
+                    } else if (lineas[i].startsWith(DESHECHO) && campos.length == 2) {
+                        iniciados.remove(Integer.parseInt(campos[1]));
+                    } else {
+                        Avance avance = Avance.leer(lineas[i]);
+                        if (avance != null) {
+                            anteriores.put(avance.bloque, avance);
+                            iniciados.remove(avance.bloque);
+                        }
+                    }
+                }
+                validos = contenido.substring(0, fin).getBytes(StandardCharsets.UTF_8).length;
+            }
+            canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            canal.truncate(validos);
+            canal.position(validos);
+            if (validos == 0) {
+                escribir(encabezado + "\n");
+            }
+        }
+
+        boolean tieneRangos() {
+            return !rangos.isEmpty();
+        }
+
+        //Se escriben todos juntos con un solo fsync antes de aplicar cualquier bloque
+        void registrarRangos(List<long[]> nuevosRangos) throws IOException {
+            StringBuilder lineas = new StringBuilder();
+            for (int b = 0; b < nuevosRangos.size(); b++) {
+                long[] rango = nuevosRangos.get(b);
+                lineas.append(RANGO).append(b).append(',').append(rango[0]).append(',').append(rango[1]).append('\n');
+            }
+            escribir(lineas.toString());
+            rangos.addAll(nuevosRangos);
+        }
+
+        synchronized void iniciar(int bloque) {
+            try {
+                escribir(INICIO + bloque + "\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void deshacer(int bloque) {
+            try {
+                escribir(DESHECHO + bloque + "\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void registrar(Avance avance) {
+            try {
+                escribir(avance.linea());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            nuevos.put(avance.bloque, avance);
+        }
+
+        private void escribir(String texto) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    private final class Bloque extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LocalDate fecha;
+        private final Cuenta[] cuentas;
+        private final int numero;
+        private final RegistroAvance registro;
+
+        Bloque(LocalDate fecha, Cuenta[] cuentas, int numero, RegistroAvance registro) {
+            this.fecha = fecha;
+            this.cuentas = cuentas;
+            this.numero = numero;
+            this.registro = registro;
+        }
+
+        @Override
+        protected void compute() {
+            int total = cuentas.length;
+            int r = reglas.size();
+            long dia = fecha.toEpochDay();
+            //Cuentas que ya recibieron este cierre en una corrida anterior
+            boolean[] aplicadas = new boolean[total];
+            //Fase 1: calcular. Las cuentas de punto fijo usan los arreglos long, las demas los de BigDecimal
+            long[] saldosUnidades = new long[total];
+            long[] movimientosUnidades = new long[total * r];
+            BigDecimal[] saldosDecimales = null;
+            BigDecimal[] movimientosDecimales = null;
+            //Lo que la fase 2 ya aplico a cada cuenta, para deshacerlo si el bloque falla a medias
+            long[] abonados = new long[total];
+            long[] cargados = new long[total];
+            BigDecimal[] abonadosDecimales = null;
+            BigDecimal[] cargadosDecimales = null;
+            for (int i = 0; i < total; i++) {
+                Cuenta cuenta = cuentas[i];
+                if (cuenta.getUltimoCierre() >= dia) {
+                    aplicadas[i] = true;
+                } else if (cuenta.isPuntoFijo()) {
+                    int escalaCuenta = cuenta.getEscala();
+                    long saldo = cuenta.getSaldoUnidades();
+                    saldosUnidades[i] = saldo;
+                    for (int k = 0; k < r; k++) {
+                        movimientosUnidades[i * r + k] = reglas.get(k).calcularUnidades(saldo, escalaCuenta, redondeo);
+                    }
+                } else {
+                    if (saldosDecimales == null) {
+                        saldosDecimales = new BigDecimal[total];
+                        movimientosDecimales = new BigDecimal[total * r];
+                        abonadosDecimales = new BigDecimal[total];
+                        cargadosDecimales = new BigDecimal[total];
+                    }
+                    BigDecimal saldo = cuenta.getSaldo();
+                    saldosDecimales[i] = saldo;
+                    for (int k = 0; k < r; k++) {
+                        movimientosDecimales[i * r + k] = reglas.get(k).calcular(saldo, escala, redondeo)
+                                .setScale(escala, redondeo);
+                    }
+                }
+            }
+
+            //Fase 2: aplicar y armar el estado de cuenta; primero los abonos y despues cada cargo por separado
+            StringBuilder estado = new StringBuilder(total * 64);
+            long[] abonosPorEscala = new long[POTENCIAS.length];
+            long[] cargosPorEscala = new long[POTENCIAS.length];
+            BigDecimal abonos = BigDecimal.ZERO;
+            BigDecimal cargos = BigDecimal.ZERO;
+            long rechazados = 0;
+            //Marca del cierre que tenia cada cuenta antes de que este bloque la marcara
+            boolean[] marcadas = new boolean[total];
+            long[] marcasAnteriores = new long[total];
+            registro.iniciar(numero);
+            try {
+                for (int i = 0; i < total; i++) {
+                    Cuenta cuenta = cuentas[i];
+                    estado.append(cuenta.getId()).append(',');
+                    long marca = cuenta.getUltimoCierre();
+                    if (aplicadas[i] || marca >= dia || !cuenta.cambiarUltimoCierre(marca, dia)) {
+                        escribirAplicada(estado, cuenta, r);
+                        estado.append(',').append(cuenta.getPersona()).append('\n');
+                        continue;
+                    }
+                    marcadas[i] = true;
+                    marcasAnteriores[i] = marca;
+                    if (saldosDecimales == null || saldosDecimales[i] == null) {
+                        int escalaCuenta = cuenta.getEscala();
+                        long abono = 0;
+                        for (int k = 0; k < r; k++) {
+                            abono += Math.max(0L, movimientosUnidades[i * r + k]);
+                        }
+                        if (abono > 0) {
+                            cuenta.creditoUnidades(abono);
+                            abonados[i] = abono;
+                            abonosPorEscala[escalaCuenta] += abono;
+                        }
+                        long saldoFinal = saldosUnidades[i] + abono;
+                        escribirUnidades(estado, saldosUnidades[i], escalaCuenta);
+                        for (int k = 0; k < r; k++) {
+                            long movimiento = movimientosUnidades[i * r + k];
+                            estado.append(',');
+                            if (movimiento < 0 && cuenta.tryDebitoUnidades(-movimiento) != ResultadoOperacion.EXITOSA) {
+                                rechazados++;
+                                estado.append("rechazado");
+                                continue;
+                            }
+                            if (movimiento < 0) {
+                                saldoFinal += movimiento;
+                                cargados[i] -= movimiento;
+                                cargosPorEscala[escalaCuenta] -= movimiento;
+                            }
+                            escribirUnidades(estado, movimiento, escalaCuenta);
+                        }
+                        estado.append(',');
+                        escribirUnidades(estado, saldoFinal, escalaCuenta);
+                    } else {
+                        BigDecimal abono = BigDecimal.ZERO;
+                        for (int k = 0; k < r; k++) {
+                            BigDecimal movimiento = movimientosDecimales[i * r + k];
+                            if (movimiento.signum() > 0) {
+                                abono = abono.add(movimiento);
+                            }
+                        }
+                        if (abono.signum() > 0) {
+                            cuenta.credito(abono);
+                            abonadosDecimales[i] = abono;
+                            abonos = abonos.add(abono);
+                        }
+                        BigDecimal saldoFinal = saldosDecimales[i].add(abono);
+                        estado.append(saldosDecimales[i].toPlainString());
+                        for (int k = 0; k < r; k++) {
+                            BigDecimal movimiento = movimientosDecimales[i * r + k];
+                            estado.append(',');
+                            if (movimiento.signum() < 0) {
+                                if (cuenta.tryDebito(movimiento.negate()) != ResultadoOperacion.EXITOSA) {
+                                    rechazados++;
+                                    estado.append("rechazado");
+                                    continue;
+                                }
+                                saldoFinal = saldoFinal.add(movimiento);
+                                cargadosDecimales[i] = cargadosDecimales[i] == null ? movimiento.negate()
+                                        : cargadosDecimales[i].subtract(movimiento);
+                                cargos = cargos.subtract(movimiento);
+                            }
+                            estado.append(movimiento.toPlainString());
+                        }
+                        estado.append(',').append(saldoFinal.toPlainString());
+                    }
+                    //La persona va al final porque puede tener comas
+                    estado.append(',').append(cuenta.getPersona()).append('\n');
+                }
+            } catch (RuntimeException e) {
+                //Se deshace lo aplicado para que al reanudar el bloque se aplique completo una sola vez
+                boolean deshecho = true;
+                for (int i = 0; i < total; i++) {
+                    Cuenta cuenta = cuentas[i];
+                    if (!marcadas[i]) {
+                        continue;
+                    }
+                    try {
+                        if (cargados[i] > 0) {
+                            cuenta.creditoUnidades(cargados[i]);
+                            cargosPorEscala[cuenta.getEscala()] -= cargados[i];
+                        }
+                        if (abonados[i] > 0) {
+                            if (cuenta.tryDebitoUnidades(abonados[i]) != ResultadoOperacion.EXITOSA) {
+                                throw new IllegalStateException("No se pudo deshacer el abono de la cuenta " + cuenta.getId());
+                            }
+                            abonosPorEscala[cuenta.getEscala()] -= abonados[i];
+                        }
+                        if (cargadosDecimales != null && cargadosDecimales[i] != null) {
+                            cuenta.credito(cargadosDecimales[i]);
+                            cargos = cargos.subtract(cargadosDecimales[i]);
+                        }
+                        if (abonadosDecimales != null && abonadosDecimales[i] != null) {
+                            if (cuenta.tryDebito(abonadosDecimales[i]) != ResultadoOperacion.EXITOSA) {
+                                throw new IllegalStateException("No se pudo deshacer el abono de la cuenta " + cuenta.getId());
+                            }
+                            abonos = abonos.subtract(abonadosDecimales[i]);
+                        }
+                        cuenta.cambiarUltimoCierre(dia, marcasAnteriores[i]);
+                    } catch (RuntimeException fallo) {
+                        deshecho = false;
+                        e.addSuppressed(fallo);
+                    }
+                }
+                //Las cuentas que no se pudieron deshacer se quedan marcadas y al reanudar no se aplican otra vez
+                if (deshecho) {
+                    try {
+                        registro.deshacer(numero);
+                    } catch (RuntimeException fallo) {
+                        e.addSuppressed(fallo);
+                    }
+                }
+                throw e;
+            }
+            abonos = sumar(abonos, abonosPorEscala);
+            cargos = sumar(cargos, cargosPorEscala);
+
+            //Fase 3: escribir la parte del estado y registrar el bloque
+            Path parte = parte(fecha, numero);
+            try (Writer salida = Files.newBufferedWriter(parte, StandardCharsets.UTF_8)) {
+                salida.append(estado);
+            } catch (IOException e) {
+                //El bloque ya se aplico: se registra sin estado para no aplicarlo otra vez al reanudar
+                try {
+                    Files.deleteIfExists(parte);
+                } catch (IOException ignorada) {
+                    e.addSuppressed(ignorada);
+                }
+                registro.registrar(new Avance(numero, total, abonos, cargos, rechazados, false));
+                throw new UncheckedIOException(e);
+            }
+            registro.registrar(new Avance(numero, total, abonos, cargos, rechazados, true));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import java.math.RoundingMode;
+
+//Division entera con las mismas reglas de redondeo que BigDecimal, para calcular en punto fijo sin crear objetos
+final class Redondeo {
+    private Redondeo() {
+    }
+
+    //divisor debe ser mayor que 0
+    static long dividir(long dividendo, long divisor, RoundingMode redondeo) {
+        long cociente = dividendo / divisor;
+        long residuo = dividendo % divisor;
+        if (residuo == 0) {
+            return cociente;
+        }
+        int signo = dividendo < 0 ? -1 : 1;
+        boolean alejarDeCero;
+        switch (redondeo) {
+            case DOWN:
+                alejarDeCero = false;
+                break;
+            case UP:
+                alejarDeCero = true;
+                break;
+            case FLOOR:
+                alejarDeCero = signo < 0;
+                break;
+            case CEILING:
+                alejarDeCero = signo > 0;
+                break;
+            case UNNECESSARY:
+                throw new ArithmeticException("Se requiere redondeo");
+            default:
+                //HALF_*: se compara el residuo con la mitad del divisor sin desbordar
+                long absoluto = Math.abs(residuo);
+                int comparacion = Long.compare(absoluto, divisor - absoluto);
+                alejarDeCero = comparacion > 0 || (comparacion == 0 && (redondeo == RoundingMode.HALF_UP
+                        || (redondeo == RoundingMode.HALF_EVEN && (cociente & 1) != 0)));
+        }
+        return alejarDeCero ? cociente + signo : cociente;
+    }
+}
@@ -0,0 +1,20 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+//Regla del cierre del dia (interes, comision, ...). Regresa el movimiento con signo: positivo es un abono y negativo
+//un cargo. Todas las reglas de una cuenta se calculan sobre el saldo que tenia al iniciar su bloque.
+//Las implementaciones no deben tener estado mutable porque se llaman desde varios hilos a la vez
+public interface ReglaCierre {
+    String getNombre();
+
+    //El resultado debe quedar redondeado a la escala
+    BigDecimal calcular(BigDecimal saldo, int escala, RoundingMode redondeo);
+
+    //Version en unidades de punto fijo para cuentas con SaldoFijo; conviene sobrescribirla para no crear BigDecimal
+    default long calcularUnidades(long saldo, int escala, RoundingMode redondeo) {
+        return calcular(BigDecimal.valueOf(saldo, escala), escala, redondeo)
+                .setScale(escala, redondeo).unscaledValue().longValueExact();
+    }
+}
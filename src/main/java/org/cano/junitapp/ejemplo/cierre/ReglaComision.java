@@ -0,0 +1,70 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+//Comision fija que se cobra a las cuentas con saldo menor que saldoMinimo (sin saldo minimo se cobra a todas).
+//Si la cuenta no tiene fondos para pagarla, el cargo se rechaza y se reporta en el estado de cuenta
+public class ReglaComision implements ReglaCierre {
+    private final String nombre;
+    private final BigDecimal monto;
+    private final BigDecimal saldoMinimo;
+    //Monto y saldo minimo en unidades para cada escala de punto fijo, se calculan la primera vez que se usa la escala
+    private final Escalado[] escalados = new Escalado[19];
+
+    public ReglaComision(String nombre, BigDecimal monto) {
+        this(nombre, monto, null);
+    }
+
+    public ReglaComision(String nombre, BigDecimal monto, BigDecimal saldoMinimo) {
+        if (monto.signum() < 0) {
+            throw new IllegalArgumentException("El monto de la comision no puede ser negativo");
+        }
+        this.nombre = nombre;
+        this.monto = monto;
+        this.saldoMinimo = saldoMinimo;
+    }
+
+    @Override
+    public String getNombre() {
+        return nombre;
+    }
+
+    @Override
+    public BigDecimal calcular(BigDecimal saldo, int escala, RoundingMode redondeo) {
+        if (saldoMinimo != null && saldo.compareTo(saldoMinimo) >= 0) {
+            return BigDecimal.ZERO.setScale(escala);
+        }
+        return monto.setScale(escala, redondeo).negate();
+    }
+
+    @Override
+    public long calcularUnidades(long saldo, int escala, RoundingMode redondeo) {
+        Escalado escalado = escalados[escala];
+        if (escalado == null || escalado.redondeo != redondeo) {
+            escalado = new Escalado(escala, redondeo);
+            //Solo tiene campos final, se puede publicar sin sincronizar
+            escalados[escala] = escalado;
+        }
+        return saldo >= escalado.minimo ? 0 : -escalado.monto;
+    }
+
+    private final class Escalado {
+        final RoundingMode redondeo;
+        final long monto;
+        final long minimo;
+
+        Escalado(int escala, RoundingMode redondeo) {
+            this.redondeo = redondeo;
+            this.monto = ReglaComision.this.monto.setScale(escala, redondeo).unscaledValue().longValueExact();
+            if (saldoMinimo == null) {
+                this.minimo = Long.MAX_VALUE;
+            } else {
+                BigInteger minimo = saldoMinimo.setScale(escala, RoundingMode.CEILING).unscaledValue();
+                this.minimo = minimo.bitLength() < 64 ? minimo.longValue()
+                        : minimo.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+//Interes diario: saldo * tasaAnual / diasPorAnio, solo para saldos de al menos saldoMinimo.
+//En punto fijo se calcula con long como una fraccion exacta (saldo * numerador / denominador) y se redondea una sola
+//vez, asi da el mismo resultado que la version BigDecimal; si la multiplicacion se desborda se usa BigDecimal
+public class ReglaInteres implements ReglaCierre {
+    private final BigDecimal tasaAnual;
+    private final int diasPorAnio;
+    private final BigDecimal saldoMinimo;
+    private final BigDecimal divisor;
+    //numerador = tasa sin escala, denominador = 10^escala de la tasa * dias; 0 si no caben en un long
+    private final long numerador;
+    private final long denominador;
+    //Saldo minimo en unidades para cada escala de punto fijo (0 a 18)
+    private final long[] minimoUnidades = new long[19];
+
+    public ReglaInteres(BigDecimal tasaAnual, int diasPorAnio) {
+        this(tasaAnual, diasPorAnio, BigDecimal.ZERO);
+    }
+
+    public ReglaInteres(BigDecimal tasaAnual, int diasPorAnio, BigDecimal saldoMinimo) {
+        if (tasaAnual.signum() < 0 || diasPorAnio <= 0) {
+            throw new IllegalArgumentException("La tasa no puede ser negativa y los dias deben ser mayores que 0");
+        }
+        this.tasaAnual = tasaAnual;
+        this.diasPorAnio = diasPorAnio;
+        this.saldoMinimo = saldoMinimo;
+        this.divisor = BigDecimal.valueOf(diasPorAnio);
+        BigDecimal tasa = tasaAnual.scale() < 0 ? tasaAnual.setScale(0) : tasaAnual;
+        long n = 0;
+        long d = 0;
+        if (tasa.precision() <= 18 && tasa.scale() <= 18) {
+            try {
+                n = tasa.unscaledValue().longValueExact();
+                d = Math.multiplyExact(BigDecimal.ONE.scaleByPowerOfTen(tasa.scale()).longValueExact(), diasPorAnio);
+            } catch (ArithmeticException e) {
+                n = 0;
+                d = 0;
+            }
+        }
+        this.numerador = n;
+        this.denominador = d;
+        for (int escala = 0; escala < minimoUnidades.length; escala++) {
+            BigInteger minimo = saldoMinimo.setScale(escala, RoundingMode.CEILING).unscaledValue();
+            minimoUnidades[escala] = minimo.bitLength() < 64 ? minimo.longValue()
+                    : minimo.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public String getNombre() {
+        return "interes";
+    }
+
+    @Override
+    public BigDecimal calcular(BigDecimal saldo, int escala, RoundingMode redondeo) {
+        if (saldo.signum() <= 0 || saldo.compareTo(saldoMinimo) < 0) {
+            return BigDecimal.ZERO.setScale(escala);
+        }
+        return saldo.multiply(tasaAnual).divide(divisor, escala, redondeo);
+    }
+
+    @Override
+    public long calcularUnidades(long saldo, int escala, RoundingMode redondeo) {
+        if (saldo <= 0 || saldo < minimoUnidades[escala]) {
+            return 0;
+        }
+        if (denominador != 0) {
+            long hi = Math.multiplyHigh(saldo, numerador);
+            long lo = saldo * numerador;
+            //Sin desbordamiento los 64 bits altos son solo la extension del signo
+            if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+                return Redondeo.dividir(lo, denominador, redondeo);
+            }
+        }
+        return ReglaCierre.super.calcularUnidades(saldo, escala, redondeo);
+    }
+
+    public BigDecimal getTasaAnual() {
+        return tasaAnual;
+    }
+
+    public int getDiasPorAnio() {
+        return diasPorAnio;
+    }
+}
@@ -0,0 +1,77 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+//Resumen de un cierre del dia, incluye los bloques que se aplicaron en una corrida anterior que fallo
+public final class ResultadoCierre {
+    private final LocalDate fecha;
+    private final long cuentas;
+    private final int bloques;
+    private final int bloquesReanudados;
+    private final int bloquesSinEstado;
+    private final BigDecimal abonos;
+    private final BigDecimal cargos;
+    private final long cargosRechazados;
+    private final Path estados;
+
+    ResultadoCierre(LocalDate fecha, long cuentas, int bloques, int bloquesReanudados, int bloquesSinEstado,
+                    BigDecimal abonos, BigDecimal cargos, long cargosRechazados, Path estados) {
+        this.fecha = fecha;
+        this.cuentas = cuentas;
+        this.bloques = bloques;
+        this.bloquesReanudados = bloquesReanudados;
+        this.bloquesSinEstado = bloquesSinEstado;
+        this.abonos = abonos;
+        this.cargos = cargos;
+        this.cargosRechazados = cargosRechazados;
+        this.estados = estados;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public long getCuentas() {
+        return cuentas;
+    }
+
+    public int getBloques() {
+        return bloques;
+    }
+
+    //Bloques que ya estaban aplicados por una corrida anterior y no se volvieron a procesar
+    public int getBloquesReanudados() {
+        return bloquesReanudados;
+    }
+
+    //Bloques aplicados cuyo estado de cuenta no se pudo escribir; sus cuentas no aparecen en el archivo de estados
+    public int getBloquesSinEstado() {
+        return bloquesSinEstado;
+    }
+
+    public BigDecimal getAbonos() {
+        return abonos;
+    }
+
+    //Suma de los cargos cobrados, en positivo
+    public BigDecimal getCargos() {
+        return cargos;
+    }
+
+    public long getCargosRechazados() {
+        return cargosRechazados;
+    }
+
+    public Path getEstados() {
+        return estados;
+    }
+
+    @Override
+    public String toString() {
+        return "Cierre " + fecha + ": " + cuentas + " cuentas en " + bloques + " bloques (" + bloquesReanudados
+                + " reanudados), abonos " + abonos.toPlainString() + ", cargos " + cargos.toPlainString()
+                + ", cargos rechazados " + cargosRechazados;
+    }
+}
@@ -0,0 +1,357 @@
+package org.cano.junitapp.ejemplo.compensacion;
+
+import org.cano.junitapp.ejemplo.exceptions.LoteAplicadoException;
+import org.cano.junitapp.ejemplo.exceptions.MovimientoAplicadoException;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoLote;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.cano.junitapp.ejemplo.models.Transferencia;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Camara de compensacion entre bancos del mismo proceso. Cada banco registra una cuenta de reserva en el banco central.
+//Una transferencia entre bancos debita al cliente de inmediato y queda en cola; cada ciclo de liquidar() toma todas las
+//pendientes, calcula la posicion neta de cada banco y mueve las reservas en un solo lote atomico del banco central
+//(transferirLote netea por cuenta, asi que cada reserva cambia una sola vez por ciclo). Despues se acredita a los
+//clientes de destino. Si la reserva de un banco no alcanza, sus transferencias se rechazan y se devuelve el monto.
+//Mientras el dinero esta en cola, la suma de saldos de los clientes mas getEnTransito() no cambia.
+//Cada transferencia se completa o se devuelve por separado: si el credito al destino se rechaza se regresan las
+//reservas, se devuelve el monto al cliente y su resultado se completa con la excepcion. Si el credito se aplico y solo
+//fallo un observador del banco de destino, la transferencia se liquida y su resultado lleva MovimientoAplicadoException.
+//Una transferencia que no se puede acreditar ni revertir, o cuyo monto no se puede devolver, queda por reintentar:
+//sigue en transito, su resultado no se completa y cada ciclo de liquidar() la vuelve a intentar antes que las nuevas.
+public class CamaraCompensacion implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(CamaraCompensacion.class.getName());
+
+    private final Banco central;
+    private final Map<Banco, Cuenta> reservas = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Pendiente> cola = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final AtomicReference<BigDecimal> enTransito = new AtomicReference<>(BigDecimal.ZERO);
+    //Envios que ya pasaron la revision de cerrado pero aun no llegan a la cola; ya cerrada, el ultimo libera enviados
+    private final AtomicInteger enviando = new AtomicInteger();
+    private final CountDownLatch enviados = new CountDownLatch(1);
+    //Transferencias que quedaron a medias en un ciclo; solo se usa con el monitor de la camara tomado
+    private final List<Pendiente> porReintentar = new ArrayList<>();
+    private ScheduledExecutorService programador;
+    private volatile boolean cerrado;
+
+    public CamaraCompensacion(Banco central) {
+        this.central = central;
+    }
+
+    //La reserva debe ser una cuenta del banco central
+    public void registrar(Banco banco, Cuenta reserva) {
+        if (reserva.getBanco() != central) {
+            throw new IllegalArgumentException("La reserva debe ser una cuenta del banco central");
+        }
+        if (reservas.putIfAbsent(banco, reserva) != null) {
+            throw new IllegalArgumentException("El banco ya esta registrado: " + banco.getNombre());
+        }
+    }
+
+    public Cuenta getReserva(Banco banco) {
+        return reservas.get(banco);
+    }
+
+    //Entre cuentas del mismo banco se transfiere directo; entre bancos el resultado se completa al liquidar
+    public CompletableFuture<ResultadoOperacion> transferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        Banco bancoOrigen = origen.getBanco();
+        Banco bancoDestino = destino.getBanco();
+        if (bancoOrigen != null && bancoOrigen == bancoDestino) {
+            return CompletableFuture.completedFuture(bancoOrigen.tryTransferir(origen, destino, monto));
+        }
+        Cuenta reservaOrigen = reserva(bancoOrigen);
+        Cuenta reservaDestino = reserva(bancoDestino);
+        //Un monto que alguna de las cuentas no puede representar fallaria al liquidar, ya con las reservas movidas
+        destino.validarMonto(monto);
+        reservaOrigen.validarMonto(monto);
+        reservaDestino.validarMonto(monto);
+        enviando.incrementAndGet();
+        try {
+            if (cerrado) {
+                throw new RejectedExecutionException("La camara de compensacion esta cerrada");
+            }
+            ResultadoOperacion debito = origen.tryDebito(monto);
+            if (debito != ResultadoOperacion.EXITOSA) {
+                return CompletableFuture.completedFuture(debito);
+            }
+            enTransito.accumulateAndGet(monto, BigDecimal::add);
+            Pendiente pendiente = new Pendiente(origen, destino, monto, bancoOrigen, bancoDestino,
+                    new Transferencia(reservaOrigen, reservaDestino, monto));
+            pendientes.incrementAndGet();
+            cola.add(pendiente);
+            return pendiente.resultado;
+        } finally {
+            if (enviando.decrementAndGet() == 0 && cerrado) {
+                enviados.countDown();
+            }
+        }
+    }
+
+    private Cuenta reserva(Banco banco) {
+        Cuenta reserva = banco == null ? null : reservas.get(banco);
+        if (reserva == null) {
+            throw new IllegalArgumentException("La cuenta no pertenece a un banco registrado en la camara");
+        }
+        return reserva;
+    }
+
+    //Un ciclo de liquidacion: primero se reintentan las que quedaron a medias en ciclos anteriores, despues se liquidan
+    //las que estaban en cola; las que llegan mientras corre quedan para el siguiente
+    public synchronized ResultadoLiquidacion liquidar() {
+        Map<Banco, BigDecimal> posiciones = new IdentityHashMap<>();
+        int[] desenlaces = new int[Desenlace.values().length];
+        List<Pendiente> anteriores = new ArrayList<>(porReintentar);
+        porReintentar.clear();
+        for (Pendiente pendiente : anteriores) {
+            desenlaces[(pendiente.reservasMovidas ? acreditar(pendiente, posiciones) : devolver(pendiente)).ordinal()]++;
+        }
+
+        List<Pendiente> ciclo = new ArrayList<>(pendientes.get());
+        for (int n = pendientes.get(); n > 0; n--) {
+            Pendiente pendiente = cola.poll();
+            if (pendiente == null) {
+                break;
+            }
+            ciclo.add(pendiente);
+        }
+        if (ciclo.isEmpty() && anteriores.isEmpty()) {
+            return ResultadoLiquidacion.VACIO;
+        }
+        pendientes.addAndGet(-ciclo.size());
+        if (!ciclo.isEmpty()) {
+            List<Transferencia> lote = new ArrayList<>(ciclo.size());
+            for (Pendiente pendiente : ciclo) {
+                lote.add(pendiente.reservas);
+            }
+            ResultadoLote resultado;
+            try {
+                resultado = central.transferirLote(lote);
+            } catch (LoteAplicadoException e) {
+                //Las reservas se movieron, solo fallo un observador del banco central
+                LOG.log(Level.WARNING, "Fallo la notificacion del lote de reservas", e);
+                resultado = e.getResultado();
+            } catch (RuntimeException e) {
+                //El lote valida todo antes de mover las reservas: no se movio nada y se devuelve cada transferencia
+                for (Pendiente pendiente : ciclo) {
+                    pendiente.error = e;
+                    devolver(pendiente);
+                }
+                throw e;
+            }
+            int[] rechazadas = resultado.getIndicesRechazados();
+            int siguienteRechazada = 0;
+            for (int i = 0; i < ciclo.size(); i++) {
+                Pendiente pendiente = ciclo.get(i);
+                Desenlace desenlace;
+                if (siguienteRechazada < rechazadas.length && rechazadas[siguienteRechazada] == i) {
+                    siguienteRechazada++;
+                    //La reserva del banco de origen no alcanzo: se devuelve el dinero al cliente
+                    desenlace = devolver(pendiente);
+                } else {
+                    pendiente.reservasMovidas = true;
+                    mover(posiciones, pendiente, pendiente.monto);
+                    desenlace = acreditar(pendiente, posiciones);
+                }
+                desenlaces[desenlace.ordinal()]++;
+            }
+        }
+        //Un credito rechazado y revertido en el mismo ciclo no cambia la posicion
+        posiciones.values().removeIf(posicion -> posicion.signum() == 0);
+        return new ResultadoLiquidacion(posiciones, desenlaces[Desenlace.LIQUIDADA.ordinal()],
+                desenlaces[Desenlace.RECHAZADA.ordinal()], desenlaces[Desenlace.POR_REINTENTAR.ordinal()]);
+    }
+
+    //Acredita al cliente de destino una transferencia cuyas reservas ya se movieron; si el credito se rechaza regresa
+    //las reservas y devuelve el monto al origen
+    private Desenlace acreditar(Pendiente pendiente, Map<Banco, BigDecimal> posiciones) {
+        MovimientoAplicadoException notificacion = null;
+        try {
+            pendiente.destino.credito(pendiente.monto);
+        } catch (MovimientoAplicadoException e) {
+            notificacion = e;
+        } catch (RuntimeException e) {
+            if (!revertirReservas(pendiente)) {
+                LOG.log(Level.SEVERE, "No se pudo acreditar ni revertir una transferencia de " + pendiente.monto
+                        + " hacia la cuenta " + pendiente.destino.getId() + ", queda por reintentar", e);
+                porReintentar.add(pendiente);
+                return Desenlace.POR_REINTENTAR;
+            }
+            pendiente.reservasMovidas = false;
+            mover(posiciones, pendiente, pendiente.monto.negate());
+            pendiente.error = e;
+            return devolver(pendiente);
+        }
+        enTransito.accumulateAndGet(pendiente.monto, BigDecimal::subtract);
+        if (notificacion == null) {
+            pendiente.resultado.complete(ResultadoOperacion.EXITOSA);
+        } else {
+            pendiente.resultado.completeExceptionally(notificacion);
+        }
+        return Desenlace.LIQUIDADA;
+    }
+
+    //Regresa el monto al cliente de origen; sin error la transferencia se rechazo por falta de reserva
+    private Desenlace devolver(Pendiente pendiente) {
+        try {
+            pendiente.origen.credito(pendiente.monto);
+        } catch (MovimientoAplicadoException e) {
+            LOG.log(Level.WARNING, "Se devolvio " + pendiente.monto + " a la cuenta " + pendiente.origen.getId()
+                    + " pero fallo su notificacion", e);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "No se pudo devolver " + pendiente.monto + " a la cuenta " + pendiente.origen.getId()
+                    + ", queda por reintentar", e);
+            porReintentar.add(pendiente);
+            return Desenlace.POR_REINTENTAR;
+        }
+        enTransito.accumulateAndGet(pendiente.monto, BigDecimal::subtract);
+        if (pendiente.error == null) {
+            pendiente.resultado.complete(ResultadoOperacion.DINERO_INSUFICIENTE);
+        } else {
+            pendiente.resultado.completeExceptionally(pendiente.error);
+        }
+        return Desenlace.RECHAZADA;
+    }
+
+    private boolean revertirReservas(Pendiente pendiente) {
+        try {
+            return central.tryTransferir(pendiente.reservas.getDestino(), pendiente.reservas.getOrigen(),
+                    pendiente.monto) == ResultadoOperacion.EXITOSA;
+        } catch (MovimientoAplicadoException e) {
+            LOG.log(Level.WARNING, "Se revirtieron las reservas pero fallo su notificacion", e);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void mover(Map<Banco, BigDecimal> posiciones, Pendiente pendiente, BigDecimal monto) {
+        posiciones.merge(pendiente.bancoOrigen, monto.negate(), BigDecimal::add);
+        posiciones.merge(pendiente.bancoDestino, monto, BigDecimal::add);
+    }
+
+    //Una excepcion que salga de la tarea programada cancela las ejecuciones siguientes sin avisar
+    private void liquidarProgramado() {
+        try {
+            liquidar();
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Fallo un ciclo de liquidacion", e);
+        }
+    }
+
+    //Liquida cada periodo en un hilo propio
+    public synchronized void iniciar(long periodo, TimeUnit unidad) {
+        if (programador != null) {
+            throw new IllegalStateException("La liquidacion periodica ya esta iniciada");
+        }
+        programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "camara-compensacion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        programador.scheduleWithFixedDelay(this::liquidarProgramado, periodo, periodo, unidad);
+    }
+
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    //Transferencias a medias que el siguiente ciclo vuelve a intentar
+    public synchronized int getPorReintentar() {
+        return porReintentar.size();
+    }
+
+    //Monto debitado a los clientes que aun no se acredita ni se devuelve
+    public BigDecimal getEnTransito() {
+        return enTransito.get();
+    }
+
+    //Deja de aceptar transferencias, detiene la liquidacion periodica y liquida lo que quede en cola.
+    //Si se interrumpe al hilo mientras espera se sigue esperando y se restaura la interrupcion al final
+    @Override
+    public void close() {
+        cerrado = true;
+        //Si el ultimo envio termino antes de ver cerrado, aqui se ve enviando en 0
+        if (enviando.get() == 0) {
+            enviados.countDown();
+        }
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                enviados.await();
+                break;
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        ScheduledExecutorService actual;
+        synchronized (this) {
+            actual = programador;
+        }
+        if (actual != null) {
+            actual.shutdown();
+            while (true) {
+                try {
+                    actual.awaitTermination(1, TimeUnit.MINUTES);
+                    break;
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+        }
+        try {
+            liquidar();
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Pendiente {
+        final Cuenta origen;
+        final Cuenta destino;
+        final BigDecimal monto;
+        final Banco bancoOrigen;
+        final Banco bancoDestino;
+        //Movimiento entre las reservas que liquida esta transferencia
+        final Transferencia reservas;
+        final CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+        //Solo se usan con el monitor de la camara tomado: si las reservas ya se movieron y la excepcion con la que
+        //se completa el resultado al devolver el monto
+        boolean reservasMovidas;
+        RuntimeException error;
+
+        Pendiente(Cuenta origen, Cuenta destino, BigDecimal monto, Banco bancoOrigen, Banco bancoDestino,
+                  Transferencia reservas) {
+            this.origen = origen;
+            this.destino = destino;
+            this.monto = monto;
+            this.bancoOrigen = bancoOrigen;
+            this.bancoDestino = bancoDestino;
+            this.reservas = reservas;
+        }
+    }
+
+    private enum Desenlace {
+        LIQUIDADA, RECHAZADA, POR_REINTENTAR
+    }
+}
@@ -0,0 +1,55 @@
+package org.cano.junitapp.ejemplo.compensacion;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+//Resultado de un ciclo de liquidacion de la camara: la posicion neta de cada banco (lo que cambio su reserva en el
+//ciclo, positiva si recibio mas de lo que envio), cuantas transferencias se liquidaron, cuantas se devolvieron (por
+//falta de reserva o porque se rechazo el credito al destino) y cuantas quedaron por reintentar. Cuentan tambien las
+//que venian de ciclos anteriores
+public final class ResultadoLiquidacion {
+    static final ResultadoLiquidacion VACIO = new ResultadoLiquidacion(new IdentityHashMap<>(), 0, 0, 0);
+
+    private final Map<Banco, BigDecimal> posiciones;
+    private final int liquidadas;
+    private final int rechazadas;
+    private final int porReintentar;
+
+    ResultadoLiquidacion(Map<Banco, BigDecimal> posiciones, int liquidadas, int rechazadas, int porReintentar) {
+        this.posiciones = Collections.unmodifiableMap(posiciones);
+        this.liquidadas = liquidadas;
+        this.rechazadas = rechazadas;
+        this.porReintentar = porReintentar;
+    }
+
+    //Los bancos que no participaron en el ciclo tienen posicion 0
+    public BigDecimal getPosicionNeta(Banco banco) {
+        return posiciones.getOrDefault(banco, BigDecimal.ZERO);
+    }
+
+    public Map<Banco, BigDecimal> getPosiciones() {
+        return posiciones;
+    }
+
+    public int getLiquidadas() {
+        return liquidadas;
+    }
+
+    public int getRechazadas() {
+        return rechazadas;
+    }
+
+    public int getPorReintentar() {
+        return porReintentar;
+    }
+
+    @Override
+    public String toString() {
+        return "Liquidadas: " + liquidadas + ", rechazadas: " + rechazadas + ", por reintentar: " + porReintentar
+                + ", bancos: " + posiciones.size();
+    }
+}
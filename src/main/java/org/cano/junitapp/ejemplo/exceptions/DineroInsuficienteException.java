@@ -1,7 +1,22 @@
 package org.cano.junitapp.ejemplo.exceptions;
 
 public class DineroInsuficienteException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    //Instancia compartida sin traza ni supresiones, se puede lanzar desde varios hilos sin crear objetos
+    private static final DineroInsuficienteException SIN_TRAZA =
+            new DineroInsuficienteException("Dinero insuficiente", false);
+
     public DineroInsuficienteException(String message){
         super(message);
     }
+
+    //Con conTraza en false no se llena la traza de la pila, que es lo mas costoso de crear la excepcion
+    public DineroInsuficienteException(String message, boolean conTraza){
+        super(message, null, conTraza, conTraza);
+    }
+
+    public static DineroInsuficienteException sinTraza(){
+        return SIN_TRAZA;
+    }
 }
@@ -0,0 +1,19 @@
+package org.cano.junitapp.ejemplo.exceptions;
+
+import org.cano.junitapp.ejemplo.models.ResultadoLote;
+
+//El lote ya se aplico pero fallo la notificacion de alguna de sus transferencias; trae el resultado del lote
+public class LoteAplicadoException extends MovimientoAplicadoException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ResultadoLote resultado;
+
+    public LoteAplicadoException(ResultadoLote resultado, MovimientoAplicadoException notificacion){
+        super("El lote se aplico pero fallo su notificacion", notificacion.getCause());
+        this.resultado = resultado;
+    }
+
+    public ResultadoLote getResultado(){
+        return resultado;
+    }
+}
@@ -0,0 +1,10 @@
+package org.cano.junitapp.ejemplo.exceptions;
+
+//El movimiento ya cambio los saldos pero fallo al notificarlo a un observador: no se debe deshacer ni repetir
+public class MovimientoAplicadoException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public MovimientoAplicadoException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,67 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Histograma log-lineal al estilo HDR: 32 cubetas por cada potencia de 2, error relativo maximo de ~3%.
+//Cada hilo registra en su propia franja de cubetas para no competir con otros hilos; las franjas
+//se suman solo al pedir un resumen.
+public class HistogramaLatencias {
+    static final int BITS = 6;
+    static final int MITAD = 1 << (BITS - 1);
+    //Valores mayores a 2^40 ns (~18 minutos) se guardan en la ultima cubeta
+    static final long MAXIMO_REGISTRABLE = (1L << 40) - 1;
+    static final int CUBETAS = indice(MAXIMO_REGISTRABLE) + 1;
+
+    private final AtomicLongArray[] franjas;
+    private final int mascara;
+    private final LongAdder suma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0L);
+
+    public HistogramaLatencias() {
+        int procesadores = Runtime.getRuntime().availableProcessors();
+        int tamanio = Integer.highestOneBit(Math.min(64, Math.max(1, procesadores * 2)) - 1) << 1;
+        franjas = new AtomicLongArray[Math.max(1, tamanio)];
+        for (int i = 0; i < franjas.length; i++) {
+            franjas[i] = new AtomicLongArray(CUBETAS);
+        }
+        mascara = franjas.length - 1;
+    }
+
+    public void registrar(long nanos) {
+        long valor = Math.max(0L, Math.min(nanos, MAXIMO_REGISTRABLE));
+        franjas[(int) Thread.currentThread().getId() & mascara].incrementAndGet(indice(valor));
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    //No detiene a los hilos que registran: el resumen puede no incluir los registros que ocurren mientras se calcula
+    public ResumenLatencias resumen() {
+        long[] conteos = new long[CUBETAS];
+        for (AtomicLongArray franja : franjas) {
+            for (int i = 0; i < CUBETAS; i++) {
+                conteos[i] += franja.get(i);
+            }
+        }
+        return new ResumenLatencias(conteos, suma.sum(), maximo.get());
+    }
+
+    static int indice(long valor) {
+        int bits = 64 - Long.numberOfLeadingZeros(valor);
+        if (bits <= BITS) {
+            return (int) valor;
+        }
+        int desplazamiento = bits - BITS;
+        return desplazamiento * MITAD + (int) (valor >>> desplazamiento);
+    }
+
+    //Valor mas bajo que cae en la cubeta
+    static long limiteInferior(int indice) {
+        if (indice < 2 * MITAD) {
+            return indice;
+        }
+        int desplazamiento = indice / MITAD - 1;
+        return (long) (indice - desplazamiento * MITAD) << desplazamiento;
+    }
+}
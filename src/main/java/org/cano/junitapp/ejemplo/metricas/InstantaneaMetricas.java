@@ -0,0 +1,58 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+import org.cano.junitapp.ejemplo.models.TipoOperacion;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+//Valores de las metricas de un banco en un momento dado
+public final class InstantaneaMetricas {
+    private final Map<TipoOperacion, Long> exitosas;
+    private final long rechazos;
+    private final long esperasCandado;
+    private final long nanosEsperaCandado;
+    private final Map<TipoOperacion, ResumenLatencias> latencias;
+
+    InstantaneaMetricas(EnumMap<TipoOperacion, Long> exitosas, long rechazos, long esperasCandado,
+                        long nanosEsperaCandado, EnumMap<TipoOperacion, ResumenLatencias> latencias) {
+        this.exitosas = Collections.unmodifiableMap(exitosas);
+        this.rechazos = rechazos;
+        this.esperasCandado = esperasCandado;
+        this.nanosEsperaCandado = nanosEsperaCandado;
+        this.latencias = Collections.unmodifiableMap(latencias);
+    }
+
+    public long getExitosas(TipoOperacion tipo) {
+        return exitosas.get(tipo);
+    }
+
+    public long getRechazosDineroInsuficiente() {
+        return rechazos;
+    }
+
+    public long getEsperasCandado() {
+        return esperasCandado;
+    }
+
+    public long getNanosEsperaCandado() {
+        return nanosEsperaCandado;
+    }
+
+    //Incluye las operaciones exitosas y las rechazadas
+    public ResumenLatencias getLatencias(TipoOperacion tipo) {
+        return latencias.get(tipo);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        for (TipoOperacion tipo : TipoOperacion.values()) {
+            texto.append(tipo).append(": exitosas=").append(exitosas.get(tipo))
+                    .append(", ").append(latencias.get(tipo)).append('\n');
+        }
+        return texto.append("rechazos=").append(rechazos)
+                .append(", esperasCandado=").append(esperasCandado)
+                .append(", nanosEsperaCandado=").append(nanosEsperaCandado).toString();
+    }
+}
@@ -0,0 +1,151 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.MedidorOperaciones;
+import org.cano.junitapp.ejemplo.models.TipoOperacion;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Contadores e histogramas de latencia de un banco. Se activa con banco.setMedidor(metricas) y se apaga con
+//banco.setMedidor(null); apagado el banco no toma tiempos ni actualiza contadores.
+//Los contadores son LongAdder y los histogramas tienen una franja por hilo, por lo que registrar no agrega contencion.
+public class MetricasBanco implements MedidorOperaciones, MetricasBancoMXBean {
+    private static final TipoOperacion[] TIPOS = TipoOperacion.values();
+
+    private volatile Registro registro = new Registro();
+
+    //Crea las metricas y las conecta al banco
+    public static MetricasBanco activar(Banco banco) {
+        MetricasBanco metricas = new MetricasBanco();
+        banco.setMedidor(metricas);
+        return metricas;
+    }
+
+    @Override
+    public void operacion(TipoOperacion tipo, long nanos, boolean exitosa) {
+        Registro r = registro;
+        if (exitosa) {
+            r.exitosas[tipo.ordinal()].increment();
+        } else {
+            r.rechazos.increment();
+        }
+        r.latencias[tipo.ordinal()].registrar(nanos);
+    }
+
+    @Override
+    public void esperaCandado(long nanos) {
+        Registro r = registro;
+        r.esperas.increment();
+        r.nanosEspera.add(nanos);
+    }
+
+    public InstantaneaMetricas instantanea() {
+        Registro r = registro;
+        EnumMap<TipoOperacion, Long> exitosas = new EnumMap<>(TipoOperacion.class);
+        EnumMap<TipoOperacion, ResumenLatencias> latencias = new EnumMap<>(TipoOperacion.class);
+        for (TipoOperacion tipo : TIPOS) {
+            exitosas.put(tipo, r.exitosas[tipo.ordinal()].sum());
+            latencias.put(tipo, r.latencias[tipo.ordinal()].resumen());
+        }
+        return new InstantaneaMetricas(exitosas, r.rechazos.sum(), r.esperas.sum(), r.nanosEspera.sum(), latencias);
+    }
+
+    //Registra las metricas en el servidor JMX de la plataforma como org.cano.junitapp:type=Banco,name=<nombre>
+    public ObjectName registrarJmx(String nombre) throws JMException {
+        ObjectName objectName = new ObjectName("org.cano.junitapp:type=Banco,name=" + ObjectName.quote(nombre));
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        try {
+            servidor.registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            servidor.unregisterMBean(objectName);
+            servidor.registerMBean(this, objectName);
+        }
+        return objectName;
+    }
+
+    //Empieza de cero; los hilos que estaban registrando pueden terminar en el registro anterior
+    @Override
+    public void reiniciar() {
+        registro = new Registro();
+    }
+
+    @Override
+    public long getTransferencias() {
+        return registro.exitosas[TipoOperacion.TRANSFERENCIA.ordinal()].sum();
+    }
+
+    @Override
+    public long getCreditos() {
+        return registro.exitosas[TipoOperacion.CREDITO.ordinal()].sum();
+    }
+
+    @Override
+    public long getDebitos() {
+        return registro.exitosas[TipoOperacion.DEBITO.ordinal()].sum();
+    }
+
+    @Override
+    public long getRechazosDineroInsuficiente() {
+        return registro.rechazos.sum();
+    }
+
+    @Override
+    public long getEsperasCandado() {
+        return registro.esperas.sum();
+    }
+
+    @Override
+    public long getNanosEsperaCandado() {
+        return registro.nanosEspera.sum();
+    }
+
+    @Override
+    public long getTransferenciaP50() {
+        return latencias(TipoOperacion.TRANSFERENCIA).getP50();
+    }
+
+    @Override
+    public long getTransferenciaP99() {
+        return latencias(TipoOperacion.TRANSFERENCIA).getP99();
+    }
+
+    @Override
+    public long getTransferenciaP999() {
+        return latencias(TipoOperacion.TRANSFERENCIA).getP999();
+    }
+
+    @Override
+    public long getDebitoP99() {
+        return latencias(TipoOperacion.DEBITO).getP99();
+    }
+
+    @Override
+    public long getCreditoP99() {
+        return latencias(TipoOperacion.CREDITO).getP99();
+    }
+
+    private ResumenLatencias latencias(TipoOperacion tipo) {
+        return registro.latencias[tipo.ordinal()].resumen();
+    }
+
+    private static final class Registro {
+        final LongAdder[] exitosas = new LongAdder[TIPOS.length];
+        final HistogramaLatencias[] latencias = new HistogramaLatencias[TIPOS.length];
+        final LongAdder rechazos = new LongAdder();
+        final LongAdder esperas = new LongAdder();
+        final LongAdder nanosEspera = new LongAdder();
+
+        Registro() {
+            for (int i = 0; i < TIPOS.length; i++) {
+                exitosas[i] = new LongAdder();
+                latencias[i] = new HistogramaLatencias();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+//Vista JMX de las metricas de un banco, las latencias estan en nanosegundos
+public interface MetricasBancoMXBean {
+
+    long getTransferencias();
+
+    long getCreditos();
+
+    long getDebitos();
+
+    long getRechazosDineroInsuficiente();
+
+    long getEsperasCandado();
+
+    long getNanosEsperaCandado();
+
+    long getTransferenciaP50();
+
+    long getTransferenciaP99();
+
+    long getTransferenciaP999();
+
+    long getDebitoP99();
+
+    long getCreditoP99();
+
+    void reiniciar();
+}
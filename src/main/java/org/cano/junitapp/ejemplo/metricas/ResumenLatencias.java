@@ -0,0 +1,66 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+//Copia inmutable de un HistogramaLatencias, los valores estan en nanosegundos
+public final class ResumenLatencias {
+    private final long[] conteos;
+    private final long cantidad;
+    private final long suma;
+    private final long maximo;
+
+    ResumenLatencias(long[] conteos, long suma, long maximo) {
+        this.conteos = conteos;
+        long total = 0;
+        for (long conteo : conteos) {
+            total += conteo;
+        }
+        this.cantidad = total;
+        this.suma = suma;
+        this.maximo = maximo;
+    }
+
+    public long getCantidad() {
+        return cantidad;
+    }
+
+    public double getPromedio() {
+        return cantidad == 0 ? 0 : (double) suma / cantidad;
+    }
+
+    public long getMaximo() {
+        return maximo;
+    }
+
+    //percentil entre 0 y 100, regresa el limite inferior de la cubeta donde cae
+    public long percentil(double percentil) {
+        if (cantidad == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(cantidad * Math.min(100.0, percentil) / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < conteos.length; i++) {
+            acumulado += conteos[i];
+            if (acumulado >= objetivo) {
+                return Math.min(HistogramaLatencias.limiteInferior(i), maximo);
+            }
+        }
+        return maximo;
+    }
+
+    public long getP50() {
+        return percentil(50);
+    }
+
+    public long getP99() {
+        return percentil(99);
+    }
+
+    public long getP999() {
+        return percentil(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + cantidad + ", p50=" + getP50() + "ns, p99=" + getP99() + "ns, p999=" + getP999()
+                + "ns, max=" + maximo + "ns";
+    }
+}
@@ -0,0 +1,92 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Totales del banco mantenidos con cada movimiento, para consultarlos en O(1) sin recorrer las cuentas.
+//Se activa con Banco.activarAgregados(). El saldo total se suma en varias celdas (una por grupo de hilos)
+//para que los hilos no compitan por el mismo compareAndSet; leerlo suma las celdas.
+//Las transferencias no cambian el saldo total, solo se cuentan.
+public class AgregadosBanco implements ObservadorMovimientos {
+    private final AtomicReferenceArray<BigDecimal> celdas;
+    private final LongAdder cuentas = new LongAdder();
+    private final LongAdder debitos = new LongAdder();
+    private final LongAdder creditos = new LongAdder();
+    private final LongAdder transferencias = new LongAdder();
+
+    AgregadosBanco() {
+        int tamanio = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1)) << 1;
+        celdas = new AtomicReferenceArray<>(tamanio);
+        for (int i = 0; i < tamanio; i++) {
+            celdas.set(i, BigDecimal.ZERO);
+        }
+    }
+
+    private void sumar(BigDecimal monto) {
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int celda = (int) (h >>> 32) & (celdas.length() - 1);
+        BigDecimal actual;
+        do {
+            actual = celdas.get(celda);
+        } while (!celdas.compareAndSet(celda, actual, actual.add(monto)));
+    }
+
+    @Override
+    public void alta(Cuenta cuenta) {
+        cuentas.increment();
+        sumar(cuenta.getSaldo());
+    }
+
+    @Override
+    public void baja(Cuenta cuenta) {
+        cuentas.decrement();
+        sumar(cuenta.getSaldo().negate());
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        debitos.increment();
+        sumar(monto.negate());
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        creditos.increment();
+        sumar(monto);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        transferencias.increment();
+    }
+
+    @Override
+    public void saldoAsignado(Cuenta cuenta, BigDecimal anterior, BigDecimal saldo) {
+        sumar(saldo.subtract(anterior));
+    }
+
+    public BigDecimal getSaldoTotal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < celdas.length(); i++) {
+            total = total.add(celdas.get(i));
+        }
+        return total;
+    }
+
+    public long getNumeroCuentas() {
+        return cuentas.sum();
+    }
+
+    public long getDebitos() {
+        return debitos.sum();
+    }
+
+    public long getCreditos() {
+        return creditos.sum();
+    }
+
+    public long getTransferencias() {
+        return transferencias.sum();
+    }
+}
@@ -0,0 +1,309 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+//Almacen de cuentas por columnas fuera del heap, para bancos con decenas de millones de cuentas.
+//Por cuenta solo se guardan 12 bytes en buffers directos: el saldo en unidades menores (long) y el indice de la
+//persona (int) en una tabla de nombres sin repetidos. No hay un objeto Cuenta por cuenta: buscarCuenta regresa una
+//vista ligera sobre las columnas, con la que funcionan debito, credito y Banco.transferir como con cualquier cuenta.
+//El almacen se registra en su banco: Banco.buscarCuenta(id), los recorridos, las consultas y las instantaneas incluyen
+//sus cuentas, y cada alta se notifica a los observadores (ej. el diario). Solo la busqueda por persona no las ve.
+//Como varias vistas pueden apuntar a la misma cuenta, en Banco.transferirLote se debe usar una sola vista por cuenta.
+//Lo retenido se guarda aqui por posicion y lo comparten todas las vistas de la cuenta.
+public class AlmacenColumnar {
+    public static final int CUENTAS_POR_SEGMENTO = 1 << 17;
+    private static final int BITS_SEGMENTO = 17;
+
+    private final Banco banco;
+    private final int escala;
+    private final long capacidad;
+    //Las cuentas del almacen tienen los ids primerId .. primerId + capacidad - 1
+    private final long primerId;
+    //Siguiente posicion por reservar; una cuenta reservada aun puede no tener su segmento ni sus datos escritos
+    private final AtomicLong siguiente = new AtomicLong();
+    //Cuentas completas: avanza en orden con una escritura release despues de escribir cada cuenta, los que leen
+    //solo ven posiciones menores que este valor
+    private final AtomicLong publicadas = new AtomicLong();
+    //Posiciones cuya alta fallo a medias (ej. sin memoria para el segmento): se publican para no detener a las
+    //siguientes, pero no son cuentas
+    private final Set<Long> huecos = ConcurrentHashMap.newKeySet();
+    //Los segmentos se crean cuando se agrega la primera cuenta que cae en ellos
+    private final AtomicReferenceArray<ByteBuffer> saldos;
+    private final AtomicReferenceArray<ByteBuffer> personas;
+    private final TablaNombres nombres = new TablaNombres();
+    //Solo las cuentas a las que alguna vez se les retuvo un monto; la entrada se queda aunque lo retenido vuelva a 0
+    private final ConcurrentHashMap<Long, Cuenta.Retenido> retenidos = new ConcurrentHashMap<>();
+
+    public AlmacenColumnar(Banco banco, int escala, long capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor que 0");
+        }
+        long segmentos = (capacidad + CUENTAS_POR_SEGMENTO - 1) >>> BITS_SEGMENTO;
+        if (segmentos > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacidad demasiado grande: " + capacidad);
+        }
+        this.banco = banco;
+        this.escala = SaldoFijo.validarEscala(escala);
+        this.capacidad = capacidad;
+        this.primerId = Cuenta.reservarIds(capacidad);
+        this.saldos = new AtomicReferenceArray<>((int) segmentos);
+        this.personas = new AtomicReferenceArray<>((int) segmentos);
+        banco.registrarAlmacen(this);
+    }
+
+    public long agregar(String persona, BigDecimal saldo) {
+        return agregarUnidades(persona, saldo.setScale(escala, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    //Regresa el id de la nueva cuenta
+    public long agregarUnidades(String persona, long unidades) {
+        if (unidades < 0) {
+            throw new IllegalArgumentException("El saldo inicial no puede ser negativo");
+        }
+        //El nombre se guarda antes de reservar la posicion, asi lo que falle aqui no deja una posicion pendiente
+        int indicePersona = nombres.internar(persona);
+        long posicion = siguiente.getAndIncrement();
+        if (posicion >= capacidad) {
+            siguiente.decrementAndGet();
+            throw new IllegalStateException("El almacen esta lleno, capacidad: " + capacidad);
+        }
+        int segmento = (int) (posicion >>> BITS_SEGMENTO);
+        int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+        boolean escrita = false;
+        try {
+            SaldoColumna.LONGS.setVolatile(segmentoSaldos(segmento), indice * Long.BYTES, unidades);
+            segmentoPersonas(segmento).putInt(indice * Integer.BYTES, indicePersona);
+            escrita = true;
+        } finally {
+            //Aunque el alta falle la posicion se publica como hueco, si no los que reservaron las siguientes
+            //esperarian para siempre
+            if (!escrita) {
+                huecos.add(posicion);
+            }
+            //Se publica en orden: primero deben terminar los que reservaron las posiciones anteriores. Se cede el
+            //procesador porque el que falta pudo quedar sin ejecutarse a mitad de su alta
+            while (publicadas.getAcquire() != posicion) {
+                Thread.yield();
+            }
+            publicadas.setRelease(posicion + 1);
+        }
+        banco.altaColumnar(vistaEn(posicion));
+        return primerId + posicion;
+    }
+
+    private ByteBuffer segmentoSaldos(int segmento) {
+        ByteBuffer buffer = saldos.get(segmento);
+        if (buffer == null) {
+            saldos.compareAndSet(segmento, null, nuevoSegmento(Long.BYTES));
+            buffer = saldos.get(segmento);
+        }
+        return buffer;
+    }
+
+    private ByteBuffer segmentoPersonas(int segmento) {
+        ByteBuffer buffer = personas.get(segmento);
+        if (buffer == null) {
+            personas.compareAndSet(segmento, null, nuevoSegmento(Integer.BYTES));
+            buffer = personas.get(segmento);
+        }
+        return buffer;
+    }
+
+    ByteBuffer nuevoSegmento(int bytesPorCuenta) {
+        return ByteBuffer.allocateDirect(CUENTAS_POR_SEGMENTO * bytesPorCuenta).order(ByteOrder.nativeOrder());
+    }
+
+    public boolean contiene(long id) {
+        long posicion = id - primerId;
+        return posicion >= 0 && posicion < publicadas.getAcquire() && !esHueco(posicion);
+    }
+
+    //Vista de la cuenta sobre las columnas; regresa null si el id no es de este almacen
+    public Cuenta buscarCuenta(long id) {
+        return contiene(id) ? vistaEn(id - primerId) : null;
+    }
+
+    private Cuenta vistaEn(long posicion) {
+        int segmento = (int) (posicion >>> BITS_SEGMENTO);
+        int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+        Cuenta vista = new Cuenta(primerId + posicion, persona(posicion),
+                new SaldoColumna(this, posicion, saldos.get(segmento), indice * Long.BYTES));
+        vista.setBanco(banco);
+        return vista;
+    }
+
+    private boolean esHueco(long posicion) {
+        return !huecos.isEmpty() && huecos.contains(posicion);
+    }
+
+    public long getSaldoUnidades(long id) {
+        long posicion = posicionExistente(id);
+        int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+        return (long) SaldoColumna.LONGS.getVolatile(saldos.get((int) (posicion >>> BITS_SEGMENTO)), indice * Long.BYTES);
+    }
+
+    public BigDecimal getSaldo(long id) {
+        return BigDecimal.valueOf(getSaldoUnidades(id), escala);
+    }
+
+    public String getPersona(long id) {
+        return persona(posicionExistente(id));
+    }
+
+    public ResultadoOperacion tryTransferir(long origen, long destino, BigDecimal monto) {
+        return banco.tryTransferir(vista(origen), vista(destino), monto);
+    }
+
+    public void transferir(long origen, long destino, BigDecimal monto) {
+        banco.transferir(vista(origen), vista(destino), monto);
+    }
+
+    //Recorre las cuentas creando una vista por cuenta; las vistas se pueden descartar despues de usarlas
+    public void forEachCuenta(Consumer<Cuenta> accion) {
+        long total = publicadas.getAcquire();
+        for (long posicion = 0; posicion < total; posicion++) {
+            if (!esHueco(posicion)) {
+                accion.accept(vistaEn(posicion));
+            }
+        }
+    }
+
+    //Las vistas para los recorridos de Banco, en paralelo si hay al menos umbral posiciones
+    Stream<Cuenta> cuentas(long umbral) {
+        long total = publicadas.getAcquire();
+        LongStream posiciones = total >= umbral ? LongStream.range(0, total).parallel() : LongStream.range(0, total);
+        return posiciones.filter(posicion -> !esHueco(posicion)).mapToObj(this::vistaEn);
+    }
+
+    //Suma directa sobre la columna de saldos, sin crear vistas
+    public long getSaldoTotalUnidades() {
+        long total = publicadas.getAcquire();
+        long suma = 0;
+        for (long posicion = 0; posicion < total; posicion++) {
+            if (esHueco(posicion)) {
+                continue;
+            }
+            int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+            ByteBuffer segmento = saldos.get((int) (posicion >>> BITS_SEGMENTO));
+            suma = Math.addExact(suma, (long) SaldoColumna.LONGS.getVolatile(segmento, indice * Long.BYTES));
+        }
+        return suma;
+    }
+
+    public long getNumeroCuentas() {
+        return publicadas.getAcquire() - huecos.size();
+    }
+
+    public int getNombresDistintos() {
+        return nombres.getTotal();
+    }
+
+    public long getBytesFueraDelHeap() {
+        long bytes = 0;
+        for (int i = 0; i < saldos.length(); i++) {
+            if (saldos.get(i) != null) {
+                bytes += saldos.get(i).capacity();
+            }
+            if (personas.get(i) != null) {
+                bytes += personas.get(i).capacity();
+            }
+        }
+        return bytes;
+    }
+
+    public Banco getBanco() {
+        return banco;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    Cuenta.Retenido buscarRetenido(long posicion) {
+        return retenidos.get(posicion);
+    }
+
+    Cuenta.Retenido crearRetenido(long posicion) {
+        return retenidos.computeIfAbsent(posicion, p -> new Cuenta.Retenido());
+    }
+
+    void renombrar(long posicion, String persona) {
+        int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+        personas.get((int) (posicion >>> BITS_SEGMENTO)).putInt(indice * Integer.BYTES, nombres.internar(persona));
+    }
+
+    private String persona(long posicion) {
+        int indice = (int) (posicion & (CUENTAS_POR_SEGMENTO - 1));
+        return nombres.nombre(personas.get((int) (posicion >>> BITS_SEGMENTO)).getInt(indice * Integer.BYTES));
+    }
+
+    private long posicionExistente(long id) {
+        if (!contiene(id)) {
+            throw new IllegalArgumentException("No existe la cuenta con id " + id);
+        }
+        return id - primerId;
+    }
+
+    private Cuenta vista(long id) {
+        Cuenta cuenta = buscarCuenta(id);
+        if (cuenta == null) {
+            throw new IllegalArgumentException("No existe la cuenta con id " + id);
+        }
+        return cuenta;
+    }
+
+    //Cada nombre se guarda una sola vez; el indice 0 es null. Los nombres se leen sin candado desde bloques
+    //que nunca se mueven, el arreglo de bloques se publica con volatile al crecer
+    private static final class TablaNombres {
+        private static final int NOMBRES_POR_BLOQUE = 4096;
+
+        private final Map<String, Integer> indices = new HashMap<>();
+        private volatile String[][] bloques = new String[1][NOMBRES_POR_BLOQUE];
+        private volatile int total = 1;
+
+        synchronized int internar(String nombre) {
+            if (nombre == null) {
+                return 0;
+            }
+            Integer indice = indices.get(nombre);
+            if (indice != null) {
+                return indice;
+            }
+            int nuevo = total;
+            int bloque = nuevo / NOMBRES_POR_BLOQUE;
+            String[][] actuales = bloques;
+            if (bloque == actuales.length) {
+                actuales = Arrays.copyOf(actuales, actuales.length * 2);
+                for (int i = bloque; i < actuales.length; i++) {
+                    actuales[i] = new String[NOMBRES_POR_BLOQUE];
+                }
+            }
+            actuales[bloque][nuevo % NOMBRES_POR_BLOQUE] = nombre;
+            bloques = actuales;
+            indices.put(nombre, nuevo);
+            total = nuevo + 1;
+            return nuevo;
+        }
+
+        String nombre(int indice) {
+            return bloques[indice / NOMBRES_POR_BLOQUE][indice % NOMBRES_POR_BLOQUE];
+        }
+
+        int getTotal() {
+            return total - 1;
+        }
+    }
+}
@@ -1,25 +1,844 @@
 package org.cano.junitapp.ejemplo.models;
 
+import org.cano.junitapp.ejemplo.exceptions.DineroInsuficienteException;
+import org.cano.junitapp.ejemplo.exceptions.LoteAplicadoException;
+import org.cano.junitapp.ejemplo.exceptions.MovimientoAplicadoException;
+import org.cano.junitapp.ejemplo.temporizador.RuedaTemporizadores;
+
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class Banco {
-    private List<Cuenta> cuentas;
+    //Con menos cuentas que esto las consultas recorren el indice en un solo hilo
+    private static final long UMBRAL_PARALELO = 10_000;
+    private static final int IDEMPOTENCIA_MAXIMO_CLAVES = 100_000;
+    private static final long IDEMPOTENCIA_TTL_MINUTOS = 15;
+    //Con ticks de 10 ms y 4 niveles la rueda abarca unas 46 horas, las retenciones mas largas se reacomodan
+    private static final long TICK_RETENCIONES_MILIS = 10;
+    private static final int NIVELES_RETENCIONES = 4;
+
+    //Indices concurrentes para buscar una cuenta en O(1) por id o por persona
+    private final ConcurrentHashMap<Long, Cuenta> cuentasPorId;
+    private final ConcurrentHashMap<String, Cuenta> cuentasPorPersona;
+    //Las cuentas de los almacenes columnares no estan en los indices, se buscan y recorren en cada almacen
+    private volatile AlmacenColumnar[] almacenes = new AlmacenColumnar[0];
     private String nombre;
+    //Tabla de candados por franjas, cada cuenta cae siempre en la misma franja
+    private final ReentrantLock[] candados;
+    //Si es true los rechazos por fondos insuficientes lanzan una excepcion compartida sin traza
+    private volatile boolean excepcionesSinTraza;
+    //Sin medidor (null) las operaciones no toman tiempos
+    private volatile MedidorOperaciones medidor;
+    //Copia en escritura: agregar observadores es raro, notificar es muy frecuente
+    private volatile ObservadorMovimientos[] observadores = new ObservadorMovimientos[0];
+    private volatile AgregadosBanco agregados;
+    //Sin flujo (null) los movimientos solo se notifican a los observadores
+    private volatile FlujoSaldos flujo;
+    //Solo es distinto de null mientras se toma una instantanea de saldos
+    private volatile CapturaSaldos captura;
+    private final ReentrantLock candadoInstantaneas = new ReentrantLock();
+    private volatile CacheIdempotencia idempotencia;
+    private volatile RuedaTemporizadores rueda;
 
     public Banco() {
-        cuentas = new ArrayList<>();
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    public Banco(int franjas) {
+        this(franjas, 16);
     }
 
+    //cuentasEsperadas dimensiona los indices desde el inicio para no redimensionarlos en cargas masivas
+    public Banco(int franjas, int cuentasEsperadas) {
+        if (franjas <= 0) {
+            throw new IllegalArgumentException("El numero de franjas debe ser mayor que 0");
+        }
+        cuentasPorId = new ConcurrentHashMap<>(cuentasEsperadas);
+        cuentasPorPersona = new ConcurrentHashMap<>(cuentasEsperadas);
+        //Se redondea a potencia de 2 para calcular la franja con una mascara
+        int tamanio = Integer.highestOneBit(franjas - 1) << 1;
+        candados = new ReentrantLock[Math.max(tamanio, 1)];
+        for (int i = 0; i < candados.length; i++) {
+            candados[i] = new ReentrantLock();
+        }
+    }
+
+    //La transferencia es atomica para las dos cuentas: si el debito falla ninguna cuenta cambia
     public void transferir(Cuenta origen, Cuenta destino, BigDecimal monto){
-        origen.debito(monto);
-        destino.credito(monto);
+        if (tryTransferir(origen, destino, monto) != ResultadoOperacion.EXITOSA) {
+            throw excepcionesSinTraza ? DineroInsuficienteException.sinTraza()
+                    : new DineroInsuficienteException("Dinero insuficiente");
+        }
+    }
+
+    //Igual que transferir pero regresa el resultado en lugar de lanzar excepcion por falta de fondos
+    public ResultadoOperacion tryTransferir(Cuenta origen, Cuenta destino, BigDecimal monto){
+        origen.validarMonto(monto);
+        destino.validarMonto(monto);
+        int franjaOrigen = franja(origen);
+        int franjaDestino = franja(destino);
+        //Los candados siempre se toman en orden ascendente para evitar interbloqueos A->B / B->A
+        ReentrantLock primero = candados[Math.min(franjaOrigen, franjaDestino)];
+        ReentrantLock segundo = candados[Math.max(franjaOrigen, franjaDestino)];
+        MedidorOperaciones m = medidor;
+        long inicio = m == null ? 0L : System.nanoTime();
+        bloquear(primero, m);
+        try {
+            if (segundo != primero) {
+                bloquear(segundo, m);
+            }
+            try {
+                if (!origen.aplicarDebito(monto, destino.getId())) {
+                    if (m != null) {
+                        m.operacion(TipoOperacion.TRANSFERENCIA, System.nanoTime() - inicio, false);
+                    }
+                    return ResultadoOperacion.DINERO_INSUFICIENTE;
+                }
+                try {
+                    destino.aplicarCredito(monto, origen.getId());
+                } catch (RuntimeException e) {
+                    //El credito desbordo el saldo del destino, se regresa el debito al origen
+                    origen.aplicarCredito(monto);
+                    throw e;
+                }
+                notificarTransferencia(origen, destino, monto);
+                if (m != null) {
+                    m.operacion(TipoOperacion.TRANSFERENCIA, System.nanoTime() - inicio, true);
+                }
+                return ResultadoOperacion.EXITOSA;
+            } finally {
+                if (segundo != primero) {
+                    segundo.unlock();
+                }
+            }
+        } finally {
+            primero.unlock();
+        }
+    }
+
+    //Movimientos para ejecutores de un solo escritor (ver MotorParticionado): el llamador garantiza que ningun otro
+    //hilo mueve estas cuentas a la vez. Sin observadores no se toma ninguna franja; con observadores se toman las de
+    //las cuentas que cambian, igual que en los movimientos directos, para que una instantanea no las vea a medias
+    public ResultadoOperacion tryTransferirExclusivo(Cuenta origen, Cuenta destino, BigDecimal monto){
+        if (observadores.length > 0) {
+            return tryTransferir(origen, destino, monto);
+        }
+        origen.validarMonto(monto);
+        destino.validarMonto(monto);
+        long inicio = iniciarMedicion();
+        if (!origen.aplicarDebito(monto, destino.getId())) {
+            terminarMedicion(TipoOperacion.TRANSFERENCIA, inicio, false);
+            return ResultadoOperacion.DINERO_INSUFICIENTE;
+        }
+        try {
+            destino.aplicarCredito(monto, origen.getId());
+        } catch (RuntimeException e) {
+            origen.aplicarCredito(monto);
+            throw e;
+        }
+        terminarMedicion(TipoOperacion.TRANSFERENCIA, inicio, true);
+        notificarTransferencia(origen, destino, monto);
+        return ResultadoOperacion.EXITOSA;
+    }
+
+    //Primera fase de una transferencia en dos pasos: solo debita al origen. No se notifica; la transferencia se
+    //notifica una sola vez al acreditarla, o no se notifica si se devuelve
+    public ResultadoOperacion debitarTransferencia(Cuenta origen, Cuenta destino, BigDecimal monto){
+        origen.validarMonto(monto);
+        destino.validarMonto(monto);
+        ReentrantLock candado = candadoMovimiento(origen);
+        try {
+            return origen.aplicarDebito(monto, destino.getId()) ? ResultadoOperacion.EXITOSA
+                    : ResultadoOperacion.DINERO_INSUFICIENTE;
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    //Segunda fase: acredita al destino y notifica la transferencia completa. Si el credito se rechaza lanza su
+    //excepcion sin cambiar nada; si ya se aplico y falla un observador lanza MovimientoAplicadoException
+    public void acreditarTransferencia(Cuenta origen, Cuenta destino, BigDecimal monto){
+        ReentrantLock candado = candadoMovimiento(destino);
+        try {
+            destino.aplicarCredito(monto, origen.getId());
+            notificarTransferencia(origen, destino, monto);
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    //Regresa al origen el monto de una transferencia cuyo credito se rechazo; como el debito no se notifico,
+    //la devolucion tampoco
+    public void devolverTransferencia(Cuenta origen, Cuenta destino, BigDecimal monto){
+        ReentrantLock candado = candadoMovimiento(origen);
+        try {
+            origen.aplicarCredito(monto, destino.getId());
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    private static void soltar(ReentrantLock candado){
+        if (candado != null) {
+            candado.unlock();
+        }
+    }
+
+    //Variantes idempotentes: si la clave ya se uso en los ultimos minutos regresan (o lanzan) el resultado guardado
+    //en lugar de transferir otra vez. Usar la misma clave con otra transferencia lanza IllegalArgumentException
+    public void transferir(String clave, Cuenta origen, Cuenta destino, BigDecimal monto){
+        if (tryTransferir(clave, origen, destino, monto) != ResultadoOperacion.EXITOSA) {
+            throw excepcionesSinTraza ? DineroInsuficienteException.sinTraza()
+                    : new DineroInsuficienteException("Dinero insuficiente");
+        }
+    }
+
+    public ResultadoOperacion tryTransferir(String clave, Cuenta origen, Cuenta destino, BigDecimal monto){
+        return getCacheIdempotencia().ejecutar(clave, origen, destino, monto, () -> tryTransferir(origen, destino, monto));
+    }
+
+    //Se crea con los valores por defecto la primera vez que se usa una transferencia idempotente
+    public CacheIdempotencia getCacheIdempotencia() {
+        CacheIdempotencia cache = idempotencia;
+        if (cache == null) {
+            synchronized (this) {
+                if (idempotencia == null) {
+                    idempotencia = new CacheIdempotencia(IDEMPOTENCIA_MAXIMO_CLAVES, IDEMPOTENCIA_TTL_MINUTOS, TimeUnit.MINUTES);
+                }
+                cache = idempotencia;
+            }
+        }
+        return cache;
+    }
+
+    public void setCacheIdempotencia(CacheIdempotencia idempotencia) {
+        this.idempotencia = idempotencia;
+    }
+
+    //Aparta el monto del saldo disponible de la cuenta; la retencion se libera sola al pasar la duracion
+    public Retencion retener(Cuenta cuenta, BigDecimal monto, long duracion, TimeUnit unidad){
+        if (monto.signum() <= 0) {
+            throw new IllegalArgumentException("El monto a retener debe ser mayor que 0");
+        }
+        //Un monto que la escala de la cuenta no representa no se podria cobrar despues
+        cuenta.validarMonto(monto);
+        if (!cuenta.apartar(monto)) {
+            throw excepcionesSinTraza ? DineroInsuficienteException.sinTraza()
+                    : new DineroInsuficienteException("Dinero insuficiente");
+        }
+        Retencion retencion = new Retencion(cuenta, monto);
+        retencion.setVencimiento(getRuedaTemporizadores().programar(duracion, unidad, retencion::vencer));
+        return retencion;
+    }
+
+    //Se crea y arranca la primera vez que se retiene un monto
+    public RuedaTemporizadores getRuedaTemporizadores() {
+        RuedaTemporizadores r = rueda;
+        if (r == null) {
+            synchronized (this) {
+                if (rueda == null) {
+                    RuedaTemporizadores nueva = new RuedaTemporizadores(TICK_RETENCIONES_MILIS, TimeUnit.MILLISECONDS,
+                            NIVELES_RETENCIONES);
+                    nueva.iniciar();
+                    rueda = nueva;
+                }
+                r = rueda;
+            }
+        }
+        return r;
+    }
+
+    //Para usar una rueda propia (ej. avanzada a mano en pruebas); debe asignarse antes de la primera retencion
+    public void setRuedaTemporizadores(RuedaTemporizadores rueda) {
+        this.rueda = rueda;
+    }
+
+    //Aplica un lote de transferencias tomando los candados una sola vez. Primero se netean los movimientos
+    //por cuenta; si ningun saldo final queda negativo se aplica todo el lote, si no se rechazan en orden
+    //las transferencias que dejarian sin fondos al origen, igual que un ciclo de tryTransferir
+    public ResultadoLote transferirLote(List<Transferencia> lote){
+        boolean[] involucradas = new boolean[candados.length];
+        for (Transferencia t : lote) {
+            t.getOrigen().validarMonto(t.getMonto());
+            t.getDestino().validarMonto(t.getMonto());
+            involucradas[franja(t.getOrigen())] = true;
+            involucradas[franja(t.getDestino())] = true;
+        }
+        MedidorOperaciones m = medidor;
+        long inicio = m == null ? 0L : System.nanoTime();
+        for (int i = 0; i < candados.length; i++) {
+            if (involucradas[i]) {
+                bloquear(candados[i], m);
+            }
+        }
+        try {
+            while (true) {
+                int[] rechazadas = calcularRechazadas(lote);
+                Map<Cuenta, BigDecimal> netos = netear(lote, rechazadas);
+                if (aplicarNetos(netos)) {
+                    registrarHistorialLote(lote, rechazadas, netos);
+                    if (observadores.length > 0 || flujo != null) {
+                        try {
+                            notificarLote(lote, rechazadas);
+                        } catch (MovimientoAplicadoException e) {
+                            throw new LoteAplicadoException(new ResultadoLote(lote, rechazadas), e);
+                        }
+                    }
+                    if (m != null) {
+                        medirLote(m, lote.size(), rechazadas, System.nanoTime() - inicio);
+                    }
+                    return new ResultadoLote(lote, rechazadas);
+                }
+                //Un debito directo sobre una cuenta cambio su saldo mientras se calculaba el lote, se vuelve a calcular
+            }
+        } finally {
+            for (int i = candados.length - 1; i >= 0; i--) {
+                if (involucradas[i]) {
+                    candados[i].unlock();
+                }
+            }
+        }
+    }
+
+    //Con medidor se intenta primero sin esperar, asi solo se mide el tiempo cuando el candado esta ocupado
+    private static void bloquear(ReentrantLock candado, MedidorOperaciones m){
+        if (m == null) {
+            candado.lock();
+        } else if (!candado.tryLock()) {
+            long inicio = System.nanoTime();
+            candado.lock();
+            m.esperaCandado(System.nanoTime() - inicio);
+        }
+    }
+
+    //Cada transferencia del lote se reporta con el tiempo promedio del lote
+    private static void medirLote(MedidorOperaciones m, int total, int[] rechazadas, long nanos){
+        long promedio = total == 0 ? 0 : nanos / total;
+        int siguienteRechazada = 0;
+        for (int i = 0; i < total; i++) {
+            boolean rechazada = siguienteRechazada < rechazadas.length && rechazadas[siguienteRechazada] == i;
+            if (rechazada) {
+                siguienteRechazada++;
+            }
+            m.operacion(TipoOperacion.TRANSFERENCIA, promedio, !rechazada);
+        }
+    }
+
+    private static Map<Cuenta, BigDecimal> netear(List<Transferencia> lote, int[] rechazadas){
+        Map<Cuenta, BigDecimal> netos = new HashMap<>();
+        int siguienteRechazada = 0;
+        for (int i = 0; i < lote.size(); i++) {
+            if (siguienteRechazada < rechazadas.length && rechazadas[siguienteRechazada] == i) {
+                siguienteRechazada++;
+                continue;
+            }
+            Transferencia t = lote.get(i);
+            netos.merge(t.getOrigen(), t.getMonto().negate(), BigDecimal::add);
+            netos.merge(t.getDestino(), t.getMonto(), BigDecimal::add);
+        }
+        return netos;
+    }
+
+    private static int[] calcularRechazadas(List<Transferencia> lote){
+        boolean todasValidas = true;
+        for (Map.Entry<Cuenta, BigDecimal> neto : netear(lote, new int[0]).entrySet()) {
+            if (neto.getKey().getSaldoDisponible().add(neto.getValue()).compareTo(BigDecimal.ZERO) < 0) {
+                todasValidas = false;
+                break;
+            }
+        }
+        if (todasValidas) {
+            return new int[0];
+        }
+        //Algun saldo quedaria negativo: se recorre el lote en orden con saldos tentativos
+        Map<Cuenta, BigDecimal> tentativos = new HashMap<>();
+        List<Integer> rechazadas = new ArrayList<>();
+        for (int i = 0; i < lote.size(); i++) {
+            Transferencia t = lote.get(i);
+            BigDecimal saldoOrigen = tentativos.computeIfAbsent(t.getOrigen(), Cuenta::getSaldoDisponible).subtract(t.getMonto());
+            if (saldoOrigen.compareTo(BigDecimal.ZERO) < 0) {
+                rechazadas.add(i);
+                continue;
+            }
+            tentativos.put(t.getOrigen(), saldoOrigen);
+            tentativos.put(t.getDestino(), tentativos.computeIfAbsent(t.getDestino(), Cuenta::getSaldoDisponible).add(t.getMonto()));
+        }
+        return rechazadas.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //Primero se aplican los debitos; si alguno falla se revierten los ya aplicados y no se acredita nada
+    //Si un credito lanza excepcion (desbordamiento) se revierten los creditos y debitos ya aplicados
+    private static boolean aplicarNetos(Map<Cuenta, BigDecimal> netos){
+        List<Map.Entry<Cuenta, BigDecimal>> debitados = new ArrayList<>();
+        for (Map.Entry<Cuenta, BigDecimal> neto : netos.entrySet()) {
+            if (neto.getValue().signum() < 0) {
+                if (!neto.getKey().aplicarDebito(neto.getValue().negate())) {
+                    revertirDebitos(debitados);
+                    return false;
+                }
+                debitados.add(neto);
+            }
+        }
+        List<Map.Entry<Cuenta, BigDecimal>> acreditados = new ArrayList<>();
+        try {
+            for (Map.Entry<Cuenta, BigDecimal> neto : netos.entrySet()) {
+                if (neto.getValue().signum() > 0) {
+                    neto.getKey().aplicarCredito(neto.getValue());
+                    acreditados.add(neto);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Map.Entry<Cuenta, BigDecimal> aplicado : acreditados) {
+                aplicado.getKey().aplicarDebito(aplicado.getValue());
+            }
+            revertirDebitos(debitados);
+            throw e;
+        }
+        return true;
+    }
+
+    private static void revertirDebitos(List<Map.Entry<Cuenta, BigDecimal>> debitados){
+        for (Map.Entry<Cuenta, BigDecimal> aplicado : debitados) {
+            aplicado.getKey().aplicarCredito(aplicado.getValue().negate());
+        }
+    }
+
+    //El lote se aplica neteado, pero en el historial de cada cuenta se registra cada transferencia con el saldo
+    //que dejaria al aplicar el lote en orden, partiendo del saldo anterior al lote
+    private static void registrarHistorialLote(List<Transferencia> lote, int[] rechazadas, Map<Cuenta, BigDecimal> netos){
+        Map<Cuenta, BigDecimal> saldos = null;
+        int siguienteRechazada = 0;
+        for (int i = 0; i < lote.size(); i++) {
+            if (siguienteRechazada < rechazadas.length && rechazadas[siguienteRechazada] == i) {
+                siguienteRechazada++;
+                continue;
+            }
+            Transferencia t = lote.get(i);
+            Cuenta origen = t.getOrigen();
+            Cuenta destino = t.getDestino();
+            if (origen.getHistorial() == null && destino.getHistorial() == null) {
+                continue;
+            }
+            if (saldos == null) {
+                saldos = new HashMap<>();
+            }
+            BigDecimal saldoOrigen = saldos.computeIfAbsent(origen, c -> c.getSaldo().subtract(netos.get(c)))
+                    .subtract(t.getMonto());
+            saldos.put(origen, saldoOrigen);
+            origen.registrarMovimiento(TipoMovimiento.TRANSFERENCIA_ENVIADA, t.getMonto(), destino.getId(), saldoOrigen);
+            BigDecimal saldoDestino = saldos.computeIfAbsent(destino, c -> c.getSaldo().subtract(netos.get(c)))
+                    .add(t.getMonto());
+            saldos.put(destino, saldoDestino);
+            destino.registrarMovimiento(TipoMovimiento.TRANSFERENCIA_RECIBIDA, t.getMonto(), origen.getId(), saldoDestino);
+        }
+    }
+
+    //Cada transferencia aceptada del lote se notifica por separado
+    private void notificarLote(List<Transferencia> lote, int[] rechazadas){
+        int siguienteRechazada = 0;
+        for (int i = 0; i < lote.size(); i++) {
+            if (siguienteRechazada < rechazadas.length && rechazadas[siguienteRechazada] == i) {
+                siguienteRechazada++;
+                continue;
+            }
+            Transferencia t = lote.get(i);
+            notificarTransferencia(t.getOrigen(), t.getDestino(), t.getMonto());
+        }
+    }
+
+    public synchronized void addObservador(ObservadorMovimientos observador){
+        ObservadorMovimientos[] actuales = observadores;
+        ObservadorMovimientos[] nuevos = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevos[actuales.length] = observador;
+        observadores = nuevos;
+    }
+
+    public synchronized boolean removeObservador(ObservadorMovimientos observador){
+        ObservadorMovimientos[] actuales = observadores;
+        for (int i = 0; i < actuales.length; i++) {
+            if (actuales[i] == observador) {
+                ObservadorMovimientos[] nuevos = new ObservadorMovimientos[actuales.length - 1];
+                System.arraycopy(actuales, 0, nuevos, 0, i);
+                System.arraycopy(actuales, i + 1, nuevos, i, actuales.length - i - 1);
+                observadores = nuevos;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Empieza a mantener los totales del banco con cada movimiento. Se toma el estado inicial con las transferencias
+    //detenidas; las altas y los movimientos directos que ocurran durante la activacion pueden quedar mal contados,
+    //por eso conviene activarlos al crear el banco
+    public synchronized AgregadosBanco activarAgregados(){
+        if (agregados == null) {
+            AgregadosBanco nuevos = new AgregadosBanco();
+            conTransferenciasDetenidas(() -> {
+                forEachCuenta(nuevos::alta);
+                addObservador(nuevos);
+                return null;
+            });
+            agregados = nuevos;
+        }
+        return agregados;
+    }
+
+    //Regresa null si no se han activado
+    public AgregadosBanco getAgregados() {
+        return agregados;
+    }
+
+    //Empieza a publicar cada movimiento en un FlujoSaldos con la capacidad indicada (potencia de 2)
+    public synchronized FlujoSaldos activarFlujo(int capacidad){
+        if (flujo == null) {
+            flujo = new FlujoSaldos(capacidad);
+        }
+        return flujo;
+    }
+
+    //Regresa null si no se ha activado
+    public FlujoSaldos getFlujo() {
+        return flujo;
+    }
+
+    //Deja de publicar y cierra las suscripciones
+    public void desactivarFlujo() {
+        FlujoSaldos anterior;
+        synchronized (this) {
+            anterior = flujo;
+            flujo = null;
+        }
+        if (anterior != null) {
+            anterior.close();
+        }
+    }
+
+    public MedidorOperaciones getMedidor() {
+        return medidor;
+    }
+
+    public void setMedidor(MedidorOperaciones medidor) {
+        this.medidor = medidor;
+    }
+
+    //Regresa 0 si no hay medidor, para no llamar a nanoTime cuando las metricas estan apagadas
+    long iniciarMedicion(){
+        return medidor == null ? 0L : System.nanoTime();
+    }
+
+    void terminarMedicion(TipoOperacion tipo, long inicio, boolean exitosa){
+        MedidorOperaciones m = medidor;
+        if (m != null && inicio != 0L) {
+            m.operacion(tipo, System.nanoTime() - inicio, exitosa);
+        }
+    }
+
+    //Las notificaciones siempre llegan despues de aplicar el movimiento: si un observador (o el flujo) falla, el que
+    //llamo recibe MovimientoAplicadoException y sabe que no debe deshacer ni repetir la operacion
+    private static MovimientoAplicadoException aplicado(RuntimeException e){
+        return e instanceof MovimientoAplicadoException ? (MovimientoAplicadoException) e
+                : new MovimientoAplicadoException("El movimiento se aplico pero fallo su notificacion", e);
+    }
+
+    void notificarDebito(Cuenta cuenta, BigDecimal monto){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicar(TipoMovimiento.DEBITO, cuenta, null, monto);
+            }
+            for (ObservadorMovimientos observador : observadores) {
+                observador.debito(cuenta, monto);
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    //Solo se crea el BigDecimal si hay observadores, el flujo recibe las unidades
+    void notificarDebitoUnidades(Cuenta cuenta, long unidades, int escala){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicarUnidades(TipoMovimiento.DEBITO, cuenta, unidades, escala);
+            }
+            ObservadorMovimientos[] actuales = observadores;
+            if (actuales.length > 0) {
+                BigDecimal monto = BigDecimal.valueOf(unidades, escala);
+                for (ObservadorMovimientos observador : actuales) {
+                    observador.debito(cuenta, monto);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    void notificarCredito(Cuenta cuenta, BigDecimal monto){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicar(TipoMovimiento.CREDITO, cuenta, null, monto);
+            }
+            for (ObservadorMovimientos observador : observadores) {
+                observador.credito(cuenta, monto);
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    void notificarCreditoUnidades(Cuenta cuenta, long unidades, int escala){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicarUnidades(TipoMovimiento.CREDITO, cuenta, unidades, escala);
+            }
+            ObservadorMovimientos[] actuales = observadores;
+            if (actuales.length > 0) {
+                BigDecimal monto = BigDecimal.valueOf(unidades, escala);
+                for (ObservadorMovimientos observador : actuales) {
+                    observador.credito(cuenta, monto);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    void notificarTransferencia(Cuenta origen, Cuenta destino, BigDecimal monto){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicar(TipoMovimiento.TRANSFERENCIA_ENVIADA, origen, destino, monto);
+            }
+            for (ObservadorMovimientos observador : observadores) {
+                observador.transferencia(origen, destino, monto);
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    void notificarSaldoAsignado(Cuenta cuenta, BigDecimal anterior, BigDecimal saldo){
+        try {
+            FlujoSaldos f = flujo;
+            if (f != null) {
+                f.publicar(TipoMovimiento.SALDO_ASIGNADO, cuenta, null, saldo);
+            }
+            for (ObservadorMovimientos observador : observadores) {
+                observador.saldoAsignado(cuenta, anterior, saldo);
+            }
+        } catch (RuntimeException e) {
+            throw aplicado(e);
+        }
+    }
+
+    //Con observadores los movimientos directos de una cuenta se hacen con su franja tomada, igual que las
+    //transferencias. Asi una instantanea, que bloquea todas las franjas, nunca encuentra un saldo ya cambiado
+    //cuyo movimiento aun no se notifica (ej. al diario). Sin observadores regresa null y no se bloquea nada
+    ReentrantLock candadoMovimiento(Cuenta cuenta) {
+        if (observadores.length == 0) {
+            return null;
+        }
+        ReentrantLock candado = candados[franja(cuenta)];
+        candado.lock();
+        return candado;
+    }
+
+    private int franja(Cuenta cuenta) {
+        long h = cuenta.getId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (candados.length - 1);
     }
 
     public void addCuenta(Cuenta cuenta){
-        cuentas.add(cuenta);
+        cuentasPorId.put(cuenta.getId(), cuenta);
+        if (cuenta.getPersona() != null) {
+            //Si la persona ya tiene cuenta, la busqueda por persona sigue regresando la primera
+            cuentasPorPersona.putIfAbsent(cuenta.getPersona(), cuenta);
+        }
         cuenta.setBanco(this);
+        for (ObservadorMovimientos observador : observadores) {
+            observador.alta(cuenta);
+        }
+    }
+
+    synchronized void registrarAlmacen(AlmacenColumnar almacen){
+        AlmacenColumnar[] actuales = almacenes;
+        AlmacenColumnar[] nuevos = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevos[actuales.length] = almacen;
+        almacenes = nuevos;
+    }
+
+    //Alta de una cuenta de un almacen columnar: no se indexa, solo se notifica como addCuenta
+    void altaColumnar(Cuenta vista){
+        for (ObservadorMovimientos observador : observadores) {
+            observador.alta(vista);
+        }
+    }
+
+    public boolean removeCuenta(Cuenta cuenta){
+        if (!cuentasPorId.remove(cuenta.getId(), cuenta)) {
+            return false;
+        }
+        if (cuenta.getPersona() != null) {
+            cuentasPorPersona.remove(cuenta.getPersona(), cuenta);
+        }
+        cuenta.setBanco(null);
+        for (ObservadorMovimientos observador : observadores) {
+            observador.baja(cuenta);
+        }
+        return true;
+    }
+
+    //Regresa null si no existe una cuenta con ese id
+    public Cuenta buscarCuenta(long id){
+        Cuenta cuenta = cuentasPorId.get(id);
+        if (cuenta == null) {
+            for (AlmacenColumnar almacen : almacenes) {
+                if (almacen.contiene(id)) {
+                    return almacen.buscarCuenta(id);
+                }
+            }
+        }
+        return cuenta;
+    }
+
+    //Regresa null si la persona no tiene cuenta en el banco
+    public Cuenta buscarCuenta(String persona){
+        return cuentasPorPersona.get(persona);
+    }
+
+    //Con almacenes columnares muy grandes se queda en Integer.MAX_VALUE
+    public int getNumeroCuentas(){
+        long total = cuentasPorId.size();
+        for (AlmacenColumnar almacen : almacenes) {
+            total += almacen.getNumeroCuentas();
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    //Recorre las cuentas sin copiarlas, no bloquea las operaciones concurrentes. Las cuentas de los almacenes
+    //columnares llegan como vistas nuevas
+    public void forEachCuenta(Consumer<Cuenta> accion){
+        cuentasPorId.values().forEach(accion);
+        for (AlmacenColumnar almacen : almacenes) {
+            almacen.forEachCuenta(accion);
+        }
+    }
+
+    //Consultas que recorren las cuentas en paralelo (pool fork-join comun) sin bloquear las transferencias.
+    //Cada saldo se lee de forma atomica, pero una transferencia puede verse a medias; para un total exacto
+    //se usa AgregadosBanco o la consulta dentro de conTransferenciasDetenidas
+    public BigDecimal sumarSaldos(){
+        BigDecimal total = cuentasPorId.reduceValues(UMBRAL_PARALELO, Cuenta::getSaldo, BigDecimal::add);
+        if (total == null) {
+            total = BigDecimal.ZERO;
+        }
+        //Los almacenes suman directo sobre su columna de saldos
+        for (AlmacenColumnar almacen : almacenes) {
+            total = total.add(BigDecimal.valueOf(almacen.getSaldoTotalUnidades(), almacen.getEscala()));
+        }
+        return total;
+    }
+
+    public long contarSaldosMenoresA(BigDecimal limite){
+        long total = cuentasPorId.reduceValuesToLong(UMBRAL_PARALELO,
+                c -> c.getSaldo().compareTo(limite) < 0 ? 1L : 0L, 0L, Long::sum);
+        for (AlmacenColumnar almacen : almacenes) {
+            total += almacen.cuentas(UMBRAL_PARALELO).filter(c -> c.getSaldo().compareTo(limite) < 0).count();
+        }
+        return total;
+    }
+
+    //Cuentas con los n saldos mas altos, de mayor a menor
+    public List<Cuenta> mayoresSaldos(int n){
+        return ConsultasSaldos.mayores(cuentasPorId, almacenes, UMBRAL_PARALELO, n);
+    }
+
+    //El resultado tiene limites.length + 1 posiciones: la posicion i cuenta los saldos menores que limites[i]
+    //(y mayores o iguales que limites[i - 1]); la ultima los mayores o iguales que el ultimo limite.
+    //Los limites deben estar en orden ascendente
+    public long[] histogramaSaldos(BigDecimal... limites){
+        return ConsultasSaldos.histograma(cuentasPorId, almacenes, UMBRAL_PARALELO, limites);
+    }
+
+    //Instantanea consistente de todos los saldos sin detener a los que escriben: las franjas solo se bloquean para
+    //marcar el inicio (ninguna transferencia queda a medias) y despues cada cuenta guarda su saldo anterior la primera
+    //vez que cambia. Las altas y bajas de cuentas durante la instantanea pueden aparecer o no
+    public InstantaneaSaldos instantaneaSaldos(){
+        return instantaneaSaldos(null);
+    }
+
+    //alMarcar se ejecuta con todas las franjas bloqueadas justo antes de marcar el inicio, ej. para leer la posicion
+    //de un diario: los movimientos notificados antes quedan en la instantanea y los que se notifican despues no
+    public InstantaneaSaldos instantaneaSaldos(Runnable alMarcar){
+        candadoInstantaneas.lock();
+        try {
+            CapturaSaldos nueva = new CapturaSaldos(getNumeroCuentas());
+            conTransferenciasDetenidas(() -> {
+                if (alMarcar != null) {
+                    alMarcar.run();
+                }
+                captura = nueva;
+                return null;
+            });
+            try {
+                ConcurrentHashMap<Long, BigDecimal> saldos = new ConcurrentHashMap<>(Math.max(getNumeroCuentas(), 16));
+                cuentasPorId.forEachValue(UMBRAL_PARALELO, cuenta -> saldos.put(cuenta.getId(), nueva.preservar(cuenta)));
+                for (AlmacenColumnar almacen : almacenes) {
+                    almacen.cuentas(UMBRAL_PARALELO).forEach(cuenta -> saldos.put(cuenta.getId(), nueva.preservar(cuenta)));
+                }
+                return new InstantaneaSaldos(saldos);
+            } finally {
+                captura = null;
+            }
+        } finally {
+            candadoInstantaneas.unlock();
+        }
+    }
+
+    void preservarSaldo(Cuenta cuenta){
+        CapturaSaldos c = captura;
+        if (c != null) {
+            c.preservar(cuenta);
+        }
+    }
+
+    //Ejecuta la accion con todas las franjas bloqueadas: ninguna transferencia queda a medias mientras se ejecuta.
+    //Los debitos y creditos directos sobre una cuenta solo se detienen si el banco tiene observadores
+    public <T> T conTransferenciasDetenidas(Supplier<T> accion){
+        for (ReentrantLock candado : candados) {
+            candado.lock();
+        }
+        try {
+            return accion.get();
+        } finally {
+            for (int i = candados.length - 1; i >= 0; i--) {
+                candados[i].unlock();
+            }
+        }
+    }
+
+    void reindexarPersona(Cuenta cuenta, String anterior){
+        //Las vistas de AlmacenColumnar no estan en el indice por persona
+        if (cuentasPorId.get(cuenta.getId()) != cuenta) {
+            return;
+        }
+        if (anterior != null) {
+            cuentasPorPersona.remove(anterior, cuenta);
+        }
+        if (cuenta.getPersona() != null) {
+            cuentasPorPersona.putIfAbsent(cuenta.getPersona(), cuenta);
+        }
     }
 
     public String getNombre() {
@@ -30,11 +849,25 @@ public class Banco {
         this.nombre = nombre;
     }
 
+    public boolean isExcepcionesSinTraza() {
+        return excepcionesSinTraza;
+    }
+
+    public void setExcepcionesSinTraza(boolean excepcionesSinTraza) {
+        this.excepcionesSinTraza = excepcionesSinTraza;
+    }
+
+    //Copia inmutable de las cuentas agregadas con addCuenta, sin las de los almacenes columnares
     public List<Cuenta> getCuentas() {
-        return cuentas;
+        return List.copyOf(cuentasPorId.values());
     }
 
     public void setCuentas(List<Cuenta> cuentas) {
-        this.cuentas = cuentas;
+        for (Cuenta cuenta : cuentasPorId.values()) {
+            removeCuenta(cuenta);
+        }
+        for (Cuenta cuenta : cuentas) {
+            addCuenta(cuenta);
+        }
     }
 }
@@ -0,0 +1,160 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Resultados recientes de transferencias por clave de idempotencia, para que un reintento no mueva el dinero otra vez.
+//Las claves se reparten en segmentos con su propio candado. Las solicitudes en proceso se guardan aparte y nunca se
+//quitan por tamanio ni por ttl: quitarlas dejaria que un reintento moviera el dinero otra vez. Al terminar pasan a
+//un LinkedHashMap en orden de termino con un maximo de entradas, y al agregar se quitan del inicio las que ya
+//vencieron. Asi la memoria no pasa de maximoEntradas mas las solicitudes en proceso.
+//Si llega un duplicado mientras la primera solicitud sigue en proceso, espera su resultado.
+public class CacheIdempotencia {
+    private final Segmento[] segmentos;
+    private final long ttlNanos;
+    private final LongAdder duplicados = new LongAdder();
+
+    public CacheIdempotencia(int maximoEntradas, long ttl, TimeUnit unidad) {
+        if (maximoEntradas <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("El maximo de entradas y el ttl deben ser mayores que 0");
+        }
+        int numero = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1,
+                Integer.highestOneBit(maximoEntradas));
+        this.segmentos = new Segmento[numero];
+        for (int i = 0; i < numero; i++) {
+            //El maximo se reparte entre los segmentos, el total nunca lo supera
+            segmentos[i] = new Segmento(maximoEntradas / numero + (i < maximoEntradas % numero ? 1 : 0));
+        }
+        this.ttlNanos = unidad.toNanos(ttl);
+    }
+
+    //Regresa el resultado guardado para la clave o ejecuta la transferencia y guarda su resultado.
+    //Los errores distintos a falta de fondos no se guardan, la siguiente solicitud con la clave lo vuelve a intentar
+    ResultadoOperacion ejecutar(String clave, Cuenta origen, Cuenta destino, BigDecimal monto,
+                                Supplier<ResultadoOperacion> transferencia) {
+        Segmento segmento = segmento(clave);
+        long ahora = System.nanoTime();
+        Entrada existente;
+        Entrada nueva = null;
+        synchronized (segmento) {
+            existente = segmento.enProceso.get(clave);
+            if (existente == null) {
+                existente = segmento.terminadas.get(clave);
+                if (existente != null && ahora - existente.terminada > ttlNanos) {
+                    segmento.terminadas.remove(clave);
+                    existente = null;
+                }
+            }
+            if (existente == null) {
+                nueva = new Entrada(origen.getId(), destino.getId(), monto);
+                segmento.enProceso.put(clave, nueva);
+            }
+        }
+        if (existente != null) {
+            existente.validar(clave, origen, destino, monto);
+            duplicados.increment();
+            return existente.esperar();
+        }
+        ResultadoOperacion resultado;
+        try {
+            resultado = transferencia.get();
+        } catch (RuntimeException e) {
+            synchronized (segmento) {
+                segmento.enProceso.remove(clave);
+            }
+            nueva.resultado.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (segmento) {
+            segmento.terminar(clave, nueva, System.nanoTime());
+        }
+        nueva.resultado.complete(resultado);
+        return resultado;
+    }
+
+    private Segmento segmento(String clave) {
+        int h = clave.hashCode();
+        return segmentos[(h ^ (h >>> 16)) & (segmentos.length - 1)];
+    }
+
+    public int getTamanio() {
+        int total = 0;
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                total += segmento.enProceso.size() + segmento.terminadas.size();
+            }
+        }
+        return total;
+    }
+
+    //Solicitudes que se contestaron con un resultado guardado
+    public long getDuplicados() {
+        return duplicados.sum();
+    }
+
+    private final class Segmento {
+        private final int maximo;
+        final Map<String, Entrada> enProceso = new HashMap<>();
+        //En orden de termino, la mas antigua primero
+        final LinkedHashMap<String, Entrada> terminadas = new LinkedHashMap<>();
+
+        Segmento(int maximo) {
+            this.maximo = maximo;
+        }
+
+        void terminar(String clave, Entrada entrada, long ahora) {
+            enProceso.remove(clave);
+            entrada.terminada = ahora;
+            //Se quitan del inicio las vencidas y las que no caben
+            Iterator<Entrada> entradas = terminadas.values().iterator();
+            while (entradas.hasNext()) {
+                Entrada mayor = entradas.next();
+                if (terminadas.size() < maximo && ahora - mayor.terminada <= ttlNanos) {
+                    break;
+                }
+                entradas.remove();
+            }
+            terminadas.put(clave, entrada);
+        }
+    }
+
+    private static final class Entrada {
+        final long origen;
+        final long destino;
+        final BigDecimal monto;
+        final CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+        //El ttl cuenta desde que termino la transferencia; solo se escribe y lee con el candado del segmento
+        long terminada;
+
+        Entrada(long origen, long destino, BigDecimal monto) {
+            this.origen = origen;
+            this.destino = destino;
+            this.monto = monto;
+        }
+
+        void validar(String clave, Cuenta origen, Cuenta destino, BigDecimal monto) {
+            if (this.origen != origen.getId() || this.destino != destino.getId() || this.monto.compareTo(monto) != 0) {
+                throw new IllegalArgumentException("La clave " + clave + " ya se uso con otra transferencia");
+            }
+        }
+
+        ResultadoOperacion esperar() {
+            try {
+                return resultado.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
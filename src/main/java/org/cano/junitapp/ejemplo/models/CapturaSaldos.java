@@ -0,0 +1,26 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Saldos guardados mientras se toma una instantanea. Antes de cambiar una cuenta, el que escribe guarda su saldo si
+//nadie lo ha guardado; el lector hace lo mismo con cada cuenta. Gana el primero (putIfAbsent), y como nadie cambia
+//una cuenta sin intentar guardarla antes, el valor guardado siempre es el saldo al inicio de la instantanea
+final class CapturaSaldos {
+    private final ConcurrentHashMap<Long, BigDecimal> saldos;
+
+    CapturaSaldos(int cuentas) {
+        saldos = new ConcurrentHashMap<>(Math.max(cuentas, 16));
+    }
+
+    BigDecimal preservar(Cuenta cuenta) {
+        Long id = cuenta.getId();
+        BigDecimal guardado = saldos.get(id);
+        if (guardado != null) {
+            return guardado;
+        }
+        BigDecimal actual = cuenta.getSaldo();
+        guardado = saldos.putIfAbsent(id, actual);
+        return guardado != null ? guardado : actual;
+    }
+}
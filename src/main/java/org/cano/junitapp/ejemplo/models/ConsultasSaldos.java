@@ -0,0 +1,107 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+//Recorridos en paralelo para las consultas de Banco. Cada tarea del recorrido acumula en su propia estructura
+//(el contenedor del Collector) y al final se combinan, asi no hay un objeto intermedio por cuenta.
+//Los saldos cambian mientras corre la consulta: cada saldo se lee una sola vez y se compara con ese valor leido
+final class ConsultasSaldos {
+    private static final Comparator<SaldoLeido> POR_SALDO = Comparator.comparing(s -> s.saldo);
+
+    private ConsultasSaldos() {
+    }
+
+    static List<Cuenta> mayores(ConcurrentHashMap<Long, Cuenta> cuentas, AlmacenColumnar[] almacenes, long umbral, int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        //Cada tarea conserva sus n mayores en un monticulo de minimos
+        PriorityQueue<SaldoLeido> total = recorrer(cuentas, almacenes, umbral).collect(Collector.of(
+                () -> new PriorityQueue<SaldoLeido>(n + 1, POR_SALDO),
+                (monticulo, cuenta) -> agregar(monticulo, cuenta, cuenta.getSaldo(), n),
+                (izquierdo, derecho) -> {
+                    for (SaldoLeido leido : derecho) {
+                        agregar(izquierdo, leido.cuenta, leido.saldo, n);
+                    }
+                    return izquierdo;
+                }));
+        List<SaldoLeido> ordenados = new ArrayList<>(total);
+        ordenados.sort(POR_SALDO.reversed());
+        List<Cuenta> resultado = new ArrayList<>(ordenados.size());
+        for (SaldoLeido leido : ordenados) {
+            resultado.add(leido.cuenta);
+        }
+        return resultado;
+    }
+
+    //El par solo se crea si la cuenta entra al monticulo
+    private static void agregar(PriorityQueue<SaldoLeido> monticulo, Cuenta cuenta, BigDecimal saldo, int n) {
+        if (monticulo.size() < n) {
+            monticulo.add(new SaldoLeido(cuenta, saldo));
+        } else if (saldo.compareTo(monticulo.peek().saldo) > 0) {
+            monticulo.poll();
+            monticulo.add(new SaldoLeido(cuenta, saldo));
+        }
+    }
+
+    static long[] histograma(ConcurrentHashMap<Long, Cuenta> cuentas, AlmacenColumnar[] almacenes, long umbral,
+                             BigDecimal[] limites) {
+        for (int i = 1; i < limites.length; i++) {
+            if (limites[i - 1].compareTo(limites[i]) >= 0) {
+                throw new IllegalArgumentException("Los limites deben estar en orden ascendente");
+            }
+        }
+        return recorrer(cuentas, almacenes, umbral).collect(Collector.of(
+                () -> new long[limites.length + 1],
+                (conteos, cuenta) -> conteos[posicion(limites, cuenta.getSaldo())]++,
+                (izquierdo, derecho) -> {
+                    for (int i = 0; i < izquierdo.length; i++) {
+                        izquierdo[i] += derecho[i];
+                    }
+                    return izquierdo;
+                }));
+    }
+
+    //En paralelo solo si hay al menos umbral cuentas, igual que el umbral de forEachValue. Las cuentas de los
+    //almacenes se recorren como vistas despues de las del indice
+    private static Stream<Cuenta> recorrer(ConcurrentHashMap<Long, Cuenta> cuentas, AlmacenColumnar[] almacenes,
+                                           long umbral) {
+        Stream<Cuenta> todas = cuentas.mappingCount() >= umbral ? cuentas.values().parallelStream() : cuentas.values().stream();
+        for (AlmacenColumnar almacen : almacenes) {
+            todas = Stream.concat(todas, almacen.cuentas(umbral));
+        }
+        return todas;
+    }
+
+    //Busqueda binaria del primer limite mayor que el saldo
+    private static int posicion(BigDecimal[] limites, BigDecimal saldo) {
+        int bajo = 0;
+        int alto = limites.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (saldo.compareTo(limites[medio]) < 0) {
+                alto = medio;
+            } else {
+                bajo = medio + 1;
+            }
+        }
+        return bajo;
+    }
+
+    private static final class SaldoLeido {
+        final Cuenta cuenta;
+        final BigDecimal saldo;
+
+        SaldoLeido(Cuenta cuenta, BigDecimal saldo) {
+            this.cuenta = cuenta;
+            this.saldo = saldo;
+        }
+    }
+}
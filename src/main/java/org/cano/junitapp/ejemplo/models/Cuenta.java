@@ -3,30 +3,488 @@ package org.cano.junitapp.ejemplo.models;
 import org.cano.junitapp.ejemplo.exceptions.DineroInsuficienteException;
 
 import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Cuenta {
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+    private static final AtomicLongFieldUpdater<Cuenta> ULTIMO_CIERRE =
+            AtomicLongFieldUpdater.newUpdater(Cuenta.class, "ultimoCierre");
+
+    //Identificador estable de la cuenta, no cambia aunque cambie la persona o el saldo
+    private final long id;
     private String persona;
-    private BigDecimal saldo;
+    private final Saldo saldo;
     private Banco banco;
-
+    //Sin historial (null) los movimientos no se registran ni toman el monitor del historial
+    private volatile HistorialCuenta historial;
+    //Se crea con la primera retencion; mientras no exista los debitos no toman ningun monitor
+    private volatile Retenido retenido;
+    //Dia (epochDay) del ultimo cierre aplicado, para que el cierre de un dia no se aplique dos veces
+    private volatile long ultimoCierre = Long.MIN_VALUE;
 
     public Cuenta(String persona, BigDecimal saldo) {
+        this(SECUENCIA.incrementAndGet(), persona, new SaldoDecimal(saldo));
+    }
+
+    //Cuenta con saldo en punto fijo: se guarda como long en unidades menores con la escala indicada
+    public Cuenta(String persona, BigDecimal saldo, int escala) {
+        this(SECUENCIA.incrementAndGet(), persona, new SaldoFijo(saldo, escala));
+    }
+
+    //Constructores con id explicito, para reconstruir cuentas guardadas (diario, checkpoints)
+    public Cuenta(long id, String persona, BigDecimal saldo) {
+        this(reservarId(id), persona, new SaldoDecimal(saldo));
+    }
+
+    public Cuenta(long id, String persona, BigDecimal saldo, int escala) {
+        this(reservarId(id), persona, new SaldoFijo(saldo, escala));
+    }
+
+    //Tambien lo usa AlmacenColumnar para crear vistas sobre sus columnas
+    Cuenta(long id, String persona, Saldo saldo) {
+        this.id = id;
         this.saldo = saldo;
         this.persona = persona;
     }
 
+    //Las cuentas nuevas nunca deben reutilizar un id ya restaurado
+    private static long reservarId(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("El id de la cuenta debe ser mayor que 0");
+        }
+        SECUENCIA.accumulateAndGet(id, Math::max);
+        return id;
+    }
+
+    //Reserva un rango de ids consecutivos y regresa el primero
+    static long reservarIds(long cantidad) {
+        return SECUENCIA.getAndAdd(cantidad) + 1;
+    }
+
     //Metodo debito (restar)
     public void debito(BigDecimal monto){
-        BigDecimal nuevoSaldo = saldo.subtract(monto);
-        if(nuevoSaldo.compareTo(BigDecimal.ZERO)<0){
-            throw new DineroInsuficienteException("Dinero insuficiente");
+        if(tryDebito(monto) != ResultadoOperacion.EXITOSA){
+            throw dineroInsuficiente();
+        }
+    }
+
+    //Igual que debito pero sin lanzar excepcion cuando no hay fondos suficientes
+    public ResultadoOperacion tryDebito(BigDecimal monto){
+        Banco b = banco;
+        if (b == null) {
+            return debitar(monto, TipoMovimiento.DEBITO, 0L) ? ResultadoOperacion.EXITOSA : ResultadoOperacion.DINERO_INSUFICIENTE;
+        }
+        ReentrantLock candado = b.candadoMovimiento(this);
+        try {
+            long inicio = b.iniciarMedicion();
+            boolean exitosa = debitar(monto, TipoMovimiento.DEBITO, 0L);
+            b.terminarMedicion(TipoOperacion.DEBITO, inicio, exitosa);
+            if (!exitosa) {
+                return ResultadoOperacion.DINERO_INSUFICIENTE;
+            }
+            b.notificarDebito(this, monto);
+            return ResultadoOperacion.EXITOSA;
+        } finally {
+            soltar(candado);
         }
-        this.saldo = nuevoSaldo;
     }
 
     //Metodo credito (sumar)
     public void credito(BigDecimal monto){
-        this.saldo = saldo.add(monto);
+        Banco b = banco;
+        if (b == null) {
+            acreditar(monto, TipoMovimiento.CREDITO, 0L);
+            return;
+        }
+        ReentrantLock candado = b.candadoMovimiento(this);
+        try {
+            long inicio = b.iniciarMedicion();
+            acreditar(monto, TipoMovimiento.CREDITO, 0L);
+            b.terminarMedicion(TipoOperacion.CREDITO, inicio, true);
+            b.notificarCredito(this, monto);
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    //Debito en unidades menores (ej. centavos), no crea objetos; solo para cuentas en punto fijo
+    public void debitoUnidades(long unidades){
+        if(tryDebitoUnidades(unidades) != ResultadoOperacion.EXITOSA){
+            throw dineroInsuficiente();
+        }
+    }
+
+    public ResultadoOperacion tryDebitoUnidades(long unidades){
+        SaldoFijo fijo = saldoFijo();
+        Banco b = banco;
+        if (b == null) {
+            return debitarUnidades(fijo, unidades) ? ResultadoOperacion.EXITOSA : ResultadoOperacion.DINERO_INSUFICIENTE;
+        }
+        ReentrantLock candado = b.candadoMovimiento(this);
+        try {
+            long inicio = b.iniciarMedicion();
+            boolean exitosa = debitarUnidades(fijo, unidades);
+            b.terminarMedicion(TipoOperacion.DEBITO, inicio, exitosa);
+            if (!exitosa) {
+                return ResultadoOperacion.DINERO_INSUFICIENTE;
+            }
+            b.notificarDebitoUnidades(this, unidades, fijo.getEscala());
+            return ResultadoOperacion.EXITOSA;
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    //Credito en unidades menores (ej. centavos), no crea objetos; solo para cuentas en punto fijo
+    public void creditoUnidades(long unidades){
+        SaldoFijo fijo = saldoFijo();
+        Banco b = banco;
+        if (b == null) {
+            acreditarUnidades(fijo, unidades);
+            return;
+        }
+        ReentrantLock candado = b.candadoMovimiento(this);
+        try {
+            long inicio = b.iniciarMedicion();
+            acreditarUnidades(fijo, unidades);
+            b.terminarMedicion(TipoOperacion.CREDITO, inicio, true);
+            b.notificarCreditoUnidades(this, unidades, fijo.getEscala());
+        } finally {
+            soltar(candado);
+        }
+    }
+
+    private static void soltar(ReentrantLock candado){
+        if (candado != null) {
+            candado.unlock();
+        }
+    }
+
+    //Lanza ArithmeticException si el monto no cabe en la escala del saldo, sirve para validar antes de mover dinero
+    public void validarMonto(BigDecimal monto){
+        saldo.validar(monto);
+    }
+
+    //Movimientos sin notificar al banco, los usa Banco cuando registra la operacion completa (ej. transferencia)
+    boolean aplicarDebito(BigDecimal monto, long contraparte){
+        return debitar(monto, TipoMovimiento.TRANSFERENCIA_ENVIADA, contraparte);
+    }
+
+    void aplicarCredito(BigDecimal monto, long contraparte){
+        acreditar(monto, TipoMovimiento.TRANSFERENCIA_RECIBIDA, contraparte);
+    }
+
+    //Sin registrar en el historial, para los lotes que registran despues cada transferencia (ver Banco.transferirLote)
+    boolean aplicarDebito(BigDecimal monto){
+        antesDeCambiar();
+        return debitarSaldo(monto, null);
+    }
+
+    void aplicarCredito(BigDecimal monto){
+        antesDeCambiar();
+        saldo.acreditar(monto);
+    }
+
+    //Si el banco esta tomando una instantanea de saldos, guarda el saldo antes de cambiarlo
+    private void antesDeCambiar(){
+        Banco b = banco;
+        if (b != null) {
+            b.preservarSaldo(this);
+        }
+    }
+
+    //Con historial la operacion y su registro se hacen con el monitor del historial tomado,
+    //asi el saldo registrado es el que dejo este movimiento
+    private boolean debitar(BigDecimal monto, TipoMovimiento tipo, long contraparte){
+        return debitar(monto, tipo, contraparte, null);
+    }
+
+    private boolean debitar(BigDecimal monto, TipoMovimiento tipo, long contraparte, BigDecimal liberado){
+        HistorialCuenta h = historial;
+        if (h != null && liberado == null && saldo instanceof SaldoFijo) {
+            SaldoFijo fijo = (SaldoFijo) saldo;
+            return debitarUnidades(fijo, fijo.aUnidades(monto), tipo, contraparte);
+        }
+        antesDeCambiar();
+        if (h == null) {
+            return debitarSaldo(monto, liberado);
+        }
+        synchronized (h) {
+            if (!debitarSaldo(monto, liberado)) {
+                return false;
+            }
+            registrar(h, tipo, monto, contraparte);
+            return true;
+        }
+    }
+
+    private void acreditar(BigDecimal monto, TipoMovimiento tipo, long contraparte){
+        HistorialCuenta h = historial;
+        if (h != null && saldo instanceof SaldoFijo) {
+            SaldoFijo fijo = (SaldoFijo) saldo;
+            acreditarUnidades(fijo, fijo.aUnidades(monto), tipo, contraparte);
+            return;
+        }
+        antesDeCambiar();
+        if (h == null) {
+            saldo.acreditar(monto);
+            return;
+        }
+        synchronized (h) {
+            saldo.acreditar(monto);
+            registrar(h, tipo, monto, contraparte);
+        }
+    }
+
+    private void registrar(HistorialCuenta h, TipoMovimiento tipo, BigDecimal monto, long contraparte){
+        if (saldo instanceof SaldoFijo) {
+            SaldoFijo fijo = (SaldoFijo) saldo;
+            h.registrar(tipo, fijo.aUnidades(monto), fijo.getUnidades(), fijo.getEscala(), contraparte);
+        } else {
+            h.registrar(tipo, monto, saldo.get(), contraparte);
+        }
+    }
+
+    private boolean debitarUnidades(SaldoFijo fijo, long unidades){
+        return debitarUnidades(fijo, unidades, TipoMovimiento.DEBITO, 0L);
+    }
+
+    //En punto fijo el monto se convierte una vez antes del monitor; dentro solo quedan el CAS y la escritura en el anillo
+    private boolean debitarUnidades(SaldoFijo fijo, long unidades, TipoMovimiento tipo, long contraparte){
+        antesDeCambiar();
+        HistorialCuenta h = historial;
+        if (h == null) {
+            return debitarSaldoUnidades(fijo, unidades);
+        }
+        synchronized (h) {
+            if (!debitarSaldoUnidades(fijo, unidades)) {
+                return false;
+            }
+            h.registrar(tipo, unidades, fijo.getUnidades(), fijo.getEscala(), contraparte);
+            return true;
+        }
+    }
+
+    private void acreditarUnidades(SaldoFijo fijo, long unidades){
+        acreditarUnidades(fijo, unidades, TipoMovimiento.CREDITO, 0L);
+    }
+
+    private void acreditarUnidades(SaldoFijo fijo, long unidades, TipoMovimiento tipo, long contraparte){
+        antesDeCambiar();
+        HistorialCuenta h = historial;
+        if (h == null) {
+            fijo.acreditar(unidades);
+            return;
+        }
+        synchronized (h) {
+            fijo.acreditar(unidades);
+            h.registrar(tipo, unidades, fijo.getUnidades(), fijo.getEscala(), contraparte);
+        }
+    }
+
+    //Con retenciones el debito se valida contra el saldo disponible con el monitor de las retenciones tomado.
+    //liberado es lo retenido que se suelta en la misma operacion (al cobrar una retencion)
+    private boolean debitarSaldo(BigDecimal monto, BigDecimal liberado){
+        Retenido r = retenido();
+        if (r != null) {
+            synchronized (r) {
+                BigDecimal queda = liberado == null ? r.total : r.total.subtract(liberado);
+                if (saldo.get().subtract(monto).compareTo(queda) < 0 || !saldo.debitar(monto)) {
+                    return false;
+                }
+                r.total = queda;
+                return true;
+            }
+        }
+        if (!saldo.debitar(monto)) {
+            return false;
+        }
+        if (retenido() != null && !cubreRetenido()) {
+            saldo.acreditar(monto);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean debitarSaldoUnidades(SaldoFijo fijo, long unidades){
+        if (retenido() != null) {
+            return debitarSaldo(BigDecimal.valueOf(unidades, fijo.getEscala()), null);
+        }
+        if (!fijo.debitar(unidades)) {
+            return false;
+        }
+        if (retenido() != null && !cubreRetenido()) {
+            fijo.acreditar(unidades);
+            return false;
+        }
+        return true;
+    }
+
+    //Un debito sin monitor pudo cruzarse con la primera retencion de la cuenta. El debito escribe el saldo y despues
+    //lee el retenido, la retencion escribe el retenido y despues lee el saldo: al menos uno ve al otro y se deshace
+    private boolean cubreRetenido(){
+        Retenido r = retenido();
+        synchronized (r) {
+            return saldo.get().compareTo(r.total) >= 0;
+        }
+    }
+
+    //Aparta el monto del saldo disponible sin moverlo; regresa false si el disponible no alcanza
+    boolean apartar(BigDecimal monto){
+        Retenido r = retenido();
+        if (r == null) {
+            if (saldo instanceof SaldoColumna) {
+                r = ((SaldoColumna) saldo).crearRetenido();
+                retenido = r;
+            } else {
+                synchronized (this) {
+                    if (retenido == null) {
+                        retenido = new Retenido();
+                    }
+                    r = retenido;
+                }
+            }
+        }
+        synchronized (r) {
+            BigDecimal nuevo = r.total.add(monto);
+            r.total = nuevo;
+            if (saldo.get().compareTo(nuevo) < 0) {
+                r.total = nuevo.subtract(monto);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    void soltar(BigDecimal monto){
+        Retenido r = retenido();
+        synchronized (r) {
+            r.total = r.total.subtract(monto);
+        }
+    }
+
+    //Las vistas de AlmacenColumnar comparten lo retenido de su cuenta por id: mientras la vista no lo tenga se busca
+    //en el almacen, asi una retencion hecha con otra vista tambien limita los debitos de esta
+    private Retenido retenido(){
+        Retenido r = retenido;
+        if (r == null && saldo instanceof SaldoColumna) {
+            r = ((SaldoColumna) saldo).buscarRetenido();
+            if (r != null) {
+                retenido = r;
+            }
+        }
+        return r;
+    }
+
+    //Cobra una retencion: debita el importe y suelta todo lo retenido en la misma operacion
+    void cobrarRetencion(BigDecimal retenido, BigDecimal importe){
+        Banco b = banco;
+        boolean exitosa;
+        if (b == null) {
+            exitosa = debitar(importe, TipoMovimiento.DEBITO, 0L, retenido);
+        } else {
+            ReentrantLock candado = b.candadoMovimiento(this);
+            try {
+                long inicio = b.iniciarMedicion();
+                exitosa = debitar(importe, TipoMovimiento.DEBITO, 0L, retenido);
+                b.terminarMedicion(TipoOperacion.DEBITO, inicio, exitosa);
+                if (exitosa) {
+                    b.notificarDebito(this, importe);
+                }
+            } finally {
+                soltar(candado);
+            }
+        }
+        if (!exitosa) {
+            throw new IllegalStateException("El saldo de la cuenta ya no cubre la retencion");
+        }
+    }
+
+    //Retiene el monto hasta que se cobre, se libere o venza; la cuenta debe estar en un banco
+    public Retencion retener(BigDecimal monto, long duracion, TimeUnit unidad){
+        Banco b = banco;
+        if (b == null) {
+            throw new IllegalStateException("La cuenta no esta en un banco");
+        }
+        return b.retener(this, monto, duracion, unidad);
+    }
+
+    public BigDecimal getRetenido(){
+        Retenido r = retenido();
+        return r == null ? BigDecimal.ZERO : r.total;
+    }
+
+    //Saldo menos lo retenido, es lo que se puede debitar o transferir
+    public BigDecimal getSaldoDisponible(){
+        Retenido r = retenido();
+        return r == null ? getSaldo() : getSaldo().subtract(r.total);
+    }
+
+    //Registra un movimiento ya aplicado con el saldo que dejo, lo usa Banco para las transferencias de un lote
+    void registrarMovimiento(TipoMovimiento tipo, BigDecimal monto, long contraparte, BigDecimal saldoResultante){
+        HistorialCuenta h = historial;
+        if (h != null) {
+            synchronized (h) {
+                h.registrar(tipo, monto, saldoResultante, contraparte);
+            }
+        }
+    }
+
+    public long getUltimoCierre(){
+        return ultimoCierre;
+    }
+
+    //Lo usa el cierre del dia para marcar la cuenta antes de aplicarle movimientos y desmarcarla si los deshace
+    public boolean cambiarUltimoCierre(long esperado, long nuevo){
+        return ULTIMO_CIERRE.compareAndSet(this, esperado, nuevo);
+    }
+
+    //Empieza a guardar los movimientos de la cuenta; si ya tenia historial regresa el mismo
+    public synchronized HistorialCuenta activarHistorial(int capacidad, int maximoPaginas){
+        if (historial == null) {
+            historial = new HistorialCuenta(capacidad, maximoPaginas);
+        }
+        return historial;
+    }
+
+    //Regresa null si la cuenta no tiene historial
+    public HistorialCuenta getHistorial(){
+        return historial;
+    }
+
+    public boolean isPuntoFijo() {
+        return saldo instanceof SaldoFijo;
+    }
+
+    public int getEscala() {
+        return saldoFijo().getEscala();
+    }
+
+    public long getSaldoUnidades() {
+        return saldoFijo().getUnidades();
+    }
+
+    //Si el banco lo indica se lanza la excepcion compartida sin traza en lugar de crear una nueva
+    private DineroInsuficienteException dineroInsuficiente() {
+        Banco b = banco;
+        if (b != null && b.isExcepcionesSinTraza()) {
+            return DineroInsuficienteException.sinTraza();
+        }
+        return new DineroInsuficienteException("Dinero insuficiente");
+    }
+
+    private SaldoFijo saldoFijo() {
+        if (!(saldo instanceof SaldoFijo)) {
+            throw new IllegalStateException("La cuenta no usa saldo en punto fijo");
+        }
+        return (SaldoFijo) saldo;
+    }
+
+    public long getId() {
+        return id;
     }
 
     public String getPersona() {
@@ -34,15 +492,44 @@ public class Cuenta {
     }
 
     public void setPersona(String persona) {
+        String anterior = this.persona;
         this.persona = persona;
+        //Las vistas de AlmacenColumnar tambien cambian el nombre guardado en la columna
+        if (saldo instanceof SaldoColumna) {
+            ((SaldoColumna) saldo).renombrar(persona);
+        }
+        //Si la cuenta ya esta en un banco hay que actualizar su indice por persona
+        Banco b = banco;
+        if (b != null) {
+            b.reindexarPersona(this, anterior);
+        }
     }
 
     public BigDecimal getSaldo() {
-        return saldo;
+        return saldo.get();
     }
 
     public void setSaldo(BigDecimal saldo) {
-        this.saldo = saldo;
+        Banco b = banco;
+        ReentrantLock candado = b == null ? null : b.candadoMovimiento(this);
+        try {
+            antesDeCambiar();
+            BigDecimal anterior;
+            HistorialCuenta h = historial;
+            if (h == null) {
+                anterior = this.saldo.set(saldo);
+            } else {
+                synchronized (h) {
+                    anterior = this.saldo.set(saldo);
+                    h.registrar(TipoMovimiento.SALDO_ASIGNADO, saldo.subtract(anterior), saldo, 0L);
+                }
+            }
+            if (b != null) {
+                b.notificarSaldoAsignado(this, anterior, saldo);
+            }
+        } finally {
+            soltar(candado);
+        }
     }
 
     public Banco getBanco() {
@@ -53,15 +540,22 @@ public class Cuenta {
         this.banco = banco;
     }
 
+    //Dos cuentas son iguales si tienen el mismo id, asi las vistas de AlmacenColumnar sobre la misma cuenta
+    //son iguales y el hash no cambia cuando se mueve el saldo o se cambia la persona
     @Override
     public boolean equals(Object obj) {
-        if(obj == null || !(obj instanceof Cuenta)){
+        if(!(obj instanceof Cuenta)){
             return false;
         }
-        Cuenta c = (Cuenta) obj;
-        if(this.persona == null || this.saldo == null){
-            return false;
-        }
-        return this.persona.equals(c.getPersona()) && this.saldo.equals(c.getSaldo());
+        return this.id == ((Cuenta) obj).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    static final class Retenido {
+        volatile BigDecimal total = BigDecimal.ZERO;
     }
 }
@@ -0,0 +1,8 @@
+package org.cano.junitapp.ejemplo.models;
+
+public enum EstadoRetencion {
+    ACTIVA,
+    COBRADA,
+    LIBERADA,
+    VENCIDA
+}
@@ -0,0 +1,65 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+
+//Ranura mutable del FlujoSaldos. Los productores llenan siempre los mismos objetos, no se crea uno por movimiento.
+//  DEBITO / CREDITO:       cuenta y monto
+//  TRANSFERENCIA_ENVIADA:  un solo evento por transferencia, cuenta es el origen y contraparte el destino
+//  SALDO_ASIGNADO:         el monto es el saldo nuevo
+//Las operaciones en unidades de punto fijo guardan unidades y escala; getMonto crea el BigDecimal al leerlo
+public final class EventoSaldo {
+    TipoMovimiento tipo;
+    Cuenta cuenta;
+    Cuenta contraparte;
+    BigDecimal monto;
+    long unidades;
+    int escala;
+
+    EventoSaldo() {
+    }
+
+    void copiarDe(EventoSaldo otro) {
+        tipo = otro.tipo;
+        cuenta = otro.cuenta;
+        contraparte = otro.contraparte;
+        monto = otro.monto;
+        unidades = otro.unidades;
+        escala = otro.escala;
+    }
+
+    public TipoMovimiento getTipo() {
+        return tipo;
+    }
+
+    public Cuenta getCuenta() {
+        return cuenta;
+    }
+
+    //null si el movimiento no es una transferencia
+    public Cuenta getContraparte() {
+        return contraparte;
+    }
+
+    public BigDecimal getMonto() {
+        return monto != null ? monto : BigDecimal.valueOf(unidades, escala);
+    }
+
+    //true si el monto viene en unidades de punto fijo y se puede leer sin crear objetos
+    public boolean isEnUnidades() {
+        return monto == null;
+    }
+
+    public long getUnidades() {
+        return unidades;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    @Override
+    public String toString() {
+        return tipo + " " + (cuenta == null ? null : cuenta.getId())
+                + (contraparte == null ? "" : " -> " + contraparte.getId()) + ": " + getMonto().toPlainString();
+    }
+}
@@ -0,0 +1,216 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Flujo de movimientos al estilo Disruptor: un anillo de EventoSaldo creados al inicio que los productores (los hilos
+//que hacen debitos, creditos y transferencias) llenan en orden de secuencia, sin crear objetos.
+//Publicar: se reclama una secuencia con un incremento atomico, se toma la ranura con compareAndSet de la secuencia
+//que tenia (una anterior ya publicada) a "en escritura", se copian los datos y se publica la secuencia en la ranura
+//con escritura release. Asi solo un productor escribe la ranura a la vez.
+//Cada suscripcion tiene su propio hilo y su secuencia; lee en lotes todas las secuencias consecutivas ya publicadas.
+//Solo las suscripciones BLOQUEAR frenan a los productores; las demas copian el evento y verifican despues que la
+//ranura no cambio (como un seqlock), si cambio el evento se cuenta como omitido. Ningun evento se entrega a medias.
+//Sin suscriptores bloqueantes, si un productor se detiene a mitad de una escritura mientras otros dan la vuelta
+//completa al anillo, el productor que llega a esa ranura pierde el compareAndSet y descarta su evento: lo marca
+//como descartado y los suscriptores lo cuentan como omitido
+public class FlujoSaldos implements AutoCloseable {
+    static final VarHandle PUBLICADAS = MethodHandles.arrayElementVarHandle(long[].class);
+    static final long EN_ESCRITURA = -1L;
+    //Ranura que aun no tiene ninguna secuencia; es menor que todas, asi el primer productor la puede tomar
+    static final long SIN_SECUENCIA = Long.MIN_VALUE;
+
+    private final EventoSaldo[] eventos;
+    //Secuencia publicada en cada ranura, o EN_ESCRITURA
+    private final long[] publicadas;
+    //Ultima secuencia de cada ranura que su productor descarto por no poder tomarla
+    private final long[] descartadas;
+    private final int mascara;
+    //Siguiente secuencia que se reclama
+    private final AtomicLong cursor = new AtomicLong();
+    //Copia en escritura, igual que los observadores del banco
+    private volatile SuscripcionSaldos[] suscripciones = new SuscripcionSaldos[0];
+    private volatile SuscripcionSaldos[] bloqueantes = new SuscripcionSaldos[0];
+    //Ultimo minimo calculado de las secuencias bloqueantes, evita recorrerlas en cada publicacion. Siempre es una cota
+    //inferior: las secuencias solo avanzan y una suscripcion nueva empieza despues de todo lo ya reclamado
+    private volatile long minimoBloqueantes = -1;
+
+    //capacidad debe ser potencia de 2
+    public FlujoSaldos(int capacidad) {
+        if (capacidad <= 0 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser una potencia de 2");
+        }
+        eventos = new EventoSaldo[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            eventos[i] = new EventoSaldo();
+        }
+        publicadas = new long[capacidad];
+        Arrays.fill(publicadas, SIN_SECUENCIA);
+        descartadas = new long[capacidad];
+        Arrays.fill(descartadas, SIN_SECUENCIA);
+        mascara = capacidad - 1;
+    }
+
+    //La suscripcion recibe los eventos publicados desde ahora
+    public synchronized SuscripcionSaldos suscribir(SuscriptorSaldos suscriptor, PoliticaSuscriptor politica) {
+        SuscripcionSaldos suscripcion = new SuscripcionSaldos(this, suscriptor, politica, cursor.get() - 1);
+        suscripciones = agregar(suscripciones, suscripcion);
+        if (politica == PoliticaSuscriptor.BLOQUEAR) {
+            bloqueantes = agregar(bloqueantes, suscripcion);
+        }
+        suscripcion.iniciar();
+        return suscripcion;
+    }
+
+    synchronized void quitar(SuscripcionSaldos suscripcion) {
+        suscripciones = quitar(suscripciones, suscripcion);
+        bloqueantes = quitar(bloqueantes, suscripcion);
+    }
+
+    private static SuscripcionSaldos[] agregar(SuscripcionSaldos[] actuales, SuscripcionSaldos suscripcion) {
+        SuscripcionSaldos[] nuevas = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevas[actuales.length] = suscripcion;
+        return nuevas;
+    }
+
+    private static SuscripcionSaldos[] quitar(SuscripcionSaldos[] actuales, SuscripcionSaldos suscripcion) {
+        return Arrays.stream(actuales).filter(s -> s != suscripcion).toArray(SuscripcionSaldos[]::new);
+    }
+
+    void publicar(TipoMovimiento tipo, Cuenta cuenta, Cuenta contraparte, BigDecimal monto) {
+        publicar(tipo, cuenta, contraparte, monto, 0L, 0);
+    }
+
+    void publicarUnidades(TipoMovimiento tipo, Cuenta cuenta, long unidades, int escala) {
+        publicar(tipo, cuenta, null, null, unidades, escala);
+    }
+
+    private void publicar(TipoMovimiento tipo, Cuenta cuenta, Cuenta contraparte, BigDecimal monto,
+                          long unidades, int escala) {
+        long secuencia = cursor.getAndIncrement();
+        //La ranura todavia guarda la secuencia de la vuelta anterior, que los bloqueantes deben haber procesado
+        long anterior = secuencia - eventos.length;
+        if (anterior > minimoBloqueantes) {
+            esperarBloqueantes(anterior);
+        }
+        int indice = (int) secuencia & mascara;
+        if (!tomar(indice, secuencia)) {
+            PUBLICADAS.setRelease(descartadas, indice, secuencia);
+            return;
+        }
+        EventoSaldo evento = eventos[indice];
+        evento.tipo = tipo;
+        evento.cuenta = cuenta;
+        evento.contraparte = contraparte;
+        evento.monto = monto;
+        evento.unidades = unidades;
+        evento.escala = escala;
+        PUBLICADAS.setRelease(publicadas, indice, secuencia);
+    }
+
+    //Pasa la ranura de una secuencia ya publicada y anterior a EN_ESCRITURA. Falla si otro productor la esta
+    //escribiendo o ya publico una secuencia mas nueva; con suscriptores bloqueantes nunca falla
+    private boolean tomar(int indice, long secuencia) {
+        while (true) {
+            long actual = (long) PUBLICADAS.getVolatile(publicadas, indice);
+            if (actual == EN_ESCRITURA || actual >= secuencia) {
+                return false;
+            }
+            if (PUBLICADAS.compareAndSet(publicadas, indice, actual, EN_ESCRITURA)) {
+                return true;
+            }
+        }
+    }
+
+    private void esperarBloqueantes(long anterior) {
+        for (int intentos = 0; ; intentos++) {
+            //Se vuelve a leer en cada intento porque una suscripcion cerrada deja de frenar
+            SuscripcionSaldos[] actuales = bloqueantes;
+            if (actuales.length == 0) {
+                return;
+            }
+            long minimo = Long.MAX_VALUE;
+            boolean propia = false;
+            for (SuscripcionSaldos suscripcion : actuales) {
+                //Un suscriptor que publica desde su propio hilo no puede esperarse a si mismo: no se le espera y los
+                //eventos que se sobrescriban antes de que los lea se cuentan como omitidos
+                if (suscripcion.esHiloPropio()) {
+                    propia = true;
+                    continue;
+                }
+                minimo = Math.min(minimo, suscripcion.getSecuencia());
+            }
+            //Sin la suscripcion propia el minimo ya no es cota inferior para los demas productores
+            if (!propia) {
+                minimoBloqueantes = minimo;
+            }
+            if (anterior <= minimo) {
+                return;
+            }
+            esperar(intentos);
+        }
+    }
+
+    //Ultima secuencia consecutiva publicada a partir de desde (a lo mas maximo), desde - 1 si no hay ninguna
+    long ultimaPublicada(long desde, int maximo) {
+        long secuencia = desde;
+        while (secuencia - desde < maximo
+                && (long) PUBLICADAS.getAcquire(publicadas, (int) secuencia & mascara) == secuencia) {
+            secuencia++;
+        }
+        return secuencia - 1;
+    }
+
+    //La secuencia no se va a publicar porque su productor no pudo tomar la ranura
+    boolean descartada(long secuencia) {
+        return (long) PUBLICADAS.getAcquire(descartadas, (int) secuencia & mascara) == secuencia;
+    }
+
+    //La ranura ya tiene una secuencia mas nueva; a un bloqueante solo le pasa si publico desde su propio hilo
+    boolean sobrescrita(long secuencia) {
+        return (long) PUBLICADAS.getAcquire(publicadas, (int) secuencia & mascara) > secuencia;
+    }
+
+    //Copia el evento y regresa false si la ranura ya no tiene esa secuencia (se sobrescribio mientras se copiaba)
+    boolean copiar(long secuencia, EventoSaldo destino) {
+        int indice = (int) secuencia & mascara;
+        if ((long) PUBLICADAS.getAcquire(publicadas, indice) != secuencia) {
+            return false;
+        }
+        destino.copiarDe(eventos[indice]);
+        VarHandle.loadLoadFence();
+        return (long) PUBLICADAS.getOpaque(publicadas, indice) == secuencia;
+    }
+
+    //Espera activa al principio, despues cede el procesador y al final duerme 50us
+    static void esperar(int intentos) {
+        if (intentos < 100) {
+            Thread.onSpinWait();
+        } else if (intentos < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    public int getCapacidad() {
+        return eventos.length;
+    }
+
+    //Secuencias reclamadas hasta ahora (la siguiente que se va a publicar)
+    public long getReclamadas() {
+        return cursor.get();
+    }
+
+    //Cierra todas las suscripciones; se puede seguir publicando pero nadie lee
+    @Override
+    public void close() {
+        for (SuscripcionSaldos suscripcion : suscripciones) {
+            suscripcion.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+//Historial de movimientos de una cuenta. Los movimientos recientes viven en un anillo de arreglos primitivos
+//(registrar no crea objetos); cuando el anillo se llena, la mitad mas antigua se comprime en una pagina
+//(deltas en varint) y se guardan a lo mas maximoPaginas paginas, despues se descartan las mas antiguas.
+//Los montos y saldos se guardan como long sin escala mas la escala de la entrada; si no caben en un long
+//o la escala pasa de 18 se guardan como BigDecimal aparte (en el anillo y despues en su pagina), sin perder nada.
+//Cuenta llama a registrar con el monitor del historial tomado, junto con la operacion sobre el saldo,
+//asi el saldo registrado es exactamente el que dejo el movimiento.
+public class HistorialCuenta {
+    private static final TipoMovimiento[] TIPOS = TipoMovimiento.values();
+    //Escala que indica que el monto y el saldo de la entrada estan en decimales
+    private static final byte DECIMAL = -1;
+    //Tiempo, tipo, escala, monto, saldo y contraparte en el peor caso
+    private static final int MAXIMO_BYTES_ENTRADA = 10 + 1 + 1 + 10 + 10 + 10;
+
+    private final int mascara;
+    private final long[] tiempos;
+    private final byte[] tipos;
+    private final byte[] escalas;
+    private final long[] montos;
+    private final long[] saldos;
+    private final long[] contrapartes;
+    //Monto y saldo (posiciones 2i y 2i + 1) de las entradas DECIMAL del anillo; se crea con la primera
+    private BigDecimal[] decimales;
+    private final int maximoPaginas;
+    private final ArrayDeque<Pagina> paginas = new ArrayDeque<>();
+    private final byte[] compresion;
+    //Numero de movimientos registrados y de movimientos que ya salieron del anillo
+    private long total;
+    private long paginados;
+    private long descartados;
+    private long ultimoTiempo;
+
+    HistorialCuenta(int capacidad, int maximoPaginas) {
+        if (capacidad < 2 || maximoPaginas < 0) {
+            throw new IllegalArgumentException("La capacidad debe ser al menos 2 y el maximo de paginas no negativo");
+        }
+        int tamanio = Integer.highestOneBit(capacidad - 1) << 1;
+        this.mascara = tamanio - 1;
+        this.tiempos = new long[tamanio];
+        this.tipos = new byte[tamanio];
+        this.escalas = new byte[tamanio];
+        this.montos = new long[tamanio];
+        this.saldos = new long[tamanio];
+        this.contrapartes = new long[tamanio];
+        this.maximoPaginas = maximoPaginas;
+        this.compresion = new byte[tamanio / 2 * MAXIMO_BYTES_ENTRADA];
+    }
+
+    //Se llama con el monitor tomado
+    void registrar(TipoMovimiento tipo, long monto, long saldo, int escala, long contraparte) {
+        if (total - paginados == tiempos.length) {
+            paginar();
+        }
+        //El tiempo nunca retrocede para poder buscar por rango con busqueda binaria
+        long tiempo = Math.max(System.currentTimeMillis(), ultimoTiempo);
+        ultimoTiempo = tiempo;
+        int i = (int) (total & mascara);
+        tiempos[i] = tiempo;
+        tipos[i] = (byte) tipo.ordinal();
+        escalas[i] = (byte) escala;
+        montos[i] = monto;
+        saldos[i] = saldo;
+        contrapartes[i] = contraparte;
+        total++;
+    }
+
+    //Se llama con el monitor tomado
+    void registrar(TipoMovimiento tipo, BigDecimal monto, BigDecimal saldo, long contraparte) {
+        int escala = Math.max(0, Math.max(monto.scale(), saldo.scale()));
+        if (escala <= 18) {
+            try {
+                long unidadesMonto = SaldoFijo.aUnidades(monto, escala);
+                registrar(tipo, unidadesMonto, SaldoFijo.aUnidades(saldo, escala), escala, contraparte);
+                return;
+            } catch (ArithmeticException e) {
+                //No cabe en un long, se guarda como BigDecimal
+            }
+        }
+        registrar(tipo, 0L, 0L, DECIMAL, contraparte);
+        if (decimales == null) {
+            decimales = new BigDecimal[tiempos.length * 2];
+        }
+        int i = (int) ((total - 1) & mascara);
+        decimales[2 * i] = monto;
+        decimales[2 * i + 1] = saldo;
+    }
+
+    //Comprime la mitad mas antigua del anillo en una pagina
+    private void paginar() {
+        int entradas = tiempos.length / 2;
+        int posicion = 0;
+        long tiempoAnterior = 0;
+        //Los BigDecimal de las entradas DECIMAL pasan a la pagina en el mismo orden
+        List<BigDecimal> decimalesPagina = null;
+        for (long n = paginados; n < paginados + entradas; n++) {
+            int i = (int) (n & mascara);
+            posicion = escribirVarint(compresion, posicion, tiempos[i] - tiempoAnterior);
+            tiempoAnterior = tiempos[i];
+            compresion[posicion++] = tipos[i];
+            compresion[posicion++] = escalas[i];
+            posicion = escribirVarint(compresion, posicion, zigzag(montos[i]));
+            posicion = escribirVarint(compresion, posicion, zigzag(saldos[i]));
+            posicion = escribirVarint(compresion, posicion, zigzag(contrapartes[i]));
+            if (escalas[i] == DECIMAL) {
+                if (decimalesPagina == null) {
+                    decimalesPagina = new ArrayList<>();
+                }
+                decimalesPagina.add(decimales[2 * i]);
+                decimalesPagina.add(decimales[2 * i + 1]);
+                decimales[2 * i] = null;
+                decimales[2 * i + 1] = null;
+            }
+        }
+        long desde = tiempos[(int) (paginados & mascara)];
+        paginas.addLast(new Pagina(desde, tiempoAnterior, entradas, Arrays.copyOf(compresion, posicion),
+                decimalesPagina == null ? null : decimalesPagina.toArray(new BigDecimal[0])));
+        paginados += entradas;
+        while (paginas.size() > maximoPaginas) {
+            descartados += paginas.removeFirst().entradas;
+        }
+    }
+
+    //Los n movimientos mas recientes, del mas nuevo al mas antiguo
+    public synchronized List<Movimiento> ultimos(int n) {
+        List<Movimiento> resultado = new ArrayList<>(Math.max(0, Math.min(n, 1024)));
+        for (long k = total - 1; k >= paginados && resultado.size() < n; k--) {
+            resultado.add(movimiento((int) (k & mascara)));
+        }
+        Iterator<Pagina> anteriores = paginas.descendingIterator();
+        while (resultado.size() < n && anteriores.hasNext()) {
+            List<Movimiento> pagina = anteriores.next().leer();
+            for (int i = pagina.size() - 1; i >= 0 && resultado.size() < n; i--) {
+                resultado.add(pagina.get(i));
+            }
+        }
+        return resultado;
+    }
+
+    //Movimientos con desde <= tiempo < hasta (milisegundos desde epoch), del mas antiguo al mas nuevo
+    public synchronized List<Movimiento> entre(long desde, long hasta) {
+        List<Movimiento> resultado = new ArrayList<>();
+        for (Pagina pagina : paginas) {
+            if (pagina.hasta >= desde && pagina.desde < hasta) {
+                for (Movimiento movimiento : pagina.leer()) {
+                    if (movimiento.getTiempo() >= desde && movimiento.getTiempo() < hasta) {
+                        resultado.add(movimiento);
+                    }
+                }
+            }
+        }
+        for (long k = primeroDesde(desde); k < total && tiempos[(int) (k & mascara)] < hasta; k++) {
+            resultado.add(movimiento((int) (k & mascara)));
+        }
+        return resultado;
+    }
+
+    //Busqueda binaria en el anillo del primer movimiento con tiempo >= desde
+    private long primeroDesde(long desde) {
+        long bajo = paginados;
+        long alto = total;
+        while (bajo < alto) {
+            long medio = (bajo + alto) >>> 1;
+            if (tiempos[(int) (medio & mascara)] < desde) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    public synchronized long getTotalMovimientos() {
+        return total;
+    }
+
+    //Movimientos que ya no se pueden consultar porque su pagina se descarto
+    public synchronized long getDescartados() {
+        return descartados;
+    }
+
+    private Movimiento movimiento(int i) {
+        if (escalas[i] == DECIMAL) {
+            return new Movimiento(tiempos[i], TIPOS[tipos[i]], decimales[2 * i], contrapartes[i], decimales[2 * i + 1]);
+        }
+        return crear(tiempos[i], tipos[i], escalas[i], montos[i], saldos[i], contrapartes[i]);
+    }
+
+    private static Movimiento crear(long tiempo, byte tipo, byte escala, long monto, long saldo, long contraparte) {
+        return new Movimiento(tiempo, TIPOS[tipo], BigDecimal.valueOf(monto, escala), contraparte,
+                BigDecimal.valueOf(saldo, escala));
+    }
+
+    private static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    private static long deZigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    private static int escribirVarint(byte[] datos, int posicion, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            datos[posicion++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        datos[posicion++] = (byte) valor;
+        return posicion;
+    }
+
+    private static final class Pagina {
+        final long desde;
+        final long hasta;
+        final int entradas;
+        final byte[] datos;
+        //Monto y saldo de cada entrada DECIMAL de la pagina, en orden; null si no tiene
+        final BigDecimal[] decimales;
+
+        Pagina(long desde, long hasta, int entradas, byte[] datos, BigDecimal[] decimales) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.entradas = entradas;
+            this.datos = datos;
+            this.decimales = decimales;
+        }
+
+        List<Movimiento> leer() {
+            List<Movimiento> movimientos = new ArrayList<>(entradas);
+            int[] posicion = {0};
+            long tiempo = 0;
+            int decimal = 0;
+            for (int n = 0; n < entradas; n++) {
+                tiempo += leerVarint(posicion);
+                byte tipo = datos[posicion[0]++];
+                byte escala = datos[posicion[0]++];
+                long monto = deZigzag(leerVarint(posicion));
+                long saldo = deZigzag(leerVarint(posicion));
+                long contraparte = deZigzag(leerVarint(posicion));
+                if (escala == DECIMAL) {
+                    movimientos.add(new Movimiento(tiempo, TIPOS[tipo], decimales[decimal], contraparte,
+                            decimales[decimal + 1]));
+                    decimal += 2;
+                } else {
+                    movimientos.add(crear(tiempo, tipo, escala, monto, saldo, contraparte));
+                }
+            }
+            return Collections.unmodifiableList(movimientos);
+        }
+
+        private long leerVarint(int[] posicion) {
+            long valor = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                b = datos[posicion[0]++];
+                valor |= (long) (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            return valor;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+//Saldos de todas las cuentas del banco en un mismo momento logico; no cambia despues de crearse.
+//Cada transferencia aparece completa o no aparece, por lo que los totales cuadran
+public final class InstantaneaSaldos {
+    private final Map<Long, BigDecimal> saldos;
+    private final BigDecimal saldoTotal;
+
+    InstantaneaSaldos(Map<Long, BigDecimal> saldos) {
+        this.saldos = Collections.unmodifiableMap(saldos);
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal saldo : saldos.values()) {
+            total = total.add(saldo);
+        }
+        this.saldoTotal = total;
+    }
+
+    //Regresa null si la cuenta no estaba en el banco
+    public BigDecimal getSaldo(long id) {
+        return saldos.get(id);
+    }
+
+    public BigDecimal getSaldoTotal() {
+        return saldoTotal;
+    }
+
+    public int getNumeroCuentas() {
+        return saldos.size();
+    }
+
+    //Saldo por id de cuenta
+    public Map<Long, BigDecimal> getSaldos() {
+        return saldos;
+    }
+}
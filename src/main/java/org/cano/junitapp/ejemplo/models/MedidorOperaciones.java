@@ -0,0 +1,12 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Recibe la duracion de cada operacion del banco. Si el banco no tiene medidor no se toma ningun tiempo.
+//Se llama en el hilo que hizo la operacion, la implementacion no debe bloquear ni compartir contadores entre hilos
+public interface MedidorOperaciones {
+
+    //exitosa es false cuando la operacion se rechazo por fondos insuficientes
+    void operacion(TipoOperacion tipo, long nanos, boolean exitosa);
+
+    //Tiempo que una transferencia espero un candado ocupado por otra operacion
+    void esperaCandado(long nanos);
+}
@@ -0,0 +1,49 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+
+//Entrada del historial de una cuenta. Solo se crea al consultar el historial, no al registrar el movimiento
+public final class Movimiento {
+    private final long tiempo;
+    private final TipoMovimiento tipo;
+    private final BigDecimal monto;
+    private final long contraparte;
+    private final BigDecimal saldo;
+
+    Movimiento(long tiempo, TipoMovimiento tipo, BigDecimal monto, long contraparte, BigDecimal saldo) {
+        this.tiempo = tiempo;
+        this.tipo = tipo;
+        this.monto = monto;
+        this.contraparte = contraparte;
+        this.saldo = saldo;
+    }
+
+    //Milisegundos desde epoch
+    public long getTiempo() {
+        return tiempo;
+    }
+
+    public TipoMovimiento getTipo() {
+        return tipo;
+    }
+
+    //null si el monto no cabia en un long al registrarlo
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    //Id de la otra cuenta en una transferencia, 0 en los demas movimientos
+    public long getContraparte() {
+        return contraparte;
+    }
+
+    //Saldo de la cuenta despues del movimiento; null si no cabia en un long al registrarlo
+    public BigDecimal getSaldo() {
+        return saldo;
+    }
+
+    @Override
+    public String toString() {
+        return tiempo + " " + tipo + " " + monto + " -> " + saldo;
+    }
+}
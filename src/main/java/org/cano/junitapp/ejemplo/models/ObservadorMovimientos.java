@@ -0,0 +1,32 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+
+//Recibe cada movimiento aplicado en las cuentas de un banco (diario, metricas, historial, etc.)
+//Se llama en el hilo que hizo la operacion y despues de aplicarla, por lo que debe ser rapido y no lanzar excepciones
+public interface ObservadorMovimientos {
+
+    default void alta(Cuenta cuenta) {
+    }
+
+    default void baja(Cuenta cuenta) {
+    }
+
+    default void debito(Cuenta cuenta, BigDecimal monto) {
+    }
+
+    default void credito(Cuenta cuenta, BigDecimal monto) {
+    }
+
+    //Una transferencia se notifica una sola vez, no como debito y credito por separado
+    default void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+    }
+
+    default void saldoAsignado(Cuenta cuenta, BigDecimal saldo) {
+    }
+
+    //Es la que llama el banco, para los observadores que necesitan saber cuanto cambio el saldo
+    default void saldoAsignado(Cuenta cuenta, BigDecimal anterior, BigDecimal saldo) {
+        saldoAsignado(cuenta, saldo);
+    }
+}
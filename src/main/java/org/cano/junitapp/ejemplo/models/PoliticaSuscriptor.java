@@ -0,0 +1,13 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Que pasa cuando un suscriptor del FlujoSaldos no alcanza a los productores
+public enum PoliticaSuscriptor {
+    //Los productores esperan a que el suscriptor libere la ranura; no pierde eventos pero frena las operaciones.
+    //Si el suscriptor llama al banco desde su hilo con el anillo lleno, ese hilo no se espera a si mismo: publica
+    //encima de los eventos que el suscriptor aun no lee y esos se cuentan como omitidos
+    BLOQUEAR,
+    //Los productores sobrescriben el anillo; el suscriptor pierde los eventos que ya se sobrescribieron
+    DESCARTAR,
+    //Como DESCARTAR, pero si se atrasa mas de medio anillo salta al evento mas reciente y omite los intermedios
+    MUESTREAR
+}
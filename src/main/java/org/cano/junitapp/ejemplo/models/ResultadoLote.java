@@ -0,0 +1,40 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Resultado de Banco.transferirLote: indica que transferencias del lote fueron rechazadas por falta de fondos
+public final class ResultadoLote {
+    private final List<Transferencia> lote;
+    private final int[] rechazadas;
+
+    ResultadoLote(List<Transferencia> lote, int[] rechazadas) {
+        this.lote = lote;
+        this.rechazadas = rechazadas;
+    }
+
+    public boolean isCompleto() {
+        return rechazadas.length == 0;
+    }
+
+    public int getAplicadas() {
+        return lote.size() - rechazadas.length;
+    }
+
+    //Posiciones dentro del lote de las transferencias rechazadas, en orden ascendente
+    public int[] getIndicesRechazados() {
+        return rechazadas.clone();
+    }
+
+    public List<Transferencia> getRechazadas() {
+        if (rechazadas.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Transferencia> resultado = new ArrayList<>(rechazadas.length);
+        for (int indice : rechazadas) {
+            resultado.add(lote.get(indice));
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,11 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Resultado de las operaciones try*, permite rechazar un debito sin crear ni lanzar una excepcion
+public enum ResultadoOperacion {
+    EXITOSA,
+    DINERO_INSUFICIENTE;
+
+    public boolean isExitosa() {
+        return this == EXITOSA;
+    }
+}
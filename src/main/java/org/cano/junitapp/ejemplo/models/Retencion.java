@@ -0,0 +1,80 @@
+package org.cano.junitapp.ejemplo.models;
+
+import org.cano.junitapp.ejemplo.temporizador.Temporizador;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Monto apartado del saldo disponible de una cuenta (ej. autorizacion de una tarjeta). El dinero no se mueve hasta
+//cobrarla; liberarla o que venza devuelve el monto al disponible. Solo una de las tres cosas ocurre: el estado
+//cambia con compareAndSet desde ACTIVA
+public final class Retencion {
+    private final Cuenta cuenta;
+    private final BigDecimal monto;
+    private final AtomicReference<EstadoRetencion> estado = new AtomicReference<>(EstadoRetencion.ACTIVA);
+    private volatile Temporizador vencimiento;
+
+    Retencion(Cuenta cuenta, BigDecimal monto) {
+        this.cuenta = cuenta;
+        this.monto = monto;
+    }
+
+    void setVencimiento(Temporizador vencimiento) {
+        this.vencimiento = vencimiento;
+    }
+
+    public void cobrar() {
+        cobrar(monto);
+    }
+
+    //Cobra un importe menor o igual al retenido; el resto se libera
+    public void cobrar(BigDecimal importe) {
+        if (importe.signum() <= 0 || importe.compareTo(monto) > 0) {
+            throw new IllegalArgumentException("El importe debe ser mayor que 0 y no mayor que lo retenido");
+        }
+        cuenta.validarMonto(importe);
+        terminar(EstadoRetencion.COBRADA);
+        try {
+            cuenta.cobrarRetencion(monto, importe);
+        } catch (RuntimeException e) {
+            //El debito no se aplico: la retencion queda liberada para no dejar el monto apartado para siempre
+            estado.set(EstadoRetencion.LIBERADA);
+            cuenta.soltar(monto);
+            throw e;
+        }
+    }
+
+    public void liberar() {
+        terminar(EstadoRetencion.LIBERADA);
+        cuenta.soltar(monto);
+    }
+
+    //Lo llama la rueda de temporizadores del banco
+    void vencer() {
+        if (estado.compareAndSet(EstadoRetencion.ACTIVA, EstadoRetencion.VENCIDA)) {
+            cuenta.soltar(monto);
+        }
+    }
+
+    private void terminar(EstadoRetencion nuevo) {
+        if (!estado.compareAndSet(EstadoRetencion.ACTIVA, nuevo)) {
+            throw new IllegalStateException("La retencion ya no esta activa: " + estado.get());
+        }
+        Temporizador t = vencimiento;
+        if (t != null) {
+            t.cancelar();
+        }
+    }
+
+    public Cuenta getCuenta() {
+        return cuenta;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public EstadoRetencion getEstado() {
+        return estado.get();
+    }
+}
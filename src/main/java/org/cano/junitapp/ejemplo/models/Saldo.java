@@ -0,0 +1,21 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+
+//Representacion interna del saldo de una cuenta, cada implementacion debe ser segura entre hilos
+interface Saldo {
+
+    BigDecimal get();
+
+    //Regresa el saldo anterior
+    BigDecimal set(BigDecimal saldo);
+
+    //Regresa false si el debito dejaria el saldo en negativo, en ese caso el saldo no cambia
+    boolean debitar(BigDecimal monto);
+
+    void acreditar(BigDecimal monto);
+
+    //Lanza ArithmeticException si el monto no se puede representar en este saldo, no cambia nada
+    default void validar(BigDecimal monto) {
+    }
+}
@@ -0,0 +1,46 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//Saldo en punto fijo guardado en una posicion de la columna de saldos de un AlmacenColumnar (fuera del heap)
+final class SaldoColumna extends SaldoFijo {
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final AlmacenColumnar almacen;
+    private final long posicion;
+    private final ByteBuffer segmento;
+    private final int desplazamiento;
+
+    SaldoColumna(AlmacenColumnar almacen, long posicion, ByteBuffer segmento, int desplazamiento) {
+        super(almacen.getEscala());
+        this.almacen = almacen;
+        this.posicion = posicion;
+        this.segmento = segmento;
+        this.desplazamiento = desplazamiento;
+    }
+
+    @Override
+    long leer() {
+        return (long) LONGS.getVolatile(segmento, desplazamiento);
+    }
+
+    @Override
+    boolean cambiar(long esperadas, long nuevas) {
+        return LONGS.compareAndSet(segmento, desplazamiento, esperadas, nuevas);
+    }
+
+    Cuenta.Retenido buscarRetenido() {
+        return almacen.buscarRetenido(posicion);
+    }
+
+    Cuenta.Retenido crearRetenido() {
+        return almacen.crearRetenido(posicion);
+    }
+
+    void renombrar(String persona) {
+        almacen.renombrar(posicion, persona);
+    }
+}
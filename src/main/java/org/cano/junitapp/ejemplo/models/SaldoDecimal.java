@@ -0,0 +1,46 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Saldo con BigDecimal, se actualiza con compareAndSet para no perder operaciones concurrentes
+class SaldoDecimal implements Saldo {
+    private final AtomicReference<BigDecimal> valor;
+
+    SaldoDecimal(BigDecimal saldo) {
+        this.valor = new AtomicReference<>(saldo);
+    }
+
+    @Override
+    public BigDecimal get() {
+        return valor.get();
+    }
+
+    @Override
+    public BigDecimal set(BigDecimal saldo) {
+        return valor.getAndSet(saldo);
+    }
+
+    @Override
+    public boolean debitar(BigDecimal monto) {
+        BigDecimal actual;
+        BigDecimal nuevoSaldo;
+        do {
+            actual = valor.get();
+            nuevoSaldo = actual.subtract(monto);
+            //La validacion se hace sobre el mismo valor que se va a reemplazar, asi nunca se sobregira
+            if (nuevoSaldo.compareTo(BigDecimal.ZERO) < 0) {
+                return false;
+            }
+        } while (!valor.compareAndSet(actual, nuevoSaldo));
+        return true;
+    }
+
+    @Override
+    public void acreditar(BigDecimal monto) {
+        BigDecimal actual;
+        do {
+            actual = valor.get();
+        } while (!valor.compareAndSet(actual, actual.add(monto)));
+    }
+}
@@ -0,0 +1,125 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Saldo en punto fijo: se guarda como long en unidades menores (ej. centavos con escala 2)
+//Las operaciones con unidades no crean objetos, BigDecimal solo se usa en la entrada y salida
+//Las subclases pueden guardar las unidades en otro lugar sobreescribiendo leer y cambiar
+class SaldoFijo implements Saldo {
+    private static final long[] POTENCIAS = new long[19];
+
+    static {
+        POTENCIAS[0] = 1;
+        for (int i = 1; i < POTENCIAS.length; i++) {
+            POTENCIAS[i] = POTENCIAS[i - 1] * 10;
+        }
+    }
+
+    private final AtomicLong unidades;
+    private final int escala;
+
+    SaldoFijo(BigDecimal saldo, int escala) {
+        this.escala = validarEscala(escala);
+        this.unidades = new AtomicLong(aUnidades(saldo));
+    }
+
+    //Para subclases que no usan el AtomicLong
+    SaldoFijo(int escala) {
+        this.escala = validarEscala(escala);
+        this.unidades = null;
+    }
+
+    static int validarEscala(int escala) {
+        if (escala < 0 || escala > 18) {
+            throw new IllegalArgumentException("La escala debe estar entre 0 y 18");
+        }
+        return escala;
+    }
+
+    long leer() {
+        return unidades.get();
+    }
+
+    boolean cambiar(long esperadas, long nuevas) {
+        return unidades.compareAndSet(esperadas, nuevas);
+    }
+
+    int getEscala() {
+        return escala;
+    }
+
+    long getUnidades() {
+        return leer();
+    }
+
+    //Convierte un monto a unidades menores, falla si el monto tiene mas decimales que la escala o no cabe en un long
+    long aUnidades(BigDecimal monto) {
+        return aUnidades(monto, escala);
+    }
+
+    //Con a lo mas 18 digitos y sin mas decimales que la escala se evita el BigInteger de unscaledValue:
+    //scaleByPowerOfTen(scale) deja el mismo long sin escala y solo crea un BigDecimal temporal
+    static long aUnidades(BigDecimal monto, int escala) {
+        int faltan = escala - monto.scale();
+        if (faltan >= 0 && faltan < POTENCIAS.length && monto.precision() <= 18) {
+            return Math.multiplyExact(monto.scaleByPowerOfTen(monto.scale()).longValue(), POTENCIAS[faltan]);
+        }
+        return monto.setScale(escala, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    //Si el monto ya cabe en la escala y tiene a lo mas 18 digitos no se crea ningun objeto
+    @Override
+    public void validar(BigDecimal monto) {
+        if (monto.scale() <= escala && monto.precision() - monto.scale() + escala <= 18) {
+            return;
+        }
+        aUnidades(monto);
+    }
+
+    @Override
+    public BigDecimal get() {
+        return BigDecimal.valueOf(leer(), escala);
+    }
+
+    @Override
+    public BigDecimal set(BigDecimal saldo) {
+        long nuevas = aUnidades(saldo);
+        long anteriores;
+        do {
+            anteriores = leer();
+        } while (!cambiar(anteriores, nuevas));
+        return BigDecimal.valueOf(anteriores, escala);
+    }
+
+    @Override
+    public boolean debitar(BigDecimal monto) {
+        return debitar(aUnidades(monto));
+    }
+
+    @Override
+    public void acreditar(BigDecimal monto) {
+        acreditar(aUnidades(monto));
+    }
+
+    boolean debitar(long monto) {
+        long actual;
+        long nuevoSaldo;
+        do {
+            actual = leer();
+            nuevoSaldo = Math.subtractExact(actual, monto);
+            if (nuevoSaldo < 0) {
+                return false;
+            }
+        } while (!cambiar(actual, nuevoSaldo));
+        return true;
+    }
+
+    void acreditar(long monto) {
+        long actual;
+        do {
+            actual = leer();
+        } while (!cambiar(actual, Math.addExact(actual, monto)));
+    }
+}
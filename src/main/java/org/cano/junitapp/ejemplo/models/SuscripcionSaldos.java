@@ -0,0 +1,123 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Hilo que lee el FlujoSaldos para un suscriptor. La secuencia es la del ultimo evento entregado (o saltado)
+public final class SuscripcionSaldos implements AutoCloseable {
+    private static final int MAXIMO_LOTE = 256;
+
+    private final FlujoSaldos flujo;
+    private final SuscriptorSaldos suscriptor;
+    private final PoliticaSuscriptor politica;
+    //Cada suscripcion copia a su propio evento, asi el suscriptor no ve una ranura a medio sobrescribir
+    private final EventoSaldo evento = new EventoSaldo();
+    private final Thread hilo;
+    private volatile long secuencia;
+    //Solo los escribe el hilo de la suscripcion
+    private volatile long omitidos;
+    private volatile long errores;
+    private volatile boolean activa = true;
+
+    SuscripcionSaldos(FlujoSaldos flujo, SuscriptorSaldos suscriptor, PoliticaSuscriptor politica, long secuencia) {
+        this.flujo = flujo;
+        this.suscriptor = suscriptor;
+        this.politica = politica;
+        this.secuencia = secuencia;
+        this.hilo = new Thread(this::leer, "flujo-saldos-" + politica.name().toLowerCase());
+        this.hilo.setDaemon(true);
+    }
+
+    void iniciar() {
+        hilo.start();
+    }
+
+    private void leer() {
+        int capacidad = flujo.getCapacidad();
+        long siguiente = secuencia + 1;
+        int intentos = 0;
+        while (activa) {
+            if (politica != PoliticaSuscriptor.BLOQUEAR) {
+                long atraso = flujo.getReclamadas() - siguiente;
+                if (politica == PoliticaSuscriptor.MUESTREAR && atraso > capacidad / 2) {
+                    //Se salta al evento mas reciente
+                    omitidos += atraso - 1;
+                    siguiente += atraso - 1;
+                } else if (atraso > capacidad) {
+                    //Esas ranuras ya se sobrescribieron
+                    omitidos += atraso - capacidad;
+                    siguiente += atraso - capacidad;
+                }
+            }
+            long hasta = flujo.ultimaPublicada(siguiente, MAXIMO_LOTE);
+            if (hasta < siguiente && (flujo.descartada(siguiente) || flujo.sobrescrita(siguiente))) {
+                omitidos++;
+                secuencia = siguiente;
+                siguiente++;
+                continue;
+            }
+            if (hasta < siguiente) {
+                FlujoSaldos.esperar(intentos++);
+                continue;
+            }
+            intentos = 0;
+            for (long s = siguiente; s <= hasta; s++) {
+                if (!flujo.copiar(s, evento)) {
+                    omitidos++;
+                    continue;
+                }
+                try {
+                    suscriptor.alEvento(evento, s, s == hasta);
+                } catch (RuntimeException e) {
+                    //Un suscriptor que falla no debe detener el flujo ni a los productores
+                    errores++;
+                }
+            }
+            siguiente = hasta + 1;
+            secuencia = hasta;
+        }
+    }
+
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    //Eventos que el suscriptor no recibio por la politica DESCARTAR o MUESTREAR, o que el productor descarto
+    public long getOmitidos() {
+        return omitidos;
+    }
+
+    //Eventos en los que el suscriptor lanzo una excepcion
+    public long getErrores() {
+        return errores;
+    }
+
+    public PoliticaSuscriptor getPolitica() {
+        return politica;
+    }
+
+    //El suscriptor esta publicando desde el hilo de esta suscripcion (ej. llamo al banco dentro de alEvento)
+    boolean esHiloPropio() {
+        return Thread.currentThread() == hilo;
+    }
+
+    //Deja de leer y de frenar a los productores; los eventos pendientes ya no se entregan. Si se interrumpe mientras
+    //espera al hilo, lo sigue esperando y deja la marca de interrupcion al terminar
+    @Override
+    public void close() {
+        activa = false;
+        flujo.quitar(this);
+        if (Thread.currentThread() == hilo) {
+            return;
+        }
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                hilo.join();
+                break;
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
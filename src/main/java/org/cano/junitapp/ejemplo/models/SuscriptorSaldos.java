@@ -0,0 +1,9 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Recibe los eventos del FlujoSaldos en el hilo de su suscripcion, en orden de secuencia.
+//El evento se reutiliza para el siguiente, si se necesita despues hay que copiar sus datos.
+//finDeLote indica el ultimo evento disponible en esta lectura, sirve para hacer flush o agrupar trabajo
+@FunctionalInterface
+public interface SuscriptorSaldos {
+    void alEvento(EventoSaldo evento, long secuencia, boolean finDeLote);
+}
@@ -0,0 +1,11 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Tipos de movimiento que guarda el historial de una cuenta
+public enum TipoMovimiento {
+    DEBITO,
+    CREDITO,
+    TRANSFERENCIA_ENVIADA,
+    TRANSFERENCIA_RECIBIDA,
+    //Cambio por setSaldo, el monto es la diferencia con el saldo anterior
+    SALDO_ASIGNADO
+}
@@ -0,0 +1,8 @@
+package org.cano.junitapp.ejemplo.models;
+
+//Operaciones que se reportan al MedidorOperaciones del banco
+public enum TipoOperacion {
+    DEBITO,
+    CREDITO,
+    TRANSFERENCIA
+}
@@ -0,0 +1,34 @@
+package org.cano.junitapp.ejemplo.models;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+//Una transferencia pendiente de aplicar, se usa para enviar lotes al banco
+public final class Transferencia {
+    private final Cuenta origen;
+    private final Cuenta destino;
+    private final BigDecimal monto;
+
+    public Transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        this.origen = Objects.requireNonNull(origen, "origen");
+        this.destino = Objects.requireNonNull(destino, "destino");
+        this.monto = Objects.requireNonNull(monto, "monto");
+    }
+
+    public Cuenta getOrigen() {
+        return origen;
+    }
+
+    public Cuenta getDestino() {
+        return destino;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    @Override
+    public String toString() {
+        return origen.getPersona() + " -> " + destino.getPersona() + ": " + monto.toPlainString();
+    }
+}
@@ -0,0 +1,335 @@
+package org.cano.junitapp.ejemplo.motor;
+
+import org.cano.junitapp.ejemplo.exceptions.MovimientoAplicadoException;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Motor de ejecucion particionado: las cuentas del banco se reparten en N particiones y cada particion tiene un solo
+//hilo que aplica sus debitos y creditos, por lo que nunca compiten dos hilos por la misma cuenta.
+//Las solicitudes llegan a la particion por una cola acotada. Una transferencia entre particiones se hace en dos fases:
+//la particion de origen debita y despues envia el credito a la particion de destino; mientras tanto el monto queda
+//"en transito" y la suma de saldos mas getEnTransito() siempre es igual al total del banco. Los observadores del
+//banco reciben una sola transferencia, al aplicar el credito.
+//El monto se valida contra la cuenta de destino antes del debito; si aun asi el credito se rechaza, el monto se
+//devuelve a la cuenta de origen en su particion y la transferencia termina con la excepcion del credito. Si el
+//credito se aplico y fallo un observador, la transferencia termina con MovimientoAplicadoException y no se devuelve.
+//Una devolucion que no se puede acreditar queda pendiente (y en transito) hasta reintentarDevoluciones().
+//Mientras se usa el motor, todas las operaciones sobre las cuentas del banco deben pasar por el. Una instantanea de
+//saldos tomada con montos en transito ve los debitos que aun no llegan al diario.
+public class MotorParticionado implements AutoCloseable {
+    private static final int MAXIMO_POR_CICLO = 256;
+
+    private final Banco banco;
+    private final Particion[] particiones;
+    //Solicitudes aceptadas que aun no terminan (una transferencia entre particiones termina al aplicar el credito),
+    //mas uno mientras el motor esta abierto; al llegar a 0 se libera terminadas
+    private final AtomicInteger enProceso = new AtomicInteger(1);
+    private final CountDownLatch terminadas = new CountDownLatch(1);
+    //Devoluciones cuyo credito al origen fallo
+    private final ConcurrentLinkedQueue<Comando> devolucionesPendientes = new ConcurrentLinkedQueue<>();
+    private volatile boolean cerrado;
+
+    public MotorParticionado(Banco banco, int particiones, int capacidadCola) {
+        if (particiones <= 0 || capacidadCola <= 0) {
+            throw new IllegalArgumentException("Las particiones y la capacidad de la cola deben ser mayores que 0");
+        }
+        this.banco = banco;
+        this.particiones = new Particion[particiones];
+        for (int i = 0; i < particiones; i++) {
+            this.particiones[i] = new Particion(i, capacidadCola);
+        }
+        for (Particion particion : this.particiones) {
+            particion.hilo.start();
+        }
+    }
+
+    public int particion(Cuenta cuenta) {
+        long h = cuenta.getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % particiones.length);
+    }
+
+    public int getParticiones() {
+        return particiones.length;
+    }
+
+    public CompletableFuture<ResultadoOperacion> debito(Cuenta cuenta, BigDecimal monto) {
+        return enviar(Comando.DEBITO, cuenta, null, monto);
+    }
+
+    public CompletableFuture<ResultadoOperacion> credito(Cuenta cuenta, BigDecimal monto) {
+        return enviar(Comando.CREDITO, cuenta, null, monto);
+    }
+
+    public CompletableFuture<ResultadoOperacion> transferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return enviar(Comando.TRANSFERENCIA, origen, destino, monto);
+    }
+
+    //Bloquea si la cola de la particion esta llena
+    private CompletableFuture<ResultadoOperacion> enviar(byte tipo, Cuenta cuenta, Cuenta destino, BigDecimal monto) {
+        enProceso.incrementAndGet();
+        if (cerrado) {
+            terminar();
+            throw new RejectedExecutionException("El motor esta cerrado");
+        }
+        Comando comando = new Comando(tipo, cuenta, destino, monto, true);
+        Particion particion = particiones[particion(cuenta)];
+        particion.espacio.acquireUninterruptibly();
+        particion.cola.add(comando);
+        return comando.resultado;
+    }
+
+    //Monto debitado en una particion cuyo credito aun no se aplica en la particion de destino
+    public BigDecimal getEnTransito() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Particion particion : particiones) {
+            total = total.add(particion.enviado).subtract(particion.recibido);
+        }
+        return total;
+    }
+
+    public int getDevolucionesPendientes() {
+        return devolucionesPendientes.size();
+    }
+
+    //Envia otra vez cada devolucion pendiente a la particion de su cuenta; regresa cuantas se enviaron
+    public int reintentarDevoluciones() {
+        int enviadas = 0;
+        Comando comando;
+        while ((comando = devolucionesPendientes.poll()) != null) {
+            enProceso.incrementAndGet();
+            if (cerrado) {
+                devolucionesPendientes.add(comando);
+                terminar();
+                throw new RejectedExecutionException("El motor esta cerrado");
+            }
+            particiones[particion(comando.cuenta)].cola.add(comando);
+            enviadas++;
+        }
+        return enviadas;
+    }
+
+    private void terminar() {
+        if (enProceso.decrementAndGet() == 0) {
+            terminadas.countDown();
+        }
+    }
+
+    //Deja de aceptar solicitudes, termina las pendientes (incluidas las segundas fases) y detiene los hilos.
+    //Si se interrumpe al hilo mientras espera se sigue esperando y se restaura la interrupcion al final
+    @Override
+    public void close() {
+        boolean primero;
+        synchronized (this) {
+            primero = !cerrado;
+            cerrado = true;
+        }
+        if (primero) {
+            terminar();
+        }
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                terminadas.await();
+                break;
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        if (primero) {
+            for (Particion particion : particiones) {
+                particion.cola.add(Comando.FIN_COMANDO);
+            }
+        }
+        for (Particion particion : particiones) {
+            while (true) {
+                try {
+                    particion.hilo.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Comando {
+        static final byte DEBITO = 1;
+        static final byte CREDITO = 2;
+        static final byte TRANSFERENCIA = 3;
+        //Segunda fase de una transferencia entre particiones, destino es la cuenta de origen por si hay que devolver
+        static final byte CREDITO_TRANSFERENCIA = 4;
+        //El credito de la segunda fase se rechazo, se regresa el monto a la cuenta de origen (destino es la otra cuenta)
+        static final byte DEVOLUCION = 5;
+        static final byte FIN = 6;
+        static final Comando FIN_COMANDO = new Comando(FIN, null, null, null, false);
+
+        final byte tipo;
+        final Cuenta cuenta;
+        final Cuenta destino;
+        final BigDecimal monto;
+        //Los comandos externos ocupan lugar en la cola acotada, las segundas fases no para no bloquear a otra particion
+        final boolean externo;
+        final CompletableFuture<ResultadoOperacion> resultado;
+        //Solo en DEVOLUCION: la excepcion del credito, con la que se completa el resultado
+        final RuntimeException error;
+
+        Comando(byte tipo, Cuenta cuenta, Cuenta destino, BigDecimal monto, boolean externo) {
+            this(tipo, cuenta, destino, monto, externo, externo ? new CompletableFuture<>() : null, null);
+        }
+
+        Comando(byte tipo, Cuenta cuenta, Cuenta destino, BigDecimal monto, boolean externo,
+                CompletableFuture<ResultadoOperacion> resultado, RuntimeException error) {
+            this.tipo = tipo;
+            this.cuenta = cuenta;
+            this.destino = destino;
+            this.monto = monto;
+            this.externo = externo;
+            this.resultado = resultado;
+            this.error = error;
+        }
+    }
+
+    private final class Particion implements Runnable {
+        final int numero;
+        final LinkedBlockingQueue<Comando> cola = new LinkedBlockingQueue<>();
+        final Semaphore espacio;
+        final Thread hilo;
+        //Solo los escribe el hilo de la particion
+        volatile BigDecimal enviado = BigDecimal.ZERO;
+        volatile BigDecimal recibido = BigDecimal.ZERO;
+
+        Particion(int numero, int capacidadCola) {
+            this.numero = numero;
+            this.espacio = new Semaphore(capacidadCola);
+            this.hilo = new Thread(this, "motor-particion-" + numero);
+            this.hilo.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Comando> pendientes = new ArrayList<>(MAXIMO_POR_CICLO);
+            boolean fin = false;
+            while (!fin) {
+                try {
+                    pendientes.add(cola.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                cola.drainTo(pendientes, MAXIMO_POR_CICLO - 1);
+                for (Comando comando : pendientes) {
+                    if (comando.tipo == Comando.FIN) {
+                        fin = true;
+                    } else {
+                        ejecutar(comando);
+                    }
+                }
+                pendientes.clear();
+            }
+        }
+
+        private void ejecutar(Comando comando) {
+            if (comando.externo) {
+                espacio.release();
+            }
+            boolean termino = true;
+            try {
+                switch (comando.tipo) {
+                    case Comando.DEBITO:
+                        comando.resultado.complete(comando.cuenta.tryDebito(comando.monto));
+                        break;
+                    case Comando.CREDITO:
+                        comando.cuenta.credito(comando.monto);
+                        comando.resultado.complete(ResultadoOperacion.EXITOSA);
+                        break;
+                    case Comando.TRANSFERENCIA:
+                        termino = transferir(comando);
+                        break;
+                    case Comando.CREDITO_TRANSFERENCIA:
+                        termino = acreditarTransferencia(comando);
+                        break;
+                    case Comando.DEVOLUCION:
+                        devolver(comando);
+                        break;
+                    default:
+                        throw new IllegalStateException("Comando desconocido: " + comando.tipo);
+                }
+            } catch (RuntimeException e) {
+                comando.resultado.completeExceptionally(e);
+            } finally {
+                if (termino) {
+                    terminar();
+                }
+            }
+        }
+
+        //Regresa false si el credito se rechazo y el monto va de regreso a la particion de origen
+        private boolean acreditarTransferencia(Comando comando) {
+            try {
+                banco.acreditarTransferencia(comando.destino, comando.cuenta, comando.monto);
+            } catch (MovimientoAplicadoException e) {
+                //El destino ya recibio el monto, solo fallo la notificacion: la transferencia termino
+                recibido = recibido.add(comando.monto);
+                comando.resultado.completeExceptionally(e);
+                return true;
+            } catch (RuntimeException e) {
+                particiones[particion(comando.destino)].cola.add(new Comando(Comando.DEVOLUCION, comando.destino,
+                        comando.cuenta, comando.monto, false, comando.resultado, e));
+                return false;
+            }
+            recibido = recibido.add(comando.monto);
+            comando.resultado.complete(ResultadoOperacion.EXITOSA);
+            return true;
+        }
+
+        //Si el credito al origen falla la devolucion queda pendiente y el monto sigue en transito
+        private void devolver(Comando comando) {
+            try {
+                banco.devolverTransferencia(comando.cuenta, comando.destino, comando.monto);
+            } catch (RuntimeException e) {
+                comando.error.addSuppressed(e);
+                devolucionesPendientes.add(comando);
+                comando.resultado.completeExceptionally(comando.error);
+                return;
+            }
+            recibido = recibido.add(comando.monto);
+            comando.resultado.completeExceptionally(comando.error);
+        }
+
+        //Regresa false si la transferencia sigue pendiente de su segunda fase en otra particion
+        private boolean transferir(Comando comando) {
+            int particionDestino = particion(comando.destino);
+            if (particionDestino == numero) {
+                //Las dos cuentas son de esta particion y solo este hilo las mueve: se aplica completa sin candados
+                comando.resultado.complete(banco.tryTransferirExclusivo(comando.cuenta, comando.destino, comando.monto));
+                return true;
+            }
+            //Fase 1: se valida el monto contra el destino y se debita en la particion de origen
+            ResultadoOperacion debito = banco.debitarTransferencia(comando.cuenta, comando.destino, comando.monto);
+            if (debito != ResultadoOperacion.EXITOSA) {
+                comando.resultado.complete(debito);
+                return true;
+            }
+            enviado = enviado.add(comando.monto);
+            //Fase 2: el credito se envia a la particion de destino, que completa el resultado al aplicarlo
+            particiones[particionDestino].cola.add(new Comando(Comando.CREDITO_TRANSFERENCIA, comando.destino, comando.cuenta,
+                    comando.monto, false, comando.resultado, null));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.cano.junitapp.ejemplo.motor;
+
+//Que hace ServicioTransferencias cuando su cola de solicitudes esta llena
+public enum PoliticaSaturacion {
+    //La nueva solicitud se completa con RejectedExecutionException
+    RECHAZAR,
+    //El que envia espera a que haya lugar en la cola
+    BLOQUEAR,
+    //Se descarta la solicitud mas antigua de la cola (se completa con RejectedExecutionException) y entra la nueva
+    DESCARTAR
+}
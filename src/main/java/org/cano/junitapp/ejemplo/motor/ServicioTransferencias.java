@@ -0,0 +1,225 @@
+package org.cano.junitapp.ejemplo.motor;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Entrada asincrona a Banco.tryTransferir: transferirAsync no bloquea (salvo con PoliticaSaturacion.BLOQUEAR y la cola
+//llena) y regresa un CompletableFuture con el resultado.
+//Las solicitudes esperan en una cola acotada y las toman a lo mas "paralelismo" tareas del ejecutor; cada tarea
+//atiende solicitudes mientras haya en la cola, asi no se crea una tarea por transferencia.
+public class ServicioTransferencias implements AutoCloseable {
+    private final Banco banco;
+    private final ArrayBlockingQueue<Solicitud> cola;
+    private final PoliticaSaturacion politica;
+    private final Executor ejecutor;
+    private final int paralelismo;
+    //Solo se apaga el ejecutor al cerrar si lo creo el servicio
+    private final boolean ejecutorPropio;
+    private final AtomicInteger activos = new AtomicInteger();
+    //Solicitudes aceptadas que aun no se completan; ya cerrado, la ultima en terminar libera terminadas
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final CountDownLatch terminadas = new CountDownLatch(1);
+    private final Runnable atender = this::atender;
+    private volatile boolean cerrado;
+
+    public ServicioTransferencias(Banco banco, int capacidadCola, PoliticaSaturacion politica) {
+        this(banco, capacidadCola, politica, ejecutorPorDefecto(), Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    public ServicioTransferencias(Banco banco, int capacidadCola, PoliticaSaturacion politica,
+                                  Executor ejecutor, int paralelismo) {
+        this(banco, capacidadCola, politica, ejecutor, paralelismo, false);
+    }
+
+    private ServicioTransferencias(Banco banco, int capacidadCola, PoliticaSaturacion politica,
+                                   Executor ejecutor, int paralelismo, boolean ejecutorPropio) {
+        if (capacidadCola <= 0 || paralelismo <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cola y el paralelismo deben ser mayores que 0");
+        }
+        this.banco = banco;
+        this.cola = new ArrayBlockingQueue<>(capacidadCola);
+        this.politica = politica;
+        this.ejecutor = ejecutor;
+        this.paralelismo = paralelismo;
+        this.ejecutorPropio = ejecutorPropio;
+    }
+
+    //Un hilo virtual por tarea si la JVM los tiene (Java 21+), si no un pool fijo con un hilo por procesador
+    public static ExecutorService ejecutorPorDefecto() {
+        ExecutorService virtuales = hilosVirtuales();
+        return virtuales != null ? virtuales : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    //Regresa null si la JVM no tiene hilos virtuales; se busca por reflexion porque el proyecto compila para Java 11
+    public static ExecutorService hilosVirtuales() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public CompletableFuture<ResultadoOperacion> transferirAsync(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        Solicitud solicitud = new Solicitud(origen, destino, monto);
+        //Se cuenta antes de revisar cerrado para que close() no termine sin esperar a esta solicitud
+        pendientes.incrementAndGet();
+        if (cerrado) {
+            completarRechazada(solicitud, "El servicio esta cerrado");
+            return solicitud.resultado;
+        }
+        if (!encolar(solicitud)) {
+            completarRechazada(solicitud, "La cola de transferencias esta llena");
+            return solicitud.resultado;
+        }
+        despertar();
+        return solicitud.resultado;
+    }
+
+    private boolean encolar(Solicitud solicitud) {
+        switch (politica) {
+            case BLOQUEAR:
+                try {
+                    cola.put(solicitud);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case DESCARTAR:
+                while (!cola.offer(solicitud)) {
+                    Solicitud antigua = cola.poll();
+                    if (antigua != null) {
+                        completarRechazada(antigua, "Transferencia descartada por saturacion");
+                    }
+                }
+                return true;
+            default:
+                return cola.offer(solicitud);
+        }
+    }
+
+    //Lanza otra tarea en el ejecutor si hay trabajo y aun no se llega al paralelismo
+    private void despertar() {
+        while (true) {
+            int actuales = activos.get();
+            if (actuales >= paralelismo || cola.isEmpty()) {
+                return;
+            }
+            if (activos.compareAndSet(actuales, actuales + 1)) {
+                try {
+                    ejecutor.execute(atender);
+                } catch (RejectedExecutionException e) {
+                    activos.decrementAndGet();
+                    rechazarCola();
+                }
+                return;
+            }
+        }
+    }
+
+    private void atender() {
+        try {
+            Solicitud solicitud;
+            while ((solicitud = cola.poll()) != null) {
+                try {
+                    solicitud.resultado.complete(banco.tryTransferir(solicitud.origen, solicitud.destino, solicitud.monto));
+                } catch (RuntimeException e) {
+                    solicitud.resultado.completeExceptionally(e);
+                } finally {
+                    terminar();
+                }
+            }
+        } finally {
+            activos.decrementAndGet();
+        }
+        //Una solicitud pudo entrar justo despues del ultimo poll
+        despertar();
+    }
+
+    //El ejecutor ya no acepta tareas, se rechaza lo que estaba esperando
+    private void rechazarCola() {
+        Solicitud solicitud;
+        while ((solicitud = cola.poll()) != null) {
+            completarRechazada(solicitud, "El ejecutor no acepto la tarea");
+        }
+    }
+
+    private void completarRechazada(Solicitud solicitud, String motivo) {
+        terminar();
+        solicitud.resultado.completeExceptionally(new RejectedExecutionException(motivo));
+    }
+
+    private void terminar() {
+        if (pendientes.decrementAndGet() == 0 && cerrado) {
+            terminadas.countDown();
+        }
+    }
+
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    public int getEnCola() {
+        return cola.size();
+    }
+
+    //Deja de aceptar solicitudes y espera a que terminen las que ya estaban aceptadas.
+    //Si se interrumpe al hilo mientras espera se sigue esperando y se restaura la interrupcion al final
+    @Override
+    public void close() {
+        cerrado = true;
+        //Si la ultima solicitud termino antes de ver cerrado, aqui se ve pendientes en 0
+        if (pendientes.get() == 0) {
+            terminadas.countDown();
+        }
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                terminadas.await();
+                break;
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        if (ejecutorPropio && ejecutor instanceof ExecutorService) {
+            ExecutorService servicio = (ExecutorService) ejecutor;
+            servicio.shutdown();
+            while (true) {
+                try {
+                    servicio.awaitTermination(1, TimeUnit.MINUTES);
+                    break;
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Solicitud {
+        final Cuenta origen;
+        final Cuenta destino;
+        final BigDecimal monto;
+        final CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+
+        Solicitud(Cuenta origen, Cuenta destino, BigDecimal monto) {
+            this.origen = origen;
+            this.destino = destino;
+            this.monto = monto;
+        }
+    }
+}
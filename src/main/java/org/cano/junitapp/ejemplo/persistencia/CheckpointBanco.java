@@ -0,0 +1,305 @@
+package org.cano.junitapp.ejemplo.persistencia;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.InstantaneaSaldos;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+//Checkpoint binario de todas las cuentas de un banco, para arrancar sin reconstruir el banco desde texto.
+//Formato (version 1):
+//  encabezado: [int magico][short version][short reservado][long posicionDiario][long cuentas][texto nombre]
+//  por cuenta: [long id][byte escala, -1 si es BigDecimal][monto][texto persona]
+//  final:      [int crc32c de todo lo anterior]
+//Los textos se guardan como [int longitud][bytes UTF-8] y -1 para null. Un monto BigDecimal se guarda como
+//[byte escala][long sin escala]; uno de punto fijo solo como [long unidades].
+public final class CheckpointBanco {
+    public static final int VERSION = 1;
+    public static final long SIN_DIARIO = -1L;
+
+    private static final int MAGICO = 0x434B5054;
+    private static final int TAMANIO_BUFFER = 8 * 1024 * 1024;
+
+    private final Banco banco;
+    private final long posicionDiario;
+
+    private CheckpointBanco(Banco banco, long posicionDiario) {
+        this.banco = banco;
+        this.posicionDiario = posicionDiario;
+    }
+
+    public Banco getBanco() {
+        return banco;
+    }
+
+    //Posicion del diario en el momento del checkpoint, se usa con DiarioTransacciones.recuperar(dir, banco, posicion)
+    public long getPosicionDiario() {
+        return posicionDiario;
+    }
+
+    public static void guardar(Banco banco, Path archivo) throws IOException {
+        guardar(banco, archivo, null);
+    }
+
+    //Los saldos se toman de una instantanea del banco y la posicion del diario se lee en el mismo momento en que
+    //se marca la instantanea: cada movimiento queda en los saldos o despues de la posicion, nunca en los dos.
+    //El banco solo se detiene para marcar la instantanea, no mientras se copian los saldos ni se escribe el archivo
+    public static void guardar(Banco banco, Path archivo, DiarioTransacciones diario) throws IOException {
+        long[] posicion = {SIN_DIARIO};
+        InstantaneaSaldos instantanea = banco.instantaneaSaldos(diario == null ? null : () -> posicion[0] = diario.getPosicion());
+        Captura captura = new Captura(instantanea.getNumeroCuentas() + 16);
+        captura.posicionDiario = posicion[0];
+        for (Map.Entry<Long, BigDecimal> saldo : instantanea.getSaldos().entrySet()) {
+            //Una cuenta que se dio de baja despues de la instantanea ya no se guarda, su baja esta en el diario
+            Cuenta cuenta = banco.buscarCuenta(saldo.getKey());
+            if (cuenta != null) {
+                captura.agregar(cuenta, saldo.getValue());
+            }
+        }
+
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (Salida salida = new Salida(FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            byte[] nombre = bytes(banco.getNombre());
+            salida.asegurar(32 + longitud(nombre));
+            salida.buffer.putInt(MAGICO).putShort((short) VERSION).putShort((short) 0)
+                    .putLong(captura.posicionDiario).putLong(captura.total);
+            escribirTexto(salida.buffer, nombre);
+
+            for (int i = 0; i < captura.total; i++) {
+                byte[] persona = bytes(captura.personas[i]);
+                salida.asegurar(32 + longitud(persona)
+                        + (captura.decimales[i] == null ? 0 : FormatoDiario.tamanio(captura.decimales[i])));
+                ByteBuffer buffer = salida.buffer;
+                buffer.putLong(captura.ids[i]);
+                buffer.put(captura.escalas[i]);
+                if (captura.escalas[i] == FormatoDiario.SALDO_DECIMAL) {
+                    FormatoDiario.escribirMonto(buffer, captura.decimales[i]);
+                } else {
+                    buffer.putLong(captura.unidades[i]);
+                }
+                escribirTexto(buffer, persona);
+            }
+            salida.terminar();
+        }
+        //El checkpoint anterior solo se reemplaza cuando el nuevo esta completo en disco
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static CheckpointBanco cargar(Path archivo) throws IOException {
+        try (Entrada entrada = new Entrada(FileChannel.open(archivo, StandardOpenOption.READ))) {
+            ByteBuffer buffer = entrada.asegurar(24);
+            if (buffer.getInt() != MAGICO) {
+                throw new IOException("El archivo no es un checkpoint de banco: " + archivo);
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Version de checkpoint no soportada: " + version);
+            }
+            buffer.getShort();
+            long posicionDiario = buffer.getLong();
+            long total = buffer.getLong();
+            if (total < 0 || total > Integer.MAX_VALUE) {
+                throw new IOException("Numero de cuentas invalido en el checkpoint: " + total);
+            }
+
+            Banco banco = new Banco(Runtime.getRuntime().availableProcessors() * 16, (int) total);
+            banco.setNombre(entrada.leerTexto());
+            for (long i = 0; i < total; i++) {
+                buffer = entrada.asegurar(18);
+                long id = buffer.getLong();
+                byte escala = buffer.get();
+                Cuenta cuenta;
+                if (escala == FormatoDiario.SALDO_DECIMAL) {
+                    buffer = entrada.asegurar(FormatoDiario.tamanio(buffer));
+                    BigDecimal saldo = FormatoDiario.leerMonto(buffer);
+                    cuenta = new Cuenta(id, entrada.leerTexto(), saldo);
+                } else {
+                    BigDecimal saldo = BigDecimal.valueOf(buffer.getLong(), escala);
+                    cuenta = new Cuenta(id, entrada.leerTexto(), saldo, escala);
+                }
+                banco.addCuenta(cuenta);
+            }
+            entrada.verificarCrc();
+            return new CheckpointBanco(banco, posicionDiario);
+        }
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto == null ? null : texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int longitud(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void escribirTexto(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    //Saldos de la instantanea en arreglos, con la escala y persona de cada cuenta
+    private static final class Captura {
+        long[] ids;
+        byte[] escalas;
+        long[] unidades;
+        BigDecimal[] decimales;
+        String[] personas;
+        int total;
+        long posicionDiario;
+
+        Captura(int capacidad) {
+            ids = new long[capacidad];
+            escalas = new byte[capacidad];
+            unidades = new long[capacidad];
+            decimales = new BigDecimal[capacidad];
+            personas = new String[capacidad];
+        }
+
+        void agregar(Cuenta cuenta, BigDecimal saldo) {
+            if (total == ids.length) {
+                int capacidad = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacidad);
+                escalas = Arrays.copyOf(escalas, capacidad);
+                unidades = Arrays.copyOf(unidades, capacidad);
+                decimales = Arrays.copyOf(decimales, capacidad);
+                personas = Arrays.copyOf(personas, capacidad);
+            }
+            ids[total] = cuenta.getId();
+            personas[total] = cuenta.getPersona();
+            if (cuenta.isPuntoFijo()) {
+                escalas[total] = (byte) cuenta.getEscala();
+                unidades[total] = saldo.setScale(cuenta.getEscala()).unscaledValue().longValueExact();
+            } else {
+                escalas[total] = FormatoDiario.SALDO_DECIMAL;
+                decimales[total] = saldo;
+            }
+            total++;
+        }
+    }
+
+    //Escritura por bloques con un buffer directo, el crc se calcula sobre cada bloque antes de escribirlo
+    private static final class Salida implements AutoCloseable {
+        private final FileChannel canal;
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANIO_BUFFER);
+
+        Salida(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        void asegurar(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            vaciar();
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect(bytes);
+            }
+        }
+
+        private void vaciar() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void terminar() throws IOException {
+            vaciar();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    //Lectura por bloques con un buffer directo, se acumula el crc de todo lo que ya se consumio
+    private static final class Entrada implements AutoCloseable {
+        private final FileChannel canal;
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANIO_BUFFER);
+        //Inicio de los bytes del buffer que aun no se suman al crc
+        private int pendienteCrc;
+
+        Entrada(FileChannel canal) {
+            this.canal = canal;
+            buffer.flip();
+        }
+
+        ByteBuffer asegurar(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return buffer;
+            }
+            acumularCrc();
+            buffer.compact();
+            if (buffer.capacity() < bytes) {
+                buffer.flip();
+                buffer = ByteBuffer.allocateDirect(bytes).put(buffer);
+            }
+            while (buffer.position() < bytes) {
+                if (canal.read(buffer) < 0) {
+                    throw new IOException("El checkpoint esta incompleto");
+                }
+            }
+            buffer.flip();
+            pendienteCrc = 0;
+            return buffer;
+        }
+
+        private void acumularCrc() {
+            ByteBuffer consumido = buffer.duplicate();
+            consumido.limit(buffer.position()).position(pendienteCrc);
+            crc.update(consumido);
+            pendienteCrc = buffer.position();
+        }
+
+        String leerTexto() throws IOException {
+            int longitud = asegurar(4).getInt();
+            if (longitud < 0) {
+                return null;
+            }
+            ByteBuffer datos = asegurar(longitud);
+            byte[] bytes = new byte[longitud];
+            datos.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void verificarCrc() throws IOException {
+            acumularCrc();
+            int esperado = asegurar(4).getInt();
+            if (esperado != (int) crc.getValue()) {
+                throw new IOException("El crc del checkpoint no coincide, el archivo esta corrupto");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package org.cano.junitapp.ejemplo.persistencia;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ObservadorMovimientos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//Diario de escritura anticipada (write-ahead) en segmentos mapeados en memoria.
+//Cada movimiento del banco se agrega como un registro binario; la sincronizacion a disco (fsync) se hace
+//en grupo cada cierto intervalo o al llamar sincronizar(), no en cada operacion.
+//Se registra en el banco con banco.addObservador(diario) despues de recuperar el estado con recuperar().
+//Los que escriben no comparten candado: cada uno arma su registro en un buffer propio, reserva su espacio en el
+//segmento con compareAndSet sobre la posicion de escritura y lo copia ahi. El registro se agrega cuando el banco
+//notifica el movimiento, es decir despues de que el saldo cambio: si el proceso termina entre el cambio y la copia,
+//o antes de la siguiente sincronizacion, ese movimiento se pierde. Un espacio reservado que no se alcanzo a copiar
+//corta la recuperacion de su segmento en ese punto.
+public class DiarioTransacciones implements ObservadorMovimientos, Closeable {
+    public static final int TAMANIO_SEGMENTO_DEFAULT = 64 * 1024 * 1024;
+    public static final Duration SINCRONIZACION_DEFAULT = Duration.ofMillis(10);
+
+    private static final String PREFIJO = "diario-";
+    private static final String EXTENSION = ".seg";
+
+    private final Path directorio;
+    private final int tamanioSegmento;
+    private final ScheduledExecutorService sincronizador;
+    private final ThreadLocal<Escritor> escritores = ThreadLocal.withInitial(Escritor::new);
+
+    private volatile Segmento actual;
+    private volatile boolean pendiente;
+    private boolean cerrado;
+
+    public DiarioTransacciones(Path directorio) throws IOException {
+        this(directorio, TAMANIO_SEGMENTO_DEFAULT, SINCRONIZACION_DEFAULT);
+    }
+
+    public DiarioTransacciones(Path directorio, int tamanioSegmento, Duration intervaloSincronizacion) throws IOException {
+        if (tamanioSegmento < 1024) {
+            throw new IllegalArgumentException("El segmento debe tener al menos 1024 bytes");
+        }
+        this.directorio = directorio;
+        this.tamanioSegmento = tamanioSegmento;
+        Files.createDirectories(directorio);
+
+        List<Path> segmentos = listarSegmentos(directorio);
+        if (segmentos.isEmpty()) {
+            actual = abrirSegmento(0, 0);
+        } else {
+            //Se continua en el ultimo segmento, despues del ultimo registro valido
+            Path ultimo = segmentos.get(segmentos.size() - 1);
+            Segmento segmento = abrirSegmento(numeroDe(ultimo), 0);
+            Lector lector = new Lector(segmento.datos.duplicate());
+            while (lector.siguiente() > 0) {
+                lector.avanzar();
+            }
+            int fin = lector.datos.position();
+            //Lo que quede despues de un registro incompleto se limpia para que no se confunda con datos validos
+            for (int i = fin; i < segmento.limite; i++) {
+                segmento.datos.put(i, (byte) 0);
+            }
+            actual = new Segmento(segmento.numero, segmento.datos, fin);
+        }
+
+        long intervalo = intervaloSincronizacion.toMillis();
+        if (intervalo > 0) {
+            sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "diario-sincronizador");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            sincronizador.scheduleWithFixedDelay(this::sincronizarSiPendiente, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        } else {
+            sincronizador = null;
+        }
+    }
+
+    //Posicion actual del diario: numero de segmento en los 32 bits altos y desplazamiento en los bajos.
+    //Todo registro reservado antes de la llamada queda antes de la posicion, aunque aun se este copiando
+    public long getPosicion() {
+        Segmento s = actual;
+        return posicion(s.numero, s.reservado.get());
+    }
+
+    @Override
+    public void alta(Cuenta cuenta) {
+        Escritor escritor = escritores.get();
+        BigDecimal saldo = cuenta.getSaldo();
+        ByteBuffer buffer = escritor.iniciar(FormatoDiario.ALTA, FormatoDiario.tamanio(saldo)
+                + (cuenta.getPersona() == null ? 0 : cuenta.getPersona().length() * 3));
+        buffer.putLong(cuenta.getId());
+        buffer.put(cuenta.isPuntoFijo() ? (byte) cuenta.getEscala() : FormatoDiario.SALDO_DECIMAL);
+        FormatoDiario.escribirMonto(buffer, saldo);
+        FormatoDiario.escribirTexto(buffer, cuenta.getPersona());
+        agregar(escritor);
+    }
+
+    @Override
+    public void baja(Cuenta cuenta) {
+        Escritor escritor = escritores.get();
+        escritor.iniciar(FormatoDiario.BAJA, 0).putLong(cuenta.getId());
+        agregar(escritor);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        registrar(FormatoDiario.DEBITO, cuenta.getId(), 0, monto);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        registrar(FormatoDiario.CREDITO, cuenta.getId(), 0, monto);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        registrar(FormatoDiario.TRANSFERENCIA, origen.getId(), destino.getId(), monto);
+    }
+
+    @Override
+    public void saldoAsignado(Cuenta cuenta, BigDecimal saldo) {
+        registrar(FormatoDiario.SALDO, cuenta.getId(), 0, saldo);
+    }
+
+    private void registrar(byte tipo, long cuenta, long contraparte, BigDecimal monto) {
+        Escritor escritor = escritores.get();
+        ByteBuffer buffer = escritor.iniciar(tipo, FormatoDiario.tamanio(monto));
+        buffer.putLong(cuenta);
+        if (tipo == FormatoDiario.TRANSFERENCIA) {
+            buffer.putLong(contraparte);
+        }
+        FormatoDiario.escribirMonto(buffer, monto);
+        agregar(escritor);
+    }
+
+    //Reserva el espacio del registro en el segmento actual y lo copia; si no cabe se rueda al siguiente segmento
+    private void agregar(Escritor escritor) {
+        ByteBuffer registro = escritor.registro;
+        int longitud = registro.position() - FormatoDiario.ENCABEZADO;
+        registro.putInt(0, longitud);
+        registro.putInt(4, FormatoDiario.crc(escritor.crc, registro.array(), FormatoDiario.ENCABEZADO, longitud));
+        int total = registro.position();
+        //Un registro mas grande que el segmento no cabria en ninguno y se rodarian segmentos sin fin
+        if (total > tamanioSegmento) {
+            throw new IllegalArgumentException("El registro de " + total + " bytes no cabe en un segmento del diario de "
+                    + tamanioSegmento + " bytes");
+        }
+        Segmento s;
+        int inicio;
+        while (true) {
+            s = actual;
+            inicio = s.reservado.get();
+            if (inicio + total > s.limite) {
+                rodarSegmento(s);
+            } else if (s.reservado.compareAndSet(inicio, inicio + total)) {
+                break;
+            }
+        }
+        escritor.copiar(s, inicio, total);
+        s.escrito.addAndGet(total);
+        if (!pendiente) {
+            pendiente = true;
+        }
+    }
+
+    //El segmento lleno se sella para que nadie mas reserve en el y se fuerza a disco cuando terminan de copiar
+    //los que ya habian reservado
+    private synchronized void rodarSegmento(Segmento lleno) {
+        if (cerrado) {
+            throw new IllegalStateException("El diario esta cerrado");
+        }
+        if (actual != lleno) {
+            return;
+        }
+        int fin = lleno.sellar();
+        try {
+            actual = abrirSegmento(lleno.numero + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el siguiente segmento del diario", e);
+        }
+        lleno.esperarEscritos(fin);
+        lleno.datos.force();
+    }
+
+    private Segmento abrirSegmento(int numero, int inicio) throws IOException {
+        Path archivo = directorio.resolve(nombreSegmento(numero));
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segmento(numero, canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanioSegmento), inicio);
+        }
+    }
+
+    //Fuerza a disco todo lo escrito hasta ahora (group commit). Un registro que se termina de copiar durante
+    //la sincronizacion vuelve a marcar pendiente y se fuerza en la siguiente
+    public void sincronizar() {
+        pendiente = false;
+        actual.datos.force();
+    }
+
+    private void sincronizarSiPendiente() {
+        if (pendiente) {
+            sincronizar();
+        }
+    }
+
+    @Override
+    public void close() {
+        Segmento ultimo;
+        int fin;
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            ultimo = actual;
+            fin = ultimo.sellar();
+        }
+        if (sincronizador != null) {
+            sincronizador.shutdown();
+        }
+        ultimo.esperarEscritos(fin);
+        sincronizar();
+    }
+
+    private static final class Segmento {
+        final int numero;
+        final MappedByteBuffer datos;
+        final int limite;
+        //Siguiente byte libre; se reserva con compareAndSet y al sellar se lleva hasta el limite
+        final AtomicInteger reservado;
+        //Bytes ya copiados, cuando alcanza lo reservado antes de sellar el segmento esta completo
+        final AtomicInteger escrito;
+
+        Segmento(int numero, MappedByteBuffer datos, int inicio) {
+            this.numero = numero;
+            this.datos = datos;
+            this.limite = datos.limit();
+            this.reservado = new AtomicInteger(inicio);
+            this.escrito = new AtomicInteger(inicio);
+        }
+
+        //Regresa hasta donde se habia reservado
+        int sellar() {
+            return reservado.getAndSet(limite);
+        }
+
+        void esperarEscritos(int fin) {
+            while (escrito.get() < fin) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    //Buffer y crc de cada hilo para armar los registros sin candados; la vista del segmento se reutiliza
+    //mientras el hilo siga escribiendo en el mismo segmento
+    private static final class Escritor {
+        final CRC32C crc = new CRC32C();
+        ByteBuffer registro = ByteBuffer.allocate(256);
+        Segmento segmento;
+        ByteBuffer vista;
+
+        ByteBuffer iniciar(byte tipo, int extra) {
+            if (registro.capacity() < 64 + extra) {
+                registro = ByteBuffer.allocate(64 + extra);
+            }
+            registro.clear();
+            registro.position(FormatoDiario.ENCABEZADO);
+            registro.put(tipo);
+            return registro;
+        }
+
+        void copiar(Segmento destino, int inicio, int total) {
+            if (segmento != destino) {
+                segmento = destino;
+                vista = destino.datos.duplicate();
+            }
+            vista.position(inicio);
+            vista.put(registro.array(), 0, total);
+        }
+    }
+
+    //Aplica al banco los registros del diario, se debe llamar antes de registrar el diario como observador.
+    //Las cuentas que ya existen en el banco (por ejemplo cargadas de un checkpoint) no se vuelven a crear.
+    public static long recuperar(Path directorio, Banco banco) throws IOException {
+        return recuperar(directorio, banco, 0L);
+    }
+
+    //Igual que recuperar pero empieza en una posicion obtenida con getPosicion()
+    public static long recuperar(Path directorio, Banco banco, long desde) throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return 0;
+        }
+        int segmentoInicial = (int) (desde >>> 32);
+        int desplazamiento = (int) desde;
+        long aplicados = 0;
+        for (Path archivo : listarSegmentos(directorio)) {
+            int numero = numeroDe(archivo);
+            if (numero < segmentoInicial) {
+                continue;
+            }
+            MappedByteBuffer datos;
+            try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+                datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            }
+            datos.position(numero == segmentoInicial ? desplazamiento : 0);
+            Lector lector = new Lector(datos);
+            int longitud;
+            while ((longitud = lector.siguiente()) > 0) {
+                aplicar(ByteBuffer.wrap(lector.contenido, 0, longitud), banco);
+                lector.avanzar();
+                aplicados++;
+            }
+        }
+        return aplicados;
+    }
+
+    //Recorre los registros de un segmento validando longitud y crc
+    private static final class Lector {
+        private final ByteBuffer datos;
+        private final CRC32C crc = new CRC32C();
+        private byte[] contenido = new byte[256];
+        private int longitud;
+
+        Lector(ByteBuffer datos) {
+            this.datos = datos;
+        }
+
+        //Regresa la longitud del registro en la posicion actual, o 0 si no hay un registro completo y valido
+        int siguiente() {
+            int inicio = datos.position();
+            longitud = 0;
+            if (datos.limit() - inicio < FormatoDiario.ENCABEZADO) {
+                return 0;
+            }
+            int candidata = datos.getInt(inicio);
+            if (candidata <= 0 || candidata > datos.limit() - inicio - FormatoDiario.ENCABEZADO) {
+                return 0;
+            }
+            if (contenido.length < candidata) {
+                contenido = new byte[candidata];
+            }
+            datos.position(inicio + FormatoDiario.ENCABEZADO);
+            datos.get(contenido, 0, candidata);
+            datos.position(inicio);
+            if (FormatoDiario.crc(crc, contenido, 0, candidata) != datos.getInt(inicio + 4)) {
+                return 0;
+            }
+            longitud = candidata;
+            return longitud;
+        }
+
+        void avanzar() {
+            datos.position(datos.position() + FormatoDiario.ENCABEZADO + longitud);
+        }
+    }
+
+    private static void aplicar(ByteBuffer registro, Banco banco) {
+        byte tipo = registro.get();
+        long id = registro.getLong();
+        switch (tipo) {
+            case FormatoDiario.ALTA: {
+                byte escala = registro.get();
+                BigDecimal saldo = FormatoDiario.leerMonto(registro);
+                String persona = FormatoDiario.leerTexto(registro);
+                if (banco.buscarCuenta(id) == null) {
+                    banco.addCuenta(escala == FormatoDiario.SALDO_DECIMAL
+                            ? new Cuenta(id, persona, saldo)
+                            : new Cuenta(id, persona, saldo, escala));
+                }
+                break;
+            }
+            case FormatoDiario.BAJA: {
+                Cuenta cuenta = banco.buscarCuenta(id);
+                if (cuenta != null) {
+                    banco.removeCuenta(cuenta);
+                }
+                break;
+            }
+            case FormatoDiario.DEBITO:
+                //El debito ya fue validado cuando se registro, se aplica sin volver a revisar el saldo
+                ajustar(banco.buscarCuenta(id), FormatoDiario.leerMonto(registro).negate());
+                break;
+            case FormatoDiario.CREDITO:
+                ajustar(banco.buscarCuenta(id), FormatoDiario.leerMonto(registro));
+                break;
+            case FormatoDiario.TRANSFERENCIA: {
+                Cuenta destino = banco.buscarCuenta(registro.getLong());
+                BigDecimal monto = FormatoDiario.leerMonto(registro);
+                ajustar(banco.buscarCuenta(id), monto.negate());
+                ajustar(destino, monto);
+                break;
+            }
+            case FormatoDiario.SALDO: {
+                Cuenta cuenta = banco.buscarCuenta(id);
+                if (cuenta != null) {
+                    cuenta.setSaldo(FormatoDiario.leerMonto(registro));
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Tipo de registro desconocido en el diario: " + tipo);
+        }
+    }
+
+    //Las cuentas de otros bancos (transferencias entre bancos) no estan en este banco y se ignoran
+    private static void ajustar(Cuenta cuenta, BigDecimal monto) {
+        if (cuenta != null) {
+            cuenta.credito(monto);
+        }
+    }
+
+    private static List<Path> listarSegmentos(Path directorio) throws IOException {
+        List<Path> segmentos;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            segmentos = archivos
+                    .filter(p -> {
+                        String nombre = p.getFileName().toString();
+                        return nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION);
+                    })
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        return segmentos;
+    }
+
+    private static String nombreSegmento(int numero) {
+        return String.format("%s%010d%s", PREFIJO, numero, EXTENSION);
+    }
+
+    private static int numeroDe(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Integer.parseInt(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+
+    static long posicion(int segmento, int desplazamiento) {
+        return ((long) segmento << 32) | (desplazamiento & 0xFFFFFFFFL);
+    }
+}
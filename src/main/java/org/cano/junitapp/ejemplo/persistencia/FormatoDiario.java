@@ -0,0 +1,101 @@
+package org.cano.junitapp.ejemplo.persistencia;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+//Formato binario de los registros del diario:
+//[int longitud][int crc32c][byte tipo][datos...], una longitud 0 marca el final de los datos del segmento
+final class FormatoDiario {
+    static final int ENCABEZADO = 8;
+
+    static final byte ALTA = 1;
+    static final byte BAJA = 2;
+    static final byte DEBITO = 3;
+    static final byte CREDITO = 4;
+    static final byte TRANSFERENCIA = 5;
+    static final byte SALDO = 6;
+
+    //Valor de la escala en un registro de alta cuando la cuenta usa BigDecimal en lugar de punto fijo
+    static final byte SALDO_DECIMAL = -1;
+
+    private FormatoDiario() {
+    }
+
+    //Valor de la escala que indica un monto que no cabe en escala (byte) y valor sin escala (long)
+    static final byte MONTO_GRANDE = Byte.MIN_VALUE;
+    //Bytes de un monto normal, y del encabezado de uno grande: marca, escala (int) y longitud (int)
+    static final int TAMANIO_MONTO = 9;
+
+    //Los montos se guardan como escala (byte) y valor sin escala (long); los que no caben se guardan completos
+    //despues de la marca MONTO_GRANDE. Cualquier BigDecimal se puede escribir, asi el diario nunca falla despues
+    //de que el saldo ya cambio
+    static void escribirMonto(ByteBuffer buffer, BigDecimal monto) {
+        if (cabeEnLong(monto)) {
+            buffer.put((byte) monto.scale());
+            buffer.putLong(monto.unscaledValue().longValue());
+            return;
+        }
+        byte[] sinEscala = monto.unscaledValue().toByteArray();
+        buffer.put(MONTO_GRANDE);
+        buffer.putInt(monto.scale());
+        buffer.putInt(sinEscala.length);
+        buffer.put(sinEscala);
+    }
+
+    static BigDecimal leerMonto(ByteBuffer buffer) {
+        int escala = buffer.get();
+        if (escala == MONTO_GRANDE) {
+            escala = buffer.getInt();
+            byte[] sinEscala = new byte[buffer.getInt()];
+            buffer.get(sinEscala);
+            return new BigDecimal(new BigInteger(sinEscala), escala);
+        }
+        return BigDecimal.valueOf(buffer.getLong(), escala);
+    }
+
+    //Bytes que ocupa el monto al escribirlo
+    static int tamanio(BigDecimal monto) {
+        return cabeEnLong(monto) ? TAMANIO_MONTO : TAMANIO_MONTO + monto.unscaledValue().bitLength() / 8 + 1;
+    }
+
+    //Bytes que ocupa el monto en la posicion actual; necesita TAMANIO_MONTO bytes disponibles
+    static int tamanio(ByteBuffer buffer) {
+        int inicio = buffer.position();
+        return buffer.get(inicio) == MONTO_GRANDE ? TAMANIO_MONTO + buffer.getInt(inicio + 5) : TAMANIO_MONTO;
+    }
+
+    private static boolean cabeEnLong(BigDecimal monto) {
+        int escala = monto.scale();
+        return escala > MONTO_GRANDE && escala <= Byte.MAX_VALUE
+                && (monto.precision() <= 18 || monto.unscaledValue().bitLength() < 64);
+    }
+
+    static void escribirTexto(ByteBuffer buffer, String texto) {
+        if (texto == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String leerTexto(ByteBuffer buffer) {
+        int longitud = buffer.getInt();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int crc(CRC32C crc, byte[] datos, int desde, int longitud) {
+        crc.reset();
+        crc.update(datos, desde, longitud);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,210 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+//Parametros del generador de carga. Con tasa 0 cada hilo envia la siguiente transferencia al terminar la anterior
+//(lazo cerrado); con tasa > 0 los hilos se reparten esa tasa total en operaciones por segundo (lazo abierto) y la
+//latencia se mide desde el momento en que la operacion debia enviarse, asi los retrasos acumulados tambien cuentan
+public class ConfiguracionCarga {
+    private static final String USO = String.join(System.lineSeparator(),
+            "Opciones (todas --clave=valor):",
+            "  --cuentas=10000          cuentas que se crean",
+            "  --saldo=1000             saldo inicial de cada cuenta",
+            "  --distribucion=uniforme  uniforme, zipf o punto_caliente",
+            "  --zipf=1.0               exponente de la distribucion zipf",
+            "  --modo=directo           directo, motor o servicio",
+            "  --hilos=4                hilos que generan la carga",
+            "  --tasa=0                 operaciones por segundo en total, 0 para lazo cerrado",
+            "  --operaciones=1000000    operaciones medidas",
+            "  --calentamiento=100000   operaciones previas que no se miden",
+            "  --insuficientes=0.01     fraccion de transferencias sin fondos suficientes",
+            "  --semilla=42             semilla de los numeros aleatorios");
+
+    private int cuentas = 10_000;
+    private BigDecimal saldoInicial = new BigDecimal("1000");
+    private DistribucionAcceso distribucion = DistribucionAcceso.UNIFORME;
+    private double exponenteZipf = 1.0;
+    private ModoEjecucion modo = ModoEjecucion.DIRECTO;
+    private int hilos = 4;
+    private long tasa;
+    private long operaciones = 1_000_000;
+    private long calentamiento = 100_000;
+    private double fraccionInsuficientes = 0.01;
+    private long semilla = 42;
+
+    public static String uso() {
+        return USO;
+    }
+
+    public static ConfiguracionCarga desdeArgumentos(String... args) {
+        ConfiguracionCarga configuracion = new ConfiguracionCarga();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                throw new IllegalArgumentException("Opcion invalida: " + arg);
+            }
+            String clave = arg.substring(2, igual);
+            String valor = arg.substring(igual + 1);
+            boolean conocida;
+            try {
+                conocida = configuracion.asignar(clave, valor);
+            } catch (IllegalArgumentException e) {
+                //NumberFormatException y valores de enum desconocidos
+                throw new IllegalArgumentException("Valor invalido para --" + clave + ": " + valor, e);
+            }
+            if (!conocida) {
+                throw new IllegalArgumentException("Opcion desconocida: --" + clave);
+            }
+        }
+        configuracion.validar();
+        return configuracion;
+    }
+
+    private boolean asignar(String clave, String valor) {
+        switch (clave) {
+            case "cuentas":
+                setCuentas(Integer.parseInt(valor));
+                break;
+            case "saldo":
+                setSaldoInicial(new BigDecimal(valor));
+                break;
+            case "distribucion":
+                setDistribucion(DistribucionAcceso.valueOf(valor.toUpperCase(Locale.ROOT)));
+                break;
+            case "zipf":
+                setExponenteZipf(Double.parseDouble(valor));
+                break;
+            case "modo":
+                setModo(ModoEjecucion.valueOf(valor.toUpperCase(Locale.ROOT)));
+                break;
+            case "hilos":
+                setHilos(Integer.parseInt(valor));
+                break;
+            case "tasa":
+                setTasa(Long.parseLong(valor));
+                break;
+            case "operaciones":
+                setOperaciones(Long.parseLong(valor));
+                break;
+            case "calentamiento":
+                setCalentamiento(Long.parseLong(valor));
+                break;
+            case "insuficientes":
+                setFraccionInsuficientes(Double.parseDouble(valor));
+                break;
+            case "semilla":
+                setSemilla(Long.parseLong(valor));
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    void validar() {
+        if (cuentas < 2 || hilos <= 0 || tasa < 0 || operaciones <= 0 || calentamiento < 0) {
+            throw new IllegalArgumentException("Se necesitan al menos 2 cuentas, 1 hilo y 1 operacion");
+        }
+        if (saldoInicial.signum() < 0 || fraccionInsuficientes < 0 || fraccionInsuficientes > 1) {
+            throw new IllegalArgumentException("El saldo no puede ser negativo y la fraccion debe estar entre 0 y 1");
+        }
+    }
+
+    public int getCuentas() {
+        return cuentas;
+    }
+
+    public void setCuentas(int cuentas) {
+        this.cuentas = cuentas;
+    }
+
+    public BigDecimal getSaldoInicial() {
+        return saldoInicial;
+    }
+
+    public void setSaldoInicial(BigDecimal saldoInicial) {
+        this.saldoInicial = saldoInicial;
+    }
+
+    public DistribucionAcceso getDistribucion() {
+        return distribucion;
+    }
+
+    public void setDistribucion(DistribucionAcceso distribucion) {
+        this.distribucion = distribucion;
+    }
+
+    public double getExponenteZipf() {
+        return exponenteZipf;
+    }
+
+    public void setExponenteZipf(double exponenteZipf) {
+        this.exponenteZipf = exponenteZipf;
+    }
+
+    public ModoEjecucion getModo() {
+        return modo;
+    }
+
+    public void setModo(ModoEjecucion modo) {
+        this.modo = modo;
+    }
+
+    public int getHilos() {
+        return hilos;
+    }
+
+    public void setHilos(int hilos) {
+        this.hilos = hilos;
+    }
+
+    public long getTasa() {
+        return tasa;
+    }
+
+    public void setTasa(long tasa) {
+        this.tasa = tasa;
+    }
+
+    public long getOperaciones() {
+        return operaciones;
+    }
+
+    public void setOperaciones(long operaciones) {
+        this.operaciones = operaciones;
+    }
+
+    public long getCalentamiento() {
+        return calentamiento;
+    }
+
+    public void setCalentamiento(long calentamiento) {
+        this.calentamiento = calentamiento;
+    }
+
+    public double getFraccionInsuficientes() {
+        return fraccionInsuficientes;
+    }
+
+    public void setFraccionInsuficientes(double fraccionInsuficientes) {
+        this.fraccionInsuficientes = fraccionInsuficientes;
+    }
+
+    public long getSemilla() {
+        return semilla;
+    }
+
+    public void setSemilla(long semilla) {
+        this.semilla = semilla;
+    }
+
+    @Override
+    public String toString() {
+        return "cuentas=" + cuentas + ", saldo=" + saldoInicial.toPlainString() + ", distribucion=" + distribucion
+                + (distribucion == DistribucionAcceso.ZIPF ? "(" + exponenteZipf + ")" : "") + ", modo=" + modo
+                + ", hilos=" + hilos + ", tasa=" + (tasa == 0 ? "lazo cerrado" : tasa + "/s")
+                + ", operaciones=" + operaciones + ", calentamiento=" + calentamiento
+                + ", insuficientes=" + fraccionInsuficientes + ", semilla=" + semilla;
+    }
+}
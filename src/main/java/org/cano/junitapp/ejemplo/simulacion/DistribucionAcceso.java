@@ -0,0 +1,11 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+//Como se eligen las cuentas de cada transferencia generada
+public enum DistribucionAcceso {
+    //Todas las cuentas con la misma probabilidad
+    UNIFORME,
+    //La cuenta i se elige con probabilidad proporcional a 1 / (i + 1)^exponente
+    ZIPF,
+    //El 1% de las cuentas recibe el 90% de las operaciones
+    PUNTO_CALIENTE
+}
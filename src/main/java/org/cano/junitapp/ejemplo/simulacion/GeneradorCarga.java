@@ -0,0 +1,208 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+import org.cano.junitapp.ejemplo.metricas.HistogramaLatencias;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.cano.junitapp.ejemplo.motor.MotorParticionado;
+import org.cano.junitapp.ejemplo.motor.PoliticaSaturacion;
+import org.cano.junitapp.ejemplo.motor.ServicioTransferencias;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+//Crea un banco con cuentas nuevas y lo somete a transferencias sinteticas segun la ConfiguracionCarga. Todo corre en
+//memoria y la misma semilla genera las mismas cuentas y la misma secuencia de operaciones por hilo, asi se pueden
+//comparar los modos de ejecucion en la misma maquina
+public class GeneradorCarga {
+    private static final int MONTO_MAXIMO = 10;
+    private static final int CAPACIDAD_COLA = 1 << 14;
+
+    private final ConfiguracionCarga configuracion;
+    private final SelectorCuentas selector;
+
+    public GeneradorCarga(ConfiguracionCarga configuracion) {
+        configuracion.validar();
+        this.configuracion = configuracion;
+        this.selector = new SelectorCuentas(configuracion.getDistribucion(), configuracion.getCuentas(),
+                configuracion.getExponenteZipf());
+    }
+
+    public ReporteCarga ejecutar() throws InterruptedException {
+        Banco banco = new Banco(Runtime.getRuntime().availableProcessors() * 16, configuracion.getCuentas());
+        Cuenta[] cuentas = new Cuenta[configuracion.getCuentas()];
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = new Cuenta("Cliente" + i, configuracion.getSaldoInicial());
+            banco.addCuenta(cuentas[i]);
+        }
+        BigDecimal saldoInicial = banco.sumarSaldos();
+        MotorParticionado motor = null;
+        ServicioTransferencias servicio = null;
+        if (configuracion.getModo() == ModoEjecucion.MOTOR) {
+            motor = new MotorParticionado(banco, Runtime.getRuntime().availableProcessors(), CAPACIDAD_COLA);
+        } else if (configuracion.getModo() == ModoEjecucion.SERVICIO) {
+            servicio = new ServicioTransferencias(banco, CAPACIDAD_COLA, PoliticaSaturacion.BLOQUEAR);
+        }
+        Fase medicion;
+        try {
+            SplittableRandom aleatorio = new SplittableRandom(configuracion.getSemilla());
+            //Ninguna cuenta puede tener mas que el total del banco, este monto siempre se rechaza
+            BigDecimal imposible = saldoInicial.add(BigDecimal.ONE);
+            if (configuracion.getCalentamiento() > 0) {
+                new Fase(banco, cuentas, motor, servicio, imposible, null)
+                        .correr(configuracion.getCalentamiento(), aleatorio);
+            }
+            medicion = new Fase(banco, cuentas, motor, servicio, imposible, new HistogramaLatencias());
+            medicion.correr(configuracion.getOperaciones(), aleatorio);
+        } finally {
+            if (motor != null) {
+                motor.close();
+            }
+            if (servicio != null) {
+                servicio.close();
+            }
+        }
+        return new ReporteCarga(configuracion, medicion.exitosas.sum(), medicion.rechazadas.sum(), medicion.nanos,
+                medicion.latencias.resumen(), saldoInicial, banco.sumarSaldos());
+    }
+
+    private final class Fase {
+        final Banco banco;
+        final Cuenta[] cuentas;
+        final MotorParticionado motor;
+        final ServicioTransferencias servicio;
+        final BigDecimal imposible;
+        final BigDecimal[] montos = new BigDecimal[MONTO_MAXIMO];
+        //null en el calentamiento
+        final HistogramaLatencias latencias;
+        final LongAdder exitosas = new LongAdder();
+        final LongAdder rechazadas = new LongAdder();
+        final LongAdder terminadas = new LongAdder();
+        final LongAccumulator ultimoTermino = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        long nanos;
+
+        Fase(Banco banco, Cuenta[] cuentas, MotorParticionado motor, ServicioTransferencias servicio,
+             BigDecimal imposible, HistogramaLatencias latencias) {
+            this.banco = banco;
+            this.cuentas = cuentas;
+            this.motor = motor;
+            this.servicio = servicio;
+            this.imposible = imposible;
+            this.latencias = latencias;
+            for (int i = 0; i < montos.length; i++) {
+                montos[i] = BigDecimal.valueOf(i + 1);
+            }
+        }
+
+        void correr(long operaciones, SplittableRandom aleatorio) throws InterruptedException {
+            int hilos = configuracion.getHilos();
+            //En lazo abierto cada hilo envia una operacion cada "intervalo" nanosegundos
+            long intervalo = configuracion.getTasa() == 0 ? 0 : TimeUnit.SECONDS.toNanos(hilos) / configuracion.getTasa();
+            CountDownLatch salida = new CountDownLatch(1);
+            long[] inicio = new long[1];
+            Thread[] generadores = new Thread[hilos];
+            for (int h = 0; h < hilos; h++) {
+                long propias = operaciones / hilos + (h < operaciones % hilos ? 1 : 0);
+                SplittableRandom propio = aleatorio.split();
+                generadores[h] = new Thread(() -> {
+                    try {
+                        salida.await();
+                        generar(propias, propio, inicio[0], intervalo);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }, "carga-" + h);
+                generadores[h].start();
+            }
+            inicio[0] = System.nanoTime();
+            salida.countDown();
+            for (Thread generador : generadores) {
+                generador.join();
+            }
+            //En los modos asincronos las ultimas operaciones pueden seguir en cola
+            while (error.get() == null && terminadas.sum() < operaciones) {
+                LockSupport.parkNanos(100_000);
+            }
+            if (error.get() != null) {
+                throw new IllegalStateException("Fallo el generador de carga", error.get());
+            }
+            nanos = ultimoTermino.get() - inicio[0];
+        }
+
+        private void generar(long operaciones, SplittableRandom aleatorio, long inicio, long intervalo) {
+            double insuficientes = configuracion.getFraccionInsuficientes();
+            for (long i = 0; i < operaciones; i++) {
+                Cuenta origen = cuentas[selector.siguiente(aleatorio)];
+                int indiceDestino = selector.siguiente(aleatorio);
+                Cuenta destino = cuentas[indiceDestino];
+                if (destino == origen) {
+                    destino = cuentas[(indiceDestino + 1) % cuentas.length];
+                }
+                BigDecimal monto = aleatorio.nextDouble() < insuficientes ? imposible
+                        : montos[aleatorio.nextInt(montos.length)];
+                long enviado;
+                if (intervalo == 0) {
+                    enviado = System.nanoTime();
+                } else {
+                    enviado = inicio + i * intervalo;
+                    esperarHasta(enviado);
+                }
+                enviar(origen, destino, monto, enviado, intervalo == 0);
+            }
+        }
+
+        private void enviar(Cuenta origen, Cuenta destino, BigDecimal monto, long enviado, boolean esperar) {
+            if (motor == null && servicio == null) {
+                terminar(banco.tryTransferir(origen, destino, monto), enviado);
+                return;
+            }
+            CompletableFuture<ResultadoOperacion> resultado = motor != null ? motor.transferir(origen, destino, monto)
+                    : servicio.transferirAsync(origen, destino, monto);
+            if (esperar) {
+                terminar(resultado.join(), enviado);
+            } else {
+                resultado.whenComplete((r, e) -> {
+                    if (e != null) {
+                        error.compareAndSet(null, e);
+                    } else {
+                        terminar(r, enviado);
+                    }
+                });
+            }
+        }
+
+        private void terminar(ResultadoOperacion resultado, long enviado) {
+            long fin = System.nanoTime();
+            if (latencias != null) {
+                latencias.registrar(fin - enviado);
+            }
+            if (resultado == ResultadoOperacion.EXITOSA) {
+                exitosas.increment();
+            } else {
+                rechazadas.increment();
+            }
+            ultimoTermino.accumulate(fin);
+            terminadas.increment();
+        }
+    }
+
+    //Duerme mientras falte mas de 50us y despues espera activamente para no perder precision
+    private static void esperarHasta(long instante) {
+        long falta;
+        while ((falta = instante - System.nanoTime()) > 0) {
+            if (falta > 50_000) {
+                LockSupport.parkNanos(falta - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
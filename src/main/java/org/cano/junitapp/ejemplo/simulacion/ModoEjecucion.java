@@ -0,0 +1,11 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+//Por donde pasan las transferencias del generador de carga
+public enum ModoEjecucion {
+    //Banco.tryTransferir en el hilo que genera la carga
+    DIRECTO,
+    //MotorParticionado con un hilo por particion
+    MOTOR,
+    //ServicioTransferencias con cola acotada que bloquea al llenarse
+    SERVICIO
+}
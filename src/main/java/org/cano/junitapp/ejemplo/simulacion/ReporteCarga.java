@@ -0,0 +1,78 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+import org.cano.junitapp.ejemplo.metricas.ResumenLatencias;
+
+import java.math.BigDecimal;
+
+//Resultado de una corrida del generador de carga, sin contar el calentamiento. Las latencias estan en nanosegundos
+public final class ReporteCarga {
+    private final ConfiguracionCarga configuracion;
+    private final long exitosas;
+    private final long rechazadas;
+    private final long nanos;
+    private final ResumenLatencias latencias;
+    private final BigDecimal saldoInicial;
+    private final BigDecimal saldoFinal;
+
+    ReporteCarga(ConfiguracionCarga configuracion, long exitosas, long rechazadas, long nanos,
+                 ResumenLatencias latencias, BigDecimal saldoInicial, BigDecimal saldoFinal) {
+        this.configuracion = configuracion;
+        this.exitosas = exitosas;
+        this.rechazadas = rechazadas;
+        this.nanos = nanos;
+        this.latencias = latencias;
+        this.saldoInicial = saldoInicial;
+        this.saldoFinal = saldoFinal;
+    }
+
+    public long getOperaciones() {
+        return exitosas + rechazadas;
+    }
+
+    public long getExitosas() {
+        return exitosas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public double getSegundos() {
+        return nanos / 1e9;
+    }
+
+    public double getOperacionesPorSegundo() {
+        return nanos == 0 ? 0 : getOperaciones() * 1e9 / nanos;
+    }
+
+    public ResumenLatencias getLatencias() {
+        return latencias;
+    }
+
+    public BigDecimal getSaldoInicial() {
+        return saldoInicial;
+    }
+
+    public BigDecimal getSaldoFinal() {
+        return saldoFinal;
+    }
+
+    //Las transferencias solo mueven dinero entre cuentas, la suma de saldos no debe cambiar
+    public boolean isSaldoConservado() {
+        return saldoInicial.compareTo(saldoFinal) == 0;
+    }
+
+    @Override
+    public String toString() {
+        String salto = System.lineSeparator();
+        return "Configuracion: " + configuracion + salto
+                + String.format("Operaciones: %d (exitosas %d, rechazadas %d) en %.3f s%n",
+                getOperaciones(), exitosas, rechazadas, getSegundos())
+                + String.format("Throughput: %.0f ops/s%n", getOperacionesPorSegundo())
+                + String.format("Latencia (us): p50=%.1f p99=%.1f p999=%.1f max=%.1f promedio=%.1f%n",
+                latencias.getP50() / 1e3, latencias.getP99() / 1e3, latencias.getP999() / 1e3,
+                latencias.getMaximo() / 1e3, latencias.getPromedio() / 1e3)
+                + "Saldo total: inicial " + saldoInicial.toPlainString() + ", final " + saldoFinal.toPlainString()
+                + (isSaldoConservado() ? " (conservado)" : " (NO CONSERVADO)");
+    }
+}
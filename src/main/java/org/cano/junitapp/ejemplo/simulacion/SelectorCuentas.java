@@ -0,0 +1,59 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//Genera indices de cuenta en [0, n) segun la distribucion. No tiene estado mutable, cada hilo usa su propio
+//SplittableRandom
+public final class SelectorCuentas {
+    static final double FRACCION_CALIENTE = 0.01;
+    static final double PROBABILIDAD_CALIENTE = 0.9;
+
+    private final DistribucionAcceso distribucion;
+    private final int cuentas;
+    private final int calientes;
+    //Solo para ZIPF
+    private final double[] acumulada;
+
+    public SelectorCuentas(DistribucionAcceso distribucion, int cuentas, double exponenteZipf) {
+        if (cuentas <= 0) {
+            throw new IllegalArgumentException("El numero de cuentas debe ser mayor que 0");
+        }
+        this.distribucion = distribucion;
+        this.cuentas = cuentas;
+        this.calientes = Math.max(1, (int) (cuentas * FRACCION_CALIENTE));
+        this.acumulada = distribucion == DistribucionAcceso.ZIPF ? acumuladaZipf(cuentas, exponenteZipf) : null;
+    }
+
+    private static double[] acumuladaZipf(int n, double exponente) {
+        double[] acumulada = new double[n];
+        double suma = 0;
+        for (int i = 0; i < n; i++) {
+            suma += 1.0 / Math.pow(i + 1, exponente);
+            acumulada[i] = suma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulada[i] /= suma;
+        }
+        return acumulada;
+    }
+
+    public int siguiente(SplittableRandom aleatorio) {
+        switch (distribucion) {
+            case ZIPF:
+                int indice = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+                return indice >= 0 ? indice : Math.min(-indice - 1, cuentas - 1);
+            case PUNTO_CALIENTE:
+                if (calientes == cuentas || aleatorio.nextDouble() < PROBABILIDAD_CALIENTE) {
+                    return aleatorio.nextInt(calientes);
+                }
+                return calientes + aleatorio.nextInt(cuentas - calientes);
+            default:
+                return aleatorio.nextInt(cuentas);
+        }
+    }
+
+    public int getCuentas() {
+        return cuentas;
+    }
+}
@@ -0,0 +1,180 @@
+package org.cano.junitapp.ejemplo.temporizador;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+//Rueda de temporizadores jerarquica (como la de los kernels): cada nivel tiene 64 ranuras y cada ranura de un nivel
+//abarca 64 ranuras del nivel anterior. Programar y cancelar son O(1) sin importar cuantos temporizadores haya;
+//en cada tick solo se revisa una ranura del primer nivel, y cada 64 ticks se reparte una ranura del nivel siguiente.
+//Los hilos que programan o cancelan solo agregan a colas concurrentes; la estructura de la rueda solo la toca el
+//hilo que avanza (el hilo propio de la rueda o quien llame a avanzar). Las tareas se ejecutan en ese hilo y deben
+//ser cortas.
+public class RuedaTemporizadores implements AutoCloseable {
+    private static final int BITS_NIVEL = 6;
+    private static final int RANURAS = 1 << BITS_NIVEL;
+    private static final int MASCARA = RANURAS - 1;
+
+    private final long tickNanos;
+    private final LongSupplier reloj;
+    private final long inicio;
+    private final Temporizador.Ranura[][] niveles;
+    //Ticks que abarca toda la rueda; los temporizadores mas lejanos se reacomodan al bajar de nivel
+    private final long alcance;
+    private final ConcurrentLinkedQueue<Temporizador> nuevos = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Temporizador> cancelados = new ConcurrentLinkedQueue<>();
+    private long tickActual;
+    private Thread hilo;
+    private volatile boolean cerrada;
+
+    public RuedaTemporizadores(long tick, TimeUnit unidad, int niveles) {
+        this(tick, unidad, niveles, System::nanoTime);
+    }
+
+    //El reloj regresa nanosegundos, se puede reemplazar para pruebas o simulaciones
+    public RuedaTemporizadores(long tick, TimeUnit unidad, int niveles, LongSupplier reloj) {
+        if (tick <= 0 || niveles <= 0 || niveles > 10) {
+            throw new IllegalArgumentException("El tick debe ser mayor que 0 y los niveles estar entre 1 y 10");
+        }
+        this.tickNanos = unidad.toNanos(tick);
+        this.reloj = reloj;
+        this.inicio = reloj.getAsLong();
+        this.niveles = new Temporizador.Ranura[niveles][RANURAS];
+        for (Temporizador.Ranura[] nivel : this.niveles) {
+            for (int i = 0; i < RANURAS; i++) {
+                nivel[i] = new Temporizador.Ranura();
+            }
+        }
+        this.alcance = 1L << (BITS_NIVEL * niveles);
+    }
+
+    //Arranca un hilo demonio que avanza la rueda cada tick
+    public synchronized void iniciar() {
+        if (hilo != null) {
+            return;
+        }
+        hilo = new Thread(() -> {
+            long espera = Math.max(1, TimeUnit.NANOSECONDS.toMillis(tickNanos));
+            while (!cerrada) {
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                avanzar();
+            }
+        }, "rueda-temporizadores");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    public Temporizador programar(long retraso, TimeUnit unidad, Runnable tarea) {
+        if (cerrada) {
+            throw new IllegalStateException("La rueda de temporizadores esta cerrada");
+        }
+        long transcurrido = reloj.getAsLong() - inicio + unidad.toNanos(Math.max(retraso, 0));
+        //Se redondea hacia arriba: nunca se ejecuta antes del retraso pedido
+        Temporizador temporizador = new Temporizador(this, (transcurrido + tickNanos - 1) / tickNanos, tarea);
+        nuevos.add(temporizador);
+        return temporizador;
+    }
+
+    void cancelado(Temporizador temporizador) {
+        cancelados.add(temporizador);
+    }
+
+    //Procesa todos los ticks transcurridos hasta ahora y ejecuta los temporizadores vencidos
+    public synchronized void avanzar() {
+        long objetivo = (reloj.getAsLong() - inicio) / tickNanos;
+        while (tickActual < objetivo) {
+            tickActual++;
+            //Los nuevos se colocan despues de mover el tick, los que ya vencieron caen en la ranura actual
+            quitarCancelados();
+            agregarNuevos();
+            bajarNiveles();
+            ejecutar(niveles[0][(int) (tickActual & MASCARA)].vaciar());
+        }
+        quitarCancelados();
+    }
+
+    private void agregarNuevos() {
+        Temporizador t;
+        while ((t = nuevos.poll()) != null) {
+            if (!t.isCancelado()) {
+                colocar(t);
+            }
+        }
+    }
+
+    private void quitarCancelados() {
+        Temporizador t;
+        while ((t = cancelados.poll()) != null) {
+            if (t.ranura != null) {
+                t.ranura.quitar(t);
+            }
+        }
+    }
+
+    private void colocar(Temporizador t) {
+        long diferencia = t.vence - tickActual;
+        if (diferencia <= 0) {
+            //Ya vencio: se ejecuta en este tick
+            niveles[0][(int) (tickActual & MASCARA)].agregar(t);
+            return;
+        }
+        long destino = diferencia < alcance ? t.vence : tickActual + alcance - 1;
+        int nivel = 0;
+        while (nivel < niveles.length - 1 && (destino - tickActual) >= (1L << (BITS_NIVEL * (nivel + 1)))) {
+            nivel++;
+        }
+        niveles[nivel][(int) ((destino >>> (BITS_NIVEL * nivel)) & MASCARA)].agregar(t);
+    }
+
+    //Cuando el nivel anterior da la vuelta, la ranura actual del nivel siguiente se reparte en los niveles de abajo
+    private void bajarNiveles() {
+        for (int nivel = 1; nivel < niveles.length; nivel++) {
+            if (((tickActual >>> (BITS_NIVEL * (nivel - 1))) & MASCARA) != 0) {
+                return;
+            }
+            Temporizador t = niveles[nivel][(int) ((tickActual >>> (BITS_NIVEL * nivel)) & MASCARA)].vaciar();
+            while (t != null) {
+                Temporizador siguiente = t.siguiente;
+                t.ranura = null;
+                colocar(t);
+                t = siguiente;
+            }
+        }
+    }
+
+    private void ejecutar(Temporizador t) {
+        while (t != null) {
+            Temporizador siguiente = t.siguiente;
+            t.ranura = null;
+            t.anterior = null;
+            t.siguiente = null;
+            if (t.vence > tickActual) {
+                //Estaba mas lejos que el alcance de la rueda, se vuelve a colocar
+                colocar(t);
+            } else if (t.marcarEjecutado()) {
+                try {
+                    t.tarea.run();
+                } catch (RuntimeException e) {
+                    //Una tarea que falla no debe detener a la rueda
+                }
+            }
+            t = siguiente;
+        }
+    }
+
+    @Override
+    public void close() {
+        cerrada = true;
+        Thread h;
+        synchronized (this) {
+            h = hilo;
+        }
+        if (h != null) {
+            h.interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.cano.junitapp.ejemplo.temporizador;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Tarea programada en una RuedaTemporizadores. Los enlaces a la ranura solo los usa el hilo que avanza la rueda
+public final class Temporizador {
+    static final int PENDIENTE = 0;
+    static final int CANCELADO = 1;
+    static final int EJECUTADO = 2;
+
+    final long vence;
+    final Runnable tarea;
+    private final RuedaTemporizadores rueda;
+    private final AtomicInteger estado = new AtomicInteger(PENDIENTE);
+    Ranura ranura;
+    Temporizador anterior;
+    Temporizador siguiente;
+
+    Temporizador(RuedaTemporizadores rueda, long vence, Runnable tarea) {
+        this.rueda = rueda;
+        this.vence = vence;
+        this.tarea = tarea;
+    }
+
+    //O(1): solo cambia el estado, la rueda lo quita de su ranura en el siguiente avance.
+    //Regresa false si la tarea ya se ejecuto o ya estaba cancelada
+    public boolean cancelar() {
+        if (!estado.compareAndSet(PENDIENTE, CANCELADO)) {
+            return false;
+        }
+        rueda.cancelado(this);
+        return true;
+    }
+
+    public boolean isCancelado() {
+        return estado.get() == CANCELADO;
+    }
+
+    public boolean isEjecutado() {
+        return estado.get() == EJECUTADO;
+    }
+
+    boolean marcarEjecutado() {
+        return estado.compareAndSet(PENDIENTE, EJECUTADO);
+    }
+
+    //Lista doblemente enlazada de temporizadores, para quitar uno en O(1)
+    static final class Ranura {
+        Temporizador primero;
+        Temporizador ultimo;
+
+        void agregar(Temporizador t) {
+            t.ranura = this;
+            t.anterior = ultimo;
+            t.siguiente = null;
+            if (ultimo == null) {
+                primero = t;
+            } else {
+                ultimo.siguiente = t;
+            }
+            ultimo = t;
+        }
+
+        void quitar(Temporizador t) {
+            if (t.anterior == null) {
+                primero = t.siguiente;
+            } else {
+                t.anterior.siguiente = t.siguiente;
+            }
+            if (t.siguiente == null) {
+                ultimo = t.anterior;
+            } else {
+                t.siguiente.anterior = t.anterior;
+            }
+            t.ranura = null;
+            t.anterior = null;
+            t.siguiente = null;
+        }
+
+        //Vacia la ranura y regresa el primero de la lista que tenia
+        Temporizador vaciar() {
+            Temporizador t = primero;
+            primero = null;
+            ultimo = null;
+            return t;
+        }
+    }
+}
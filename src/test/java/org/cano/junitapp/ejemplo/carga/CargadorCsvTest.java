@@ -0,0 +1,131 @@
+package org.cano.junitapp.ejemplo.carga;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoLote;
+import org.cano.junitapp.ejemplo.models.Transferencia;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("carga")
+class CargadorCsvTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void testCargarCuentasDesdeData2() throws IOException, URISyntaxException {
+        Banco banco = new Banco();
+        Path archivo = Paths.get(getClass().getResource("/data2.csv").toURI());
+        ResultadoCarga resultado = new CargadorCsv(banco).cargarCuentas(archivo);
+        assertEquals(6, resultado.getFilas());
+        assertEquals(6, resultado.getAplicadas());
+        assertEquals("1000.1234", banco.buscarCuenta("Jorch").getSaldo().toPlainString());
+    }
+
+    @Test
+    void testFilasSinNombreSeReportan() throws IOException, URISyntaxException {
+        Path archivo = Paths.get(getClass().getResource("/data.csv").toURI());
+        ResultadoCarga resultado = new CargadorCsv(new Banco()).cargarCuentas(archivo);
+        assertEquals(0, resultado.getAplicadas());
+        assertEquals(6, resultado.getErrores());
+        assertEquals("La fila no tiene persona", resultado.getDetalleErrores().get(0).getMotivo());
+    }
+
+    @Test
+    void testCargaParalelaEnBloques() throws IOException {
+        Path cuentas = directorio.resolve("cuentas.csv");
+        Path transferencias = directorio.resolve("transferencias.csv");
+        try (Writer escritor = Files.newBufferedWriter(cuentas)) {
+            for (int i = 0; i < 2000; i++) {
+                escritor.write("100,Persona" + i + "\n");
+            }
+            escritor.write("abc,Invalida\n");
+        }
+        try (Writer escritor = Files.newBufferedWriter(transferencias)) {
+            for (int i = 0; i < 2000; i++) {
+                escritor.write("10,Persona" + i + ",Persona" + ((i + 1) % 2000) + "\r\n");
+            }
+            escritor.write("10,Persona1,NoExiste\n");
+            escritor.write("500,Persona5,Persona6\n");
+        }
+
+        Banco banco = new Banco();
+        //Bloques muy pequenos para forzar muchas tareas en paralelo
+        CargadorCsv cargador = new CargadorCsv(banco, new ForkJoinPool(4), 512, 16);
+        ResultadoCarga resultadoCuentas = cargador.cargarCuentas(cuentas);
+        assertEquals(2000, resultadoCuentas.getAplicadas());
+        assertEquals(1, resultadoCuentas.getErrores());
+
+        ResultadoCarga resultadoTransferencias = cargador.cargarTransferencias(transferencias);
+        assertEquals(2002, resultadoTransferencias.getFilas());
+        assertEquals(2000, resultadoTransferencias.getAplicadas());
+        assertEquals(1, resultadoTransferencias.getRechazadas());
+        assertEquals(1, resultadoTransferencias.getErrores());
+        BigDecimal total = banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(new BigDecimal(200_000), total);
+    }
+
+    @Test
+    void testMontoQueNoCabeSeReportaPorFila() throws IOException {
+        Banco banco = new Banco();
+        banco.addCuenta(new Cuenta("Ana", new BigDecimal("100")));
+        banco.addCuenta(new Cuenta("Centavos", new BigDecimal("100.00"), 2));
+        Path transferencias = directorio.resolve("transferencias.csv");
+        Files.writeString(transferencias, "10,Ana,Centavos\n0.001,Ana,Centavos\n5.5,Centavos,Ana\n");
+
+        ResultadoCarga resultado = new CargadorCsv(banco).cargarTransferencias(transferencias);
+
+        //La fila invalida no detiene el lote, las demas se aplican
+        assertEquals(2, resultado.getAplicadas());
+        assertEquals(1, resultado.getErrores());
+        assertEquals(16, resultado.getDetalleErrores().get(0).getPosicion());
+        assertEquals("104.50", banco.buscarCuenta("Centavos").getSaldo().toPlainString());
+    }
+
+    @Test
+    void testBloqueDemasiadoGrande() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CargadorCsv(new Banco(), ForkJoinPool.commonPool(), Integer.MAX_VALUE, 16));
+    }
+
+    @Test
+    void testBloqueConErrorNoSePierde() throws IOException {
+        Path transferencias = directorio.resolve("transferencias.csv");
+        try (Writer escritor = Files.newBufferedWriter(transferencias)) {
+            for (int i = 0; i < 2000; i++) {
+                escritor.write("1,Juan,Pedro\n");
+            }
+        }
+        AtomicBoolean primero = new AtomicBoolean(true);
+        //Solo falla el primer lote; la tarea de ese bloque termina mucho antes que las demas
+        Banco banco = new Banco() {
+            @Override
+            public ResultadoLote transferirLote(List<Transferencia> lote) {
+                if (primero.getAndSet(false)) {
+                    throw new IllegalStateException("Falla del primer lote");
+                }
+                return super.transferirLote(lote);
+            }
+        };
+        banco.addCuenta(new Cuenta("Juan", new BigDecimal("100000")));
+        banco.addCuenta(new Cuenta("Pedro", BigDecimal.ZERO));
+        CargadorCsv cargador = new CargadorCsv(banco, new ForkJoinPool(4), 512, 16);
+        IOException error = assertThrows(IOException.class, () -> cargador.cargarTransferencias(transferencias));
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+}
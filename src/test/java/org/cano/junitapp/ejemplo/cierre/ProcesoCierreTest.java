@@ -0,0 +1,236 @@
+package org.cano.junitapp.ejemplo.cierre;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("cierre")
+class ProcesoCierreTest {
+    static final LocalDate FECHA = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path directorio;
+    Banco banco;
+    Cuenta[] cuentas;
+
+    @BeforeEach
+    void initBanco() {
+        banco = new Banco();
+        cuentas = new Cuenta[100];
+        for (int i = 0; i < cuentas.length; i++) {
+            //Las pares en punto fijo con 2 decimales, las impares con BigDecimal
+            BigDecimal saldo = i < 10 ? new BigDecimal("1.00") : new BigDecimal("3650.00");
+            cuentas[i] = i % 2 == 0 ? new Cuenta("Persona, " + i, saldo, 2) : new Cuenta("Persona, " + i, saldo);
+            banco.addCuenta(cuentas[i]);
+        }
+    }
+
+    List<ReglaCierre> reglas() {
+        //10% anual en base 365 y comision de 5 a los saldos menores que 100
+        return List.of(new ReglaInteres(new BigDecimal("0.10"), 365),
+                new ReglaComision("comision", new BigDecimal("5"), new BigDecimal("100")));
+    }
+
+    @Test
+    void testCierreAplicaInteresesYComisiones() throws Exception {
+        ProcesoCierre cierre = new ProcesoCierre(banco, reglas(), directorio, new ForkJoinPool(4), 16);
+
+        ResultadoCierre resultado = cierre.ejecutar(FECHA);
+
+        assertEquals(100, resultado.getCuentas());
+        assertEquals(7, resultado.getBloques());
+        //3650 * 0.10 / 365 = 1.00 de interes para 90 cuentas
+        assertEquals(0, new BigDecimal("90").compareTo(resultado.getAbonos()));
+        //Las 10 cuentas con saldo 1.00 reciben 0.00 de interes y no pueden pagar la comision
+        assertEquals(10, resultado.getCargosRechazados());
+        assertEquals(0, resultado.getCargos().signum());
+        assertEquals(new BigDecimal("3651.00"), cuentas[50].getSaldo());
+        assertEquals(new BigDecimal("3651.00"), cuentas[51].getSaldo());
+        assertEquals(new BigDecimal("1.00"), cuentas[0].getSaldo());
+
+        List<String> lineas = Files.readAllLines(resultado.getEstados());
+        assertEquals(101, lineas.size());
+        assertEquals("id,saldo_anterior,interes,comision,saldo_final,persona", lineas.get(0));
+        assertEquals(cuentas[0].getId() + ",1.00,0.00,rechazado,1.00,Persona, 0", lineas.get(1));
+        assertEquals(cuentas[50].getId() + ",3650.00,1.00,0.00,3651.00,Persona, 50", lineas.get(51));
+        assertEquals(cuentas[51].getId() + ",3650.00,1.00,0.00,3651.00,Persona, 51", lineas.get(52));
+        try (var archivos = Files.list(directorio)) {
+            assertEquals(1, archivos.count(), "Solo debe quedar el archivo de estados");
+        }
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+    }
+
+    @Test
+    void testCierreFallidoSeReanudaSinAplicarDosVeces() throws Exception {
+        //La cuenta 71 (bloque de las cuentas 64 a 79) tiene un saldo con el que la regla falla
+        BigDecimal saldoConError = new BigDecimal("7777.00");
+        cuentas[71].setSaldo(saldoConError);
+        boolean[] fallar = {true};
+        ProcesoCierre cierre = new ProcesoCierre(banco, List.of(bono(saldoConError, fallar)), directorio,
+                new ForkJoinPool(4), 16);
+
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+        //El bloque que fallo no cambio ninguna cuenta, los demas si se aplicaron
+        assertEquals(new BigDecimal("3650.00"), cuentas[70].getSaldo());
+        assertEquals(new BigDecimal("3651.00"), cuentas[20].getSaldo());
+
+        fallar[0] = false;
+        ResultadoCierre resultado = cierre.ejecutar(FECHA);
+
+        assertEquals(6, resultado.getBloquesReanudados());
+        assertEquals(0, new BigDecimal("100").compareTo(resultado.getAbonos()));
+        for (int i = 0; i < cuentas.length; i++) {
+            BigDecimal esperado = i < 10 ? new BigDecimal("2.00") : i == 71 ? new BigDecimal("7778.00")
+                    : new BigDecimal("3651.00");
+            assertEquals(esperado, cuentas[i].getSaldo(), "cuenta " + i);
+        }
+        assertEquals(101, Files.readAllLines(resultado.getEstados()).size());
+    }
+
+    @Test
+    void testCuentaAbiertaDespuesDeFallarNoEntraAlCierre() throws Exception {
+        BigDecimal saldoConError = new BigDecimal("7777.00");
+        cuentas[71].setSaldo(saldoConError);
+        boolean[] fallar = {true};
+        ProcesoCierre cierre = new ProcesoCierre(banco, List.of(bono(saldoConError, fallar)), directorio,
+                new ForkJoinPool(4), 16);
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+
+        //La cuenta nueva no estaba al empezar el cierre: no cambia los bloques ni recibe el bono
+        Cuenta nueva = new Cuenta("Nueva", new BigDecimal("3650.00"));
+        banco.addCuenta(nueva);
+        fallar[0] = false;
+        ResultadoCierre resultado = cierre.ejecutar(FECHA);
+
+        assertEquals(6, resultado.getBloquesReanudados());
+        assertEquals(100, resultado.getCuentas());
+        assertEquals(new BigDecimal("3650.00"), nueva.getSaldo());
+        assertEquals(new BigDecimal("7778.00"), cuentas[71].getSaldo());
+        assertEquals(101, Files.readAllLines(resultado.getEstados()).size());
+    }
+
+    @Test
+    void testSinAvanceNoSeAplicaDosVeces() throws Exception {
+        BigDecimal saldoConError = new BigDecimal("7777.00");
+        cuentas[71].setSaldo(saldoConError);
+        boolean[] fallar = {true};
+        ProcesoCierre cierre = new ProcesoCierre(banco, List.of(bono(saldoConError, fallar)), directorio,
+                new ForkJoinPool(4), 16);
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+
+        //Sin el avance todos los bloques se procesan otra vez, pero las cuentas marcadas no reciben el bono
+        Files.delete(directorio.resolve("cierre-" + FECHA + ".avance"));
+        fallar[0] = false;
+        ResultadoCierre resultado = cierre.ejecutar(FECHA);
+
+        assertEquals(0, resultado.getBloquesReanudados());
+        assertEquals(0, new BigDecimal("16").compareTo(resultado.getAbonos()));
+        for (int i = 0; i < cuentas.length; i++) {
+            BigDecimal esperado = i < 10 ? new BigDecimal("2.00") : i == 71 ? new BigDecimal("7778.00")
+                    : new BigDecimal("3651.00");
+            assertEquals(esperado, cuentas[i].getSaldo(), "cuenta " + i);
+        }
+        List<String> lineas = Files.readAllLines(resultado.getEstados());
+        assertEquals(cuentas[20].getId() + ",3651.00,aplicado,3651.00,Persona, 20", lineas.get(21));
+        assertEquals(cuentas[70].getId() + ",3650.00,1.00,3651.00,Persona, 70", lineas.get(71));
+    }
+
+    @Test
+    void testBloqueIniciadoSinMarcasNoSeReanuda() throws Exception {
+        BigDecimal saldoConError = new BigDecimal("7777.00");
+        cuentas[71].setSaldo(saldoConError);
+        boolean[] fallar = {true};
+        ProcesoCierre cierre = new ProcesoCierre(banco, List.of(bono(saldoConError, fallar)), directorio,
+                new ForkJoinPool(4), 16);
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+
+        //Como si el proceso se hubiera caido aplicando el bloque 4 y el banco se reconstruyera sin las marcas
+        Files.writeString(directorio.resolve("cierre-" + FECHA + ".avance"), "#inicio,4\n", StandardOpenOption.APPEND);
+        fallar[0] = false;
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+        assertTrue(error.getMessage().contains("conciliar"));
+        assertEquals(new BigDecimal("3650.00"), cuentas[70].getSaldo());
+        assertEquals(saldoConError, cuentas[71].getSaldo());
+    }
+
+    @Test
+    void testFallaAlAplicarDeshaceElBloque() throws Exception {
+        //La cuenta nueva tiene el id mayor y queda en el ultimo bloque, despues de las cuentas 96 a 99
+        boolean[] fallar = {true};
+        Cuenta conError = new Cuenta("Con error", new BigDecimal("3650.00")) {
+            @Override
+            public void credito(BigDecimal monto) {
+                if (fallar[0]) {
+                    throw new IllegalStateException("Falla simulada");
+                }
+                super.credito(monto);
+            }
+        };
+        banco.addCuenta(conError);
+        ProcesoCierre cierre = new ProcesoCierre(banco, reglas(), directorio, new ForkJoinPool(4), 16);
+
+        assertThrows(IllegalStateException.class, () -> cierre.ejecutar(FECHA));
+        assertEquals(new BigDecimal("3650.00"), cuentas[96].getSaldo());
+        assertEquals(new BigDecimal("3650.00"), cuentas[99].getSaldo());
+        assertEquals(new BigDecimal("3651.00"), cuentas[95].getSaldo());
+
+        fallar[0] = false;
+        ResultadoCierre resultado = cierre.ejecutar(FECHA);
+
+        assertEquals(6, resultado.getBloquesReanudados());
+        assertEquals(0, new BigDecimal("91").compareTo(resultado.getAbonos()));
+        assertEquals(new BigDecimal("3651.00"), cuentas[96].getSaldo());
+        assertEquals(new BigDecimal("3651.00"), cuentas[99].getSaldo());
+        assertEquals(new BigDecimal("3651.00"), conError.getSaldo());
+    }
+
+    @Test
+    void testInteresPuntoFijoIgualQueBigDecimal() {
+        SplittableRandom aleatorio = new SplittableRandom(3);
+        for (RoundingMode redondeo : List.of(RoundingMode.HALF_EVEN, RoundingMode.HALF_UP, RoundingMode.HALF_DOWN,
+                RoundingMode.DOWN, RoundingMode.UP, RoundingMode.FLOOR, RoundingMode.CEILING)) {
+            ReglaInteres regla = new ReglaInteres(new BigDecimal("0.0725"), 360);
+            for (int i = 0; i < 10_000; i++) {
+                long saldo = aleatorio.nextLong(1, Long.MAX_VALUE >> aleatorio.nextInt(1, 60));
+                int escala = aleatorio.nextInt(0, 5);
+                BigDecimal esperado = regla.calcular(BigDecimal.valueOf(saldo, escala), escala, redondeo);
+                assertEquals(esperado.unscaledValue().longValueExact(), regla.calcularUnidades(saldo, escala, redondeo),
+                        saldo + " " + escala + " " + redondeo);
+            }
+        }
+    }
+
+    //Abona 1 a cada cuenta y falla con el saldo indicado mientras fallar[0] sea true
+    static ReglaCierre bono(BigDecimal saldoConError, boolean[] fallar) {
+        return new ReglaCierre() {
+            @Override
+            public String getNombre() {
+                return "bono";
+            }
+
+            @Override
+            public BigDecimal calcular(BigDecimal saldo, int escala, RoundingMode redondeo) {
+                if (fallar[0] && saldo.compareTo(saldoConError) == 0) {
+                    throw new IllegalStateException("Falla simulada");
+                }
+                return BigDecimal.ONE.setScale(escala);
+            }
+        };
+    }
+}
@@ -0,0 +1,259 @@
+package org.cano.junitapp.ejemplo.compensacion;
+
+import org.cano.junitapp.ejemplo.exceptions.MovimientoAplicadoException;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ObservadorMovimientos;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("compensacion")
+class CamaraCompensacionTest {
+    Banco central;
+    Banco[] bancos;
+    Cuenta[] clientes;
+    CamaraCompensacion camara;
+
+    @BeforeEach
+    void initCamara() {
+        central = new Banco();
+        central.setNombre("Central");
+        camara = new CamaraCompensacion(central);
+        bancos = new Banco[3];
+        clientes = new Cuenta[bancos.length * 4];
+        for (int b = 0; b < bancos.length; b++) {
+            bancos[b] = new Banco();
+            bancos[b].setNombre("Banco" + b);
+            Cuenta reserva = new Cuenta("Reserva" + b, new BigDecimal("1000"));
+            central.addCuenta(reserva);
+            camara.registrar(bancos[b], reserva);
+            for (int c = 0; c < 4; c++) {
+                Cuenta cliente = new Cuenta("Cliente" + b + "-" + c, new BigDecimal("100"));
+                bancos[b].addCuenta(cliente);
+                clientes[b * 4 + c] = cliente;
+            }
+        }
+    }
+
+    @Test
+    void testLiquidarCalculaPosicionesNetas() {
+        CompletableFuture<ResultadoOperacion> r1 = camara.transferir(clientes[0], clientes[4], new BigDecimal("30"));
+        CompletableFuture<ResultadoOperacion> r2 = camara.transferir(clientes[5], clientes[1], new BigDecimal("10"));
+        CompletableFuture<ResultadoOperacion> r3 = camara.transferir(clientes[6], clientes[8], new BigDecimal("5"));
+        //Ya se debito al cliente, pero el destino recibe hasta liquidar
+        assertEquals(new BigDecimal("70"), clientes[0].getSaldo());
+        assertEquals(new BigDecimal("100"), clientes[4].getSaldo());
+        assertEquals(new BigDecimal("45"), camara.getEnTransito());
+        assertFalse(r1.isDone());
+
+        ResultadoLiquidacion resultado = camara.liquidar();
+
+        assertEquals(3, resultado.getLiquidadas());
+        assertEquals(0, resultado.getRechazadas());
+        assertEquals(ResultadoOperacion.EXITOSA, r1.join());
+        assertEquals(ResultadoOperacion.EXITOSA, r2.join());
+        assertEquals(ResultadoOperacion.EXITOSA, r3.join());
+        assertEquals(new BigDecimal("-20"), resultado.getPosicionNeta(bancos[0]));
+        assertEquals(new BigDecimal("15"), resultado.getPosicionNeta(bancos[1]));
+        assertEquals(new BigDecimal("5"), resultado.getPosicionNeta(bancos[2]));
+        assertEquals(new BigDecimal("980"), camara.getReserva(bancos[0]).getSaldo());
+        assertEquals(new BigDecimal("1015"), camara.getReserva(bancos[1]).getSaldo());
+        assertEquals(new BigDecimal("130"), clientes[4].getSaldo());
+        assertEquals(0, camara.getEnTransito().signum());
+        assertEquals(0, camara.getPendientes());
+    }
+
+    @Test
+    void testMismoBancoNoPasaPorLaCamara() {
+        CompletableFuture<ResultadoOperacion> resultado = camara.transferir(clientes[0], clientes[1], new BigDecimal("40"));
+
+        assertTrue(resultado.isDone());
+        assertEquals(new BigDecimal("140"), clientes[1].getSaldo());
+        assertEquals(0, camara.getPendientes());
+    }
+
+    @Test
+    void testReservaInsuficienteDevuelveElDinero() {
+        camara.getReserva(bancos[0]).debito(new BigDecimal("990"));
+        CompletableFuture<ResultadoOperacion> rechazada = camara.transferir(clientes[0], clientes[4], new BigDecimal("50"));
+        CompletableFuture<ResultadoOperacion> aceptada = camara.transferir(clientes[4], clientes[8], new BigDecimal("20"));
+
+        ResultadoLiquidacion resultado = camara.liquidar();
+
+        assertEquals(1, resultado.getRechazadas());
+        assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, rechazada.join());
+        assertEquals(ResultadoOperacion.EXITOSA, aceptada.join());
+        assertEquals(new BigDecimal("100"), clientes[0].getSaldo());
+        assertEquals(new BigDecimal("80"), clientes[4].getSaldo());
+        assertEquals(new BigDecimal("10"), camara.getReserva(bancos[0]).getSaldo());
+        assertEquals(0, camara.getEnTransito().signum());
+    }
+
+    @Test
+    void testCreditoFallidoSeDevuelvePorSeparado() {
+        Cuenta centavos = new Cuenta("Centavos", new BigDecimal("100"), 2);
+        bancos[1].addCuenta(centavos);
+        assertThrows(ArithmeticException.class, () -> camara.transferir(clientes[0], centavos, new BigDecimal("0.001")));
+        assertEquals(new BigDecimal("100"), clientes[0].getSaldo());
+
+        Cuenta cerrada = new Cuenta("Cerrada", new BigDecimal("100")) {
+            @Override
+            public void credito(BigDecimal monto) {
+                throw new IllegalStateException("Cuenta cerrada");
+            }
+        };
+        bancos[1].addCuenta(cerrada);
+        CompletableFuture<ResultadoOperacion> fallida = camara.transferir(clientes[0], cerrada, new BigDecimal("30"));
+        CompletableFuture<ResultadoOperacion> aceptada = camara.transferir(clientes[1], clientes[4], new BigDecimal("20"));
+
+        ResultadoLiquidacion resultado = camara.liquidar();
+
+        assertEquals(1, resultado.getLiquidadas());
+        assertEquals(1, resultado.getRechazadas());
+        CompletionException error = assertThrows(CompletionException.class, fallida::join);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(ResultadoOperacion.EXITOSA, aceptada.join());
+        assertEquals(new BigDecimal("100"), clientes[0].getSaldo());
+        assertEquals(new BigDecimal("120"), clientes[4].getSaldo());
+        assertEquals(new BigDecimal("980"), camara.getReserva(bancos[0]).getSaldo());
+        assertEquals(new BigDecimal("1020"), camara.getReserva(bancos[1]).getSaldo());
+        assertEquals(0, camara.getEnTransito().signum());
+    }
+
+    @Test
+    void testCreditoConObservadorFallidoSeLiquida() {
+        bancos[1].addObservador(new ObservadorMovimientos() {
+            @Override
+            public void credito(Cuenta cuenta, BigDecimal monto) {
+                throw new IllegalStateException("Falla simulada");
+            }
+        });
+        CompletableFuture<ResultadoOperacion> resultado = camara.transferir(clientes[0], clientes[4], new BigDecimal("30"));
+
+        ResultadoLiquidacion liquidacion = camara.liquidar();
+
+        //El destino ya recibio el dinero: no se revierte ni se devuelve
+        assertEquals(1, liquidacion.getLiquidadas());
+        assertEquals(0, liquidacion.getRechazadas());
+        CompletionException error = assertThrows(CompletionException.class, resultado::join);
+        assertTrue(error.getCause() instanceof MovimientoAplicadoException);
+        assertEquals(new BigDecimal("70"), clientes[0].getSaldo());
+        assertEquals(new BigDecimal("130"), clientes[4].getSaldo());
+        assertEquals(new BigDecimal("1030"), camara.getReserva(bancos[1]).getSaldo());
+        assertEquals(0, camara.getEnTransito().signum());
+    }
+
+    @Test
+    void testSinRevertirLasReservasQuedaPorReintentar() {
+        Cuenta reservaDestino = camara.getReserva(bancos[1]);
+        boolean[] gastar = {true};
+        Cuenta cerrada = new Cuenta("Cerrada", new BigDecimal("100")) {
+            @Override
+            public void credito(BigDecimal monto) {
+                //La primera vez el banco de destino gasta su reserva antes de que se revierta
+                if (gastar[0]) {
+                    gastar[0] = false;
+                    reservaDestino.debito(reservaDestino.getSaldo());
+                }
+                throw new IllegalStateException("Cuenta cerrada");
+            }
+        };
+        bancos[1].addCuenta(cerrada);
+        CompletableFuture<ResultadoOperacion> resultado = camara.transferir(clientes[0], cerrada, new BigDecimal("30"));
+
+        ResultadoLiquidacion liquidacion = camara.liquidar();
+
+        assertEquals(0, liquidacion.getLiquidadas());
+        assertEquals(0, liquidacion.getRechazadas());
+        assertEquals(1, liquidacion.getPorReintentar());
+        assertEquals(new BigDecimal("-30"), liquidacion.getPosicionNeta(bancos[0]));
+        assertEquals(new BigDecimal("30"), liquidacion.getPosicionNeta(bancos[1]));
+        assertFalse(resultado.isDone());
+        assertEquals(new BigDecimal("30"), camara.getEnTransito());
+        assertEquals(1, camara.getPorReintentar());
+
+        //Con reserva otra vez, el siguiente ciclo revierte las reservas y devuelve el monto
+        reservaDestino.credito(new BigDecimal("1030"));
+        liquidacion = camara.liquidar();
+
+        assertEquals(1, liquidacion.getRechazadas());
+        assertEquals(0, liquidacion.getPorReintentar());
+        assertEquals(new BigDecimal("30"), liquidacion.getPosicionNeta(bancos[0]));
+        assertEquals(new BigDecimal("-30"), liquidacion.getPosicionNeta(bancos[1]));
+        CompletionException error = assertThrows(CompletionException.class, resultado::join);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(new BigDecimal("100"), clientes[0].getSaldo());
+        assertEquals(new BigDecimal("1000"), camara.getReserva(bancos[0]).getSaldo());
+        assertEquals(0, camara.getEnTransito().signum());
+        assertEquals(0, camara.getPorReintentar());
+    }
+
+    @Test
+    void testBancoNoRegistrado() {
+        Cuenta externa = new Cuenta("Externa", new BigDecimal("100"));
+        new Banco().addCuenta(externa);
+
+        assertThrows(IllegalArgumentException.class, () -> camara.transferir(externa, clientes[0], BigDecimal.ONE));
+        assertEquals(new BigDecimal("100"), externa.getSaldo());
+    }
+
+    @Test
+    void testLiquidacionPeriodicaConservaElDinero() throws Exception {
+        BigDecimal totalClientes = sumar(clientes);
+        camara.iniciar(1, TimeUnit.MILLISECONDS);
+        ExecutorService hilos = Executors.newFixedThreadPool(4);
+        List<Future<List<CompletableFuture<ResultadoOperacion>>>> envios = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            long semilla = h;
+            envios.add(hilos.submit(() -> {
+                SplittableRandom aleatorio = new SplittableRandom(semilla);
+                List<CompletableFuture<ResultadoOperacion>> propios = new ArrayList<>();
+                for (int i = 0; i < 5_000; i++) {
+                    Cuenta origen = clientes[aleatorio.nextInt(clientes.length)];
+                    Cuenta destino = clientes[aleatorio.nextInt(clientes.length)];
+                    propios.add(camara.transferir(origen, destino, new BigDecimal(aleatorio.nextInt(1, 20))));
+                }
+                return propios;
+            }));
+        }
+        List<CompletableFuture<ResultadoOperacion>> resultados = new ArrayList<>();
+        for (Future<List<CompletableFuture<ResultadoOperacion>>> envio : envios) {
+            resultados.addAll(envio.get(30, TimeUnit.SECONDS));
+        }
+        hilos.shutdown();
+        camara.close();
+
+        assertTrue(resultados.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(0, camara.getEnTransito().signum());
+        assertEquals(0, totalClientes.compareTo(sumar(clientes)));
+        assertEquals(0, new BigDecimal("3000").compareTo(central.sumarSaldos()));
+        //Lo que gano o perdio cada banco se refleja en su reserva
+        for (int b = 0; b < bancos.length; b++) {
+            BigDecimal cambio = bancos[b].sumarSaldos().subtract(new BigDecimal("400"));
+            assertEquals(0, new BigDecimal("1000").add(cambio).compareTo(camara.getReserva(bancos[b]).getSaldo()));
+        }
+    }
+
+    private static BigDecimal sumar(Cuenta[] cuentas) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Cuenta cuenta : cuentas) {
+            total = total.add(cuenta.getSaldo());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,82 @@
+package org.cano.junitapp.ejemplo.metricas;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.cano.junitapp.ejemplo.models.TipoOperacion;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("metricas")
+class MetricasBancoTest {
+
+    @Test
+    void testContadoresPorOperacion() {
+        Banco banco = new Banco();
+        Cuenta juan = new Cuenta("Juan", new BigDecimal("2500"));
+        Cuenta pedro = new Cuenta("Pedro", new BigDecimal("1500"));
+        banco.addCuenta(juan);
+        banco.addCuenta(pedro);
+        MetricasBanco metricas = MetricasBanco.activar(banco);
+
+        juan.credito(BigDecimal.TEN);
+        juan.debito(BigDecimal.ONE);
+        assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, pedro.tryDebito(new BigDecimal("9000")));
+        banco.transferir(juan, pedro, new BigDecimal("100"));
+        assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, banco.tryTransferir(pedro, juan, new BigDecimal("9000")));
+
+        InstantaneaMetricas instantanea = metricas.instantanea();
+        assertEquals(1, instantanea.getExitosas(TipoOperacion.CREDITO));
+        assertEquals(1, instantanea.getExitosas(TipoOperacion.DEBITO));
+        assertEquals(1, instantanea.getExitosas(TipoOperacion.TRANSFERENCIA));
+        assertEquals(2, instantanea.getRechazosDineroInsuficiente());
+        assertEquals(2, instantanea.getLatencias(TipoOperacion.TRANSFERENCIA).getCantidad());
+
+        //Apagadas, las metricas ya no cambian
+        banco.setMedidor(null);
+        juan.credito(BigDecimal.TEN);
+        assertEquals(1, metricas.getCreditos());
+    }
+
+    @Test
+    void testPercentilesDelHistograma() {
+        HistogramaLatencias histograma = new HistogramaLatencias();
+        for (int i = 1; i <= 1000; i++) {
+            histograma.registrar(i * 1000L);
+        }
+        ResumenLatencias resumen = histograma.resumen();
+        assertEquals(1000, resumen.getCantidad());
+        assertEquals(1_000_000, resumen.getMaximo());
+        //El error relativo de las cubetas es menor al 4%
+        assertEquals(500_000, resumen.getP50(), 500_000 * 0.04);
+        assertEquals(990_000, resumen.getP99(), 990_000 * 0.04);
+        assertEquals(500_500, resumen.getPromedio(), 0.001);
+    }
+
+    @Test
+    void testCubetasContinuas() {
+        for (long valor = 0; valor < 100_000; valor++) {
+            int indice = HistogramaLatencias.indice(valor);
+            assertTrue(HistogramaLatencias.limiteInferior(indice) <= valor);
+            assertTrue(HistogramaLatencias.limiteInferior(indice + 1) > valor);
+        }
+    }
+
+    @Test
+    void testRegistroJmx() throws JMException {
+        MetricasBanco metricas = MetricasBanco.activar(new Banco());
+        ObjectName nombre = metricas.registrarJmx("prueba");
+        try {
+            assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(nombre, "Transferencias"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombre);
+        }
+    }
+}
@@ -0,0 +1,798 @@
+package org.cano.junitapp.ejemplo.models;
+
+import org.cano.junitapp.ejemplo.exceptions.DineroInsuficienteException;
+import org.cano.junitapp.ejemplo.temporizador.RuedaTemporizadores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("banco")
+class BancoTest {
+
+    Banco banco;
+    Cuenta cuenta1;
+    Cuenta cuenta2;
+
+    @BeforeEach
+    void setUp() {
+        banco = new Banco();
+        banco.setNombre("Banco del estado");
+        cuenta1 = new Cuenta("Juan", new BigDecimal("2500"));
+        cuenta2 = new Cuenta("Pedro", new BigDecimal("1500.123"));
+        banco.addCuenta(cuenta1);
+        banco.addCuenta(cuenta2);
+    }
+
+    @Nested
+    @Tag("concurrencia")
+    class TransferenciaConcurrenteTest {
+
+        @Test
+        @DisplayName("Transferencias cruzadas A->B y B->A no se bloquean y conservan el dinero")
+        void testTransferenciasCruzadasSinInterbloqueo() throws InterruptedException {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 8; i++) {
+                boolean haciaPedro = i % 2 == 0;
+                executor.execute(() -> {
+                    for (int j = 0; j < 5_000; j++) {
+                        try {
+                            if (haciaPedro) {
+                                banco.transferir(cuenta1, cuenta2, BigDecimal.ONE);
+                            } else {
+                                banco.transferir(cuenta2, cuenta1, BigDecimal.ONE);
+                            }
+                        } catch (DineroInsuficienteException e) {
+                            //Puede ocurrir si una cuenta se vacia, no afecta la suma total
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), () -> "Las transferencias no terminaron, posible interbloqueo");
+            assertEquals(new BigDecimal("4000.123"), cuenta1.getSaldo().add(cuenta2.getSaldo()));
+        }
+
+        @Test
+        @DisplayName("Un debito fallido deja ambas cuentas sin cambios")
+        void testTransferenciaFallidaNoModificaCuentas() {
+            assertThrows(DineroInsuficienteException.class, () -> banco.transferir(cuenta2, cuenta1, new BigDecimal("5000")));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("1500.123", cuenta2.getSaldo().toPlainString());
+        }
+    }
+
+    @Nested
+    class SinExcepcionesTest {
+
+        @Test
+        void testTryTransferirSinFondos() {
+            assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, banco.tryTransferir(cuenta2, cuenta1, new BigDecimal("5000")));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("1500.123", cuenta2.getSaldo().toPlainString());
+            assertEquals(ResultadoOperacion.EXITOSA, banco.tryTransferir(cuenta2, cuenta1, new BigDecimal("500")));
+            assertEquals("3000", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testTryDebito() {
+            assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, cuenta1.tryDebito(new BigDecimal("2500.01")));
+            assertTrue(cuenta1.tryDebito(new BigDecimal("2500")).isExitosa());
+            assertEquals(0, cuenta1.getSaldo().compareTo(BigDecimal.ZERO));
+        }
+
+        @Test
+        void testExcepcionSinTraza() {
+            banco.setExcepcionesSinTraza(true);
+            DineroInsuficienteException e1 = assertThrows(DineroInsuficienteException.class, () -> cuenta1.debito(new BigDecimal("9000")));
+            DineroInsuficienteException e2 = assertThrows(DineroInsuficienteException.class, () -> banco.transferir(cuenta1, cuenta2, new BigDecimal("9000")));
+            assertSame(e1, e2);
+            assertEquals("Dinero insuficiente", e1.getMessage());
+            assertEquals(0, e1.getStackTrace().length);
+        }
+    }
+
+    @Nested
+    class BusquedaCuentasTest {
+
+        @Test
+        void testBuscarPorPersonaEId() {
+            assertSame(cuenta1, banco.buscarCuenta("Juan"));
+            assertSame(cuenta2, banco.buscarCuenta(cuenta2.getId()));
+            assertNull(banco.buscarCuenta("Maria"));
+            assertEquals(2, banco.getNumeroCuentas());
+        }
+
+        @Test
+        void testCambioDePersonaActualizaIndice() {
+            cuenta1.setPersona("Juan Carlos");
+            assertNull(banco.buscarCuenta("Juan"));
+            assertSame(cuenta1, banco.buscarCuenta("Juan Carlos"));
+        }
+
+        @Test
+        void testRemoverCuenta() {
+            assertTrue(banco.removeCuenta(cuenta1));
+            assertFalse(banco.removeCuenta(cuenta1));
+            assertNull(banco.buscarCuenta("Juan"));
+            assertNull(cuenta1.getBanco());
+            assertEquals(1, banco.getCuentas().size());
+        }
+
+        @Test
+        void testHashCodeEstableAlCambiarSaldo() {
+            int hash = cuenta1.hashCode();
+            cuenta1.credito(new BigDecimal("100"));
+            cuenta1.setPersona("Juan Carlos");
+            assertEquals(hash, cuenta1.hashCode());
+            assertNotEquals(new Cuenta("Juan Carlos", new BigDecimal("2600")), cuenta1);
+        }
+    }
+
+    @Nested
+    class TransferenciaLoteTest {
+
+        @Test
+        void testLoteConNeteo() {
+            Cuenta cuenta3 = new Cuenta("Maria", BigDecimal.ZERO);
+            banco.addCuenta(cuenta3);
+            //Maria no tiene saldo pero el neteo del lote la deja en positivo
+            List<Transferencia> lote = Arrays.asList(
+                    new Transferencia(cuenta3, cuenta1, new BigDecimal("100")),
+                    new Transferencia(cuenta1, cuenta3, new BigDecimal("300")),
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal("500")));
+            ResultadoLote resultado = banco.transferirLote(lote);
+            assertTrue(resultado.isCompleto());
+            assertEquals(3, resultado.getAplicadas());
+            assertEquals("2800", cuenta1.getSaldo().toPlainString());
+            assertEquals("1000.123", cuenta2.getSaldo().toPlainString());
+            assertEquals("200", cuenta3.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testLoteReportaRechazadas() {
+            List<Transferencia> lote = Arrays.asList(
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal("2000")),
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal("1000")),
+                    new Transferencia(cuenta2, cuenta1, new BigDecimal("100")));
+            //El neto de Juan seria negativo, se rechaza solo la transferencia que lo deja sin fondos
+            ResultadoLote resultado = banco.transferirLote(lote);
+            assertFalse(resultado.isCompleto());
+            assertArrayEquals(new int[]{1}, resultado.getIndicesRechazados());
+            assertSame(lote.get(1), resultado.getRechazadas().get(0));
+            assertEquals("600", cuenta1.getSaldo().toPlainString());
+            assertEquals("3400.123", cuenta2.getSaldo().toPlainString());
+        }
+
+        @Test
+        void testMontoSinEscalaEnDestinoNoPierdeDinero() {
+            Cuenta fija = new Cuenta("Ana", new BigDecimal("10.00"), 2);
+            banco.addCuenta(fija);
+            BigDecimal monto = new BigDecimal("0.001");
+            //El destino en punto fijo no puede representar el monto, ninguna cuenta debe cambiar
+            assertThrows(ArithmeticException.class, () -> banco.transferir(cuenta2, fija, monto));
+            assertThrows(ArithmeticException.class, () -> banco.transferirLote(Arrays.asList(
+                    new Transferencia(cuenta1, cuenta2, new BigDecimal("100")),
+                    new Transferencia(cuenta2, fija, monto))));
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("1500.123", cuenta2.getSaldo().toPlainString());
+            assertEquals("10.00", fija.getSaldo().toPlainString());
+        }
+    }
+
+    @Nested
+    class AlmacenColumnarTest {
+        AlmacenColumnar almacen;
+
+        @BeforeEach
+        void setUp() {
+            almacen = new AlmacenColumnar(banco, 2, 3 * AlmacenColumnar.CUENTAS_POR_SEGMENTO);
+        }
+
+        @Test
+        @DisplayName("Las vistas del almacen funcionan con debito, credito y Banco.transferir")
+        void testVistasSobreColumnas() {
+            long juan = almacen.agregar("Juan", new BigDecimal("100.50"));
+            long pedro = almacen.agregar("Pedro", new BigDecimal("20"));
+            Cuenta vistaJuan = almacen.buscarCuenta(juan);
+            Cuenta vistaPedro = almacen.buscarCuenta(pedro);
+
+            banco.transferir(vistaJuan, vistaPedro, new BigDecimal("0.50"));
+            vistaJuan.debito(BigDecimal.TEN);
+            almacen.buscarCuenta(pedro).creditoUnidades(1);
+            assertThrows(DineroInsuficienteException.class, () -> banco.transferir(vistaPedro, vistaJuan, new BigDecimal("100")));
+
+            assertEquals("90.00", almacen.getSaldo(juan).toPlainString());
+            assertEquals("20.51", vistaPedro.getSaldo().toPlainString());
+            assertEquals(11051, almacen.getSaldoTotalUnidades());
+            assertNull(almacen.buscarCuenta(cuenta1.getId()));
+            assertEquals(vistaJuan, banco.buscarCuenta(juan));
+            assertEquals(vistaJuan, almacen.buscarCuenta(juan));
+            assertEquals(vistaJuan.hashCode(), almacen.buscarCuenta(juan).hashCode());
+        }
+
+        @Test
+        void testRetencionCompartidaEntreVistas() {
+            long juan = almacen.agregar("Juan", new BigDecimal("100"));
+            Cuenta v1 = almacen.buscarCuenta(juan);
+            Cuenta v2 = almacen.buscarCuenta(juan);
+
+            Retencion retencion = v1.retener(new BigDecimal("80"), 1, TimeUnit.HOURS);
+            assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, v2.tryDebito(new BigDecimal("50")));
+            assertEquals("20.00", almacen.buscarCuenta(juan).getSaldoDisponible().toPlainString());
+            retencion.liberar();
+            assertEquals(ResultadoOperacion.EXITOSA, v2.tryDebito(new BigDecimal("50")));
+            assertEquals("50.00", almacen.getSaldo(juan).toPlainString());
+        }
+
+        @Test
+        @DisplayName("Las cuentas del almacen aparecen en las consultas, instantaneas y agregados del banco")
+        void testCuentasRegistradasEnElBanco() {
+            AgregadosBanco agregados = banco.activarAgregados();
+            long ana = almacen.agregar("Ana", new BigDecimal("5000"));
+            long luis = almacen.agregarUnidades("Luis", 1);
+
+            assertEquals("Ana", banco.buscarCuenta(ana).getPersona());
+            assertEquals(4, banco.getNumeroCuentas());
+            assertEquals(new BigDecimal("9000.133"), banco.sumarSaldos());
+            assertEquals(0, new BigDecimal("9000.133").compareTo(agregados.getSaldoTotal()));
+            assertEquals(4, agregados.getNumeroCuentas());
+            assertEquals(1, banco.contarSaldosMenoresA(BigDecimal.ONE));
+            assertEquals(List.of(banco.buscarCuenta(ana), cuenta1), banco.mayoresSaldos(2));
+            assertArrayEquals(new long[]{1, 1, 2}, banco.histogramaSaldos(BigDecimal.ONE, new BigDecimal("2000")));
+            assertEquals("5000.00", banco.instantaneaSaldos().getSaldo(ana).toPlainString());
+            List<Long> ids = new ArrayList<>();
+            banco.forEachCuenta(cuenta -> ids.add(cuenta.getId()));
+            assertTrue(ids.containsAll(List.of(ana, luis)));
+        }
+
+        @Test
+        @DisplayName("Un alta que falla a medias deja un hueco y no detiene las siguientes")
+        void testAltaFallidaNoDetieneLasSiguientes() {
+            boolean[] fallar = {true};
+            AlmacenColumnar conFalla = new AlmacenColumnar(banco, 2, 10) {
+                @Override
+                ByteBuffer nuevoSegmento(int bytesPorCuenta) {
+                    if (fallar[0]) {
+                        fallar[0] = false;
+                        throw new OutOfMemoryError("Direct buffer memory");
+                    }
+                    return super.nuevoSegmento(bytesPorCuenta);
+                }
+            };
+
+            assertThrows(OutOfMemoryError.class, () -> conFalla.agregarUnidades("Juan", 100));
+            long pedro = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> conFalla.agregarUnidades("Pedro", 50));
+            assertFalse(conFalla.contiene(pedro - 1));
+            assertNull(banco.buscarCuenta(pedro - 1));
+            assertEquals(1, conFalla.getNumeroCuentas());
+            assertEquals(50, conFalla.getSaldoTotalUnidades());
+            List<Cuenta> vistas = new ArrayList<>();
+            conFalla.forEachCuenta(vistas::add);
+            assertEquals(List.of(conFalla.buscarCuenta(pedro)), vistas);
+        }
+
+        @Test
+        void testNombresSinRepetidos() {
+            for (int i = 0; i < AlmacenColumnar.CUENTAS_POR_SEGMENTO + 10; i++) {
+                almacen.agregarUnidades("Persona" + (i % 5000), 1);
+            }
+            assertEquals(5000, almacen.getNombresDistintos());
+            long id = almacen.agregarUnidades("Ana", 0);
+            almacen.buscarCuenta(id).setPersona("Ana Maria");
+            assertEquals("Ana Maria", almacen.getPersona(id));
+            assertEquals(AlmacenColumnar.CUENTAS_POR_SEGMENTO * 2L * 12, almacen.getBytesFueraDelHeap());
+            assertNull(banco.buscarCuenta("Ana Maria"));
+        }
+
+        @Test
+        @Tag("concurrencia")
+        void testTransferenciasConcurrentesConservanElDinero() throws InterruptedException {
+            long[] ids = new long[1000];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = almacen.agregarUnidades("Persona" + i, 100);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int h = 0; h < 8; h++) {
+                int semilla = h;
+                executor.execute(() -> {
+                    SplittableRandom aleatorio = new SplittableRandom(semilla);
+                    for (int j = 0; j < 20_000; j++) {
+                        almacen.tryTransferir(ids[aleatorio.nextInt(ids.length)], ids[aleatorio.nextInt(ids.length)],
+                                new BigDecimal(aleatorio.nextInt(1, 50)));
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals(1000L * 100, almacen.getSaldoTotalUnidades());
+        }
+
+        @Test
+        @Tag("concurrencia")
+        void testAltasConcurrentesSoloSeVenCompletas() throws Exception {
+            //Las altas concurrentes cruzan al segundo segmento, que aun no existe
+            long primero = almacen.agregarUnidades("Persona", 1);
+            for (int i = 1; i < AlmacenColumnar.CUENTAS_POR_SEGMENTO - 1000; i++) {
+                almacen.agregarUnidades("Persona", 1);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int h = 0; h < 4; h++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        almacen.agregarUnidades("Persona" + j, 1);
+                    }
+                });
+            }
+            executor.shutdown();
+            //La ultima cuenta visible siempre tiene su segmento creado y su saldo escrito
+            while (!executor.isTerminated()) {
+                long ultima = primero + almacen.getNumeroCuentas() - 1;
+                assertEquals(1, almacen.getSaldoUnidades(ultima));
+                assertEquals(1, almacen.buscarCuenta(ultima).getSaldoUnidades());
+            }
+            assertEquals(AlmacenColumnar.CUENTAS_POR_SEGMENTO - 1000 + 4 * 2000, almacen.getSaldoTotalUnidades());
+        }
+    }
+
+    @Nested
+    class ConsultasTest {
+
+        @Test
+        @DisplayName("Los agregados se mantienen con debitos, creditos, altas y bajas")
+        void testAgregadosIncrementales() {
+            AgregadosBanco agregados = banco.activarAgregados();
+            assertSame(agregados, banco.activarAgregados());
+            assertEquals(new BigDecimal("4000.123"), agregados.getSaldoTotal());
+
+            cuenta1.debito(new BigDecimal("100"));
+            cuenta2.credito(new BigDecimal("0.877"));
+            banco.transferir(cuenta1, cuenta2, BigDecimal.TEN);
+            Cuenta andres = new Cuenta("Andres", new BigDecimal("50"));
+            banco.addCuenta(andres);
+            andres.setSaldo(new BigDecimal("70"));
+            banco.removeCuenta(cuenta2);
+
+            assertEquals(2, agregados.getNumeroCuentas());
+            assertEquals(1, agregados.getTransferencias());
+            assertEquals(0, agregados.getSaldoTotal().compareTo(banco.sumarSaldos()));
+            assertEquals(new BigDecimal("2460"), banco.sumarSaldos());
+        }
+
+        @Test
+        @DisplayName("Las consultas en paralelo recorren todas las cuentas")
+        void testConsultasEnParalelo() {
+            for (int i = 1; i <= 20_000; i++) {
+                banco.addCuenta(new Cuenta("Persona" + i, new BigDecimal(i)));
+            }
+            assertEquals(new BigDecimal("200014000.123"), banco.sumarSaldos());
+            assertEquals(99, banco.contarSaldosMenoresA(new BigDecimal("100")));
+
+            List<Cuenta> mayores = banco.mayoresSaldos(3);
+            assertEquals(Arrays.asList("Persona20000", "Persona19999", "Persona19998"),
+                    Arrays.asList(mayores.get(0).getPersona(), mayores.get(1).getPersona(), mayores.get(2).getPersona()));
+
+            long[] histograma = banco.histogramaSaldos(new BigDecimal("1000"), new BigDecimal("2000"));
+            assertArrayEquals(new long[]{999, 1001, 18002}, histograma);
+        }
+
+        @Test
+        @DisplayName("Los mayores saldos se ordenan por el saldo leido aunque cambie durante la consulta")
+        void testMayoresConSaldosQueCambian() {
+            SplittableRandom aleatorio = new SplittableRandom(7);
+            for (int i = 0; i < 500; i++) {
+                //Cada lectura del saldo regresa un valor distinto, como si otra transferencia lo cambiara
+                banco.addCuenta(new Cuenta("Persona" + i, BigDecimal.ONE) {
+                    @Override
+                    public BigDecimal getSaldo() {
+                        synchronized (aleatorio) {
+                            return new BigDecimal(aleatorio.nextInt(1_000_000));
+                        }
+                    }
+                });
+            }
+            for (int intento = 0; intento < 20; intento++) {
+                List<Cuenta> mayores = banco.mayoresSaldos(100);
+                assertEquals(100, mayores.size());
+                assertEquals(100, new HashSet<>(mayores).size());
+            }
+        }
+    }
+
+    @Nested
+    @Tag("concurrencia")
+    class InstantaneaSaldosTest {
+
+        @Test
+        @DisplayName("Las instantaneas cuadran mientras corren transferencias")
+        void testInstantaneasConTransferenciasConcurrentes() throws InterruptedException {
+            Cuenta[] cuentas = new Cuenta[200];
+            for (int i = 0; i < cuentas.length; i++) {
+                cuentas[i] = new Cuenta("Persona" + i, new BigDecimal("100"), i % 2 == 0 ? 2 : 0);
+                banco.addCuenta(cuentas[i]);
+            }
+            BigDecimal total = banco.sumarSaldos();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int h = 0; h < 4; h++) {
+                int semilla = h;
+                executor.execute(() -> {
+                    SplittableRandom aleatorio = new SplittableRandom(semilla);
+                    for (int j = 0; j < 50_000; j++) {
+                        banco.tryTransferir(cuentas[aleatorio.nextInt(cuentas.length)],
+                                cuentas[aleatorio.nextInt(cuentas.length)], new BigDecimal(aleatorio.nextInt(1, 20)));
+                    }
+                });
+            }
+            executor.shutdown();
+            int instantaneas = 0;
+            while (!executor.isTerminated() || instantaneas == 0) {
+                InstantaneaSaldos instantanea = banco.instantaneaSaldos();
+                assertEquals(202, instantanea.getNumeroCuentas());
+                assertEquals(0, total.compareTo(instantanea.getSaldoTotal()));
+                instantaneas++;
+            }
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+
+        @Test
+        void testInstantaneaNoCambia() {
+            InstantaneaSaldos instantanea = banco.instantaneaSaldos();
+            banco.transferir(cuenta1, cuenta2, new BigDecimal("500"));
+            cuenta1.credito(BigDecimal.ONE);
+            assertEquals(new BigDecimal("2500"), instantanea.getSaldo(cuenta1.getId()));
+            assertEquals(new BigDecimal("4000.123"), instantanea.getSaldoTotal());
+            assertNull(instantanea.getSaldo(-1));
+            assertThrows(UnsupportedOperationException.class, () -> instantanea.getSaldos().clear());
+        }
+    }
+
+    @Nested
+    class TransferenciaIdempotenteTest {
+
+        @Test
+        @DisplayName("Un reintento con la misma clave no mueve el dinero otra vez")
+        void testReintentoNoRepiteLaTransferencia() {
+            banco.transferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100"));
+            banco.transferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100"));
+            assertEquals("2400", cuenta1.getSaldo().toPlainString());
+
+            assertThrows(DineroInsuficienteException.class, () -> banco.transferir("solicitud-2", cuenta2, cuenta1, new BigDecimal("5000")));
+            cuenta2.credito(new BigDecimal("5000"));
+            //El rechazo tambien se guarda
+            assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, banco.tryTransferir("solicitud-2", cuenta2, cuenta1, new BigDecimal("5000")));
+            assertThrows(IllegalArgumentException.class, () -> banco.transferir("solicitud-1", cuenta1, cuenta2, BigDecimal.ONE));
+            assertEquals(2, banco.getCacheIdempotencia().getDuplicados());
+        }
+
+        @Test
+        @Tag("concurrencia")
+        void testDuplicadosConcurrentesSeEjecutanUnaVez() throws InterruptedException {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 8_000; i++) {
+                String clave = "clave-" + (i % 1000);
+                executor.execute(() -> banco.tryTransferir(clave, cuenta1, cuenta2, BigDecimal.ONE));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals("1500", cuenta1.getSaldo().toPlainString());
+            assertEquals(7000, banco.getCacheIdempotencia().getDuplicados());
+        }
+
+        @Test
+        void testVencimientoYTamanioMaximo() throws InterruptedException {
+            banco.setCacheIdempotencia(new CacheIdempotencia(100, 50, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 1000; i++) {
+                banco.tryTransferir("clave-" + i, cuenta1, cuenta2, BigDecimal.ONE);
+            }
+            assertTrue(banco.getCacheIdempotencia().getTamanio() <= 100);
+
+            banco.transferir("vence", cuenta1, cuenta2, BigDecimal.TEN);
+            Thread.sleep(100);
+            banco.transferir("vence", cuenta1, cuenta2, BigDecimal.TEN);
+            assertEquals("1480", cuenta1.getSaldo().toPlainString());
+        }
+
+        @Test
+        @DisplayName("Una clave en proceso no se quita aunque se llene la cache")
+        void testClaveEnProcesoNoSeQuitaAlLlenarse() throws Exception {
+            CacheIdempotencia cache = new CacheIdempotencia(4, 1, TimeUnit.HOURS);
+            CountDownLatch iniciada = new CountDownLatch(1);
+            CountDownLatch continuar = new CountDownLatch(1);
+            AtomicInteger ejecuciones = new AtomicInteger();
+            Supplier<ResultadoOperacion> lenta = () -> {
+                ejecuciones.incrementAndGet();
+                iniciada.countDown();
+                try {
+                    continuar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ResultadoOperacion.EXITOSA;
+            };
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            Future<ResultadoOperacion> primera = executor.submit(() ->
+                    cache.ejecutar("bloqueada", cuenta1, cuenta2, BigDecimal.ONE, lenta));
+            assertTrue(iniciada.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i++) {
+                cache.ejecutar("clave-" + i, cuenta1, cuenta2, BigDecimal.ONE, () -> ResultadoOperacion.EXITOSA);
+            }
+            Future<ResultadoOperacion> reintento = executor.submit(() ->
+                    cache.ejecutar("bloqueada", cuenta1, cuenta2, BigDecimal.ONE, lenta));
+            continuar.countDown();
+            executor.shutdown();
+
+            assertEquals(ResultadoOperacion.EXITOSA, primera.get(10, TimeUnit.SECONDS));
+            assertEquals(ResultadoOperacion.EXITOSA, reintento.get(10, TimeUnit.SECONDS));
+            assertEquals(1, ejecuciones.get());
+            assertEquals(1, cache.getDuplicados());
+            assertTrue(cache.getTamanio() <= 4);
+        }
+    }
+
+    @Nested
+    class RetencionesTest {
+        AtomicLong ahora = new AtomicLong();
+
+        @BeforeEach
+        void setUp() {
+            banco.setRuedaTemporizadores(new RuedaTemporizadores(10, TimeUnit.MILLISECONDS, 4,
+                    () -> TimeUnit.MILLISECONDS.toNanos(ahora.get())));
+        }
+
+        @Test
+        @DisplayName("Una retencion reduce el disponible sin mover el dinero")
+        void testRetenerYCobrar() {
+            Retencion retencion = cuenta1.retener(new BigDecimal("2000"), 1, TimeUnit.HOURS);
+            assertEquals("2500", cuenta1.getSaldo().toPlainString());
+            assertEquals("500", cuenta1.getSaldoDisponible().toPlainString());
+            assertThrows(DineroInsuficienteException.class, () -> cuenta1.debito(new BigDecimal("600")));
+            assertThrows(DineroInsuficienteException.class, () -> banco.transferir(cuenta1, cuenta2, new BigDecimal("600")));
+            assertThrows(DineroInsuficienteException.class, () -> banco.retener(cuenta1, new BigDecimal("600"), 1, TimeUnit.HOURS));
+            ResultadoLote lote = banco.transferirLote(Arrays.asList(new Transferencia(cuenta1, cuenta2, new BigDecimal("600"))));
+            assertEquals(0, lote.getAplicadas());
+
+            retencion.cobrar(new BigDecimal("1500"));
+            assertEquals(EstadoRetencion.COBRADA, retencion.getEstado());
+            assertEquals("1000", cuenta1.getSaldo().toPlainString());
+            assertEquals(0, cuenta1.getRetenido().signum());
+            assertThrows(IllegalStateException.class, retencion::liberar);
+        }
+
+        @Test
+        void testCobroFallidoNoDejaElMontoApartado() {
+            Cuenta fija = new Cuenta("Luis", new BigDecimal("100"), 2);
+            banco.addCuenta(fija);
+            assertThrows(ArithmeticException.class, () -> banco.retener(fija, new BigDecimal("10.005"), 1, TimeUnit.HOURS));
+            assertEquals(0, fija.getRetenido().signum());
+
+            Retencion retencion = banco.retener(fija, new BigDecimal("80"), 1, TimeUnit.HOURS);
+            assertThrows(ArithmeticException.class, () -> retencion.cobrar(new BigDecimal("10.005")));
+            assertEquals(EstadoRetencion.ACTIVA, retencion.getEstado());
+            fija.setSaldo(new BigDecimal("50"));
+            assertThrows(IllegalStateException.class, retencion::cobrar);
+            assertEquals(EstadoRetencion.LIBERADA, retencion.getEstado());
+            assertEquals(0, fija.getRetenido().signum());
+            assertEquals("50.00", fija.getSaldoDisponible().toPlainString());
+        }
+
+        @Test
+        void testLiberarYVencer() {
+            Retencion liberada = banco.retener(cuenta2, new BigDecimal("1000"), 1, TimeUnit.MINUTES);
+            Retencion vence = banco.retener(cuenta2, new BigDecimal("500"), 30, TimeUnit.SECONDS);
+            assertEquals("0.123", cuenta2.getSaldoDisponible().toPlainString());
+            liberada.liberar();
+            assertEquals("1000.123", cuenta2.getSaldoDisponible().toPlainString());
+
+            ahora.set(29_990);
+            banco.getRuedaTemporizadores().avanzar();
+            assertEquals(EstadoRetencion.ACTIVA, vence.getEstado());
+            ahora.set(30_000);
+            banco.getRuedaTemporizadores().avanzar();
+            assertEquals(EstadoRetencion.VENCIDA, vence.getEstado());
+            assertEquals("1500.123", cuenta2.getSaldoDisponible().toPlainString());
+            assertThrows(IllegalStateException.class, vence::cobrar);
+        }
+
+        @Test
+        @Tag("concurrencia")
+        void testRetencionesYDebitosConcurrentesNuncaSobregiran() throws InterruptedException {
+            Cuenta fija = new Cuenta("Andres", new BigDecimal("1000"), 2);
+            banco.addCuenta(fija);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Retencion> retenciones = new CopyOnWriteArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                boolean retiene = h % 2 == 0;
+                executor.execute(() -> {
+                    for (int j = 0; j < 5_000; j++) {
+                        if (retiene) {
+                            try {
+                                retenciones.add(banco.retener(fija, BigDecimal.ONE, 1, TimeUnit.HOURS));
+                            } catch (DineroInsuficienteException e) {
+                                //El disponible se acabo
+                            }
+                        } else {
+                            fija.tryDebitoUnidades(50);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertTrue(fija.getSaldoDisponible().signum() >= 0);
+            assertEquals(new BigDecimal(retenciones.size()), fija.getRetenido());
+        }
+    }
+
+    @Nested
+    class FlujoSaldosTest {
+        FlujoSaldos flujo;
+
+        @BeforeEach
+        void setUp() {
+            flujo = banco.activarFlujo(1024);
+        }
+
+        @Test
+        @DisplayName("Cada movimiento llega una vez y en orden a un suscriptor bloqueante")
+        void testSuscriptorRecibeLosMovimientos() throws Exception {
+            List<String> recibidos = new CopyOnWriteArrayList<>();
+            SuscripcionSaldos suscripcion = flujo.suscribir((evento, secuencia, finDeLote) ->
+                    recibidos.add(secuencia + " " + evento), PoliticaSuscriptor.BLOQUEAR);
+            Cuenta fija = new Cuenta("Luis", new BigDecimal("10.00"), 2);
+            banco.addCuenta(fija);
+
+            cuenta1.debito(new BigDecimal("100"));
+            cuenta2.credito(new BigDecimal("0.877"));
+            banco.transferir(cuenta1, cuenta2, new BigDecimal("400"));
+            fija.creditoUnidades(250);
+            cuenta1.setSaldo(new BigDecimal("5"));
+            banco.transferirLote(Arrays.asList(new Transferencia(cuenta2, cuenta1, BigDecimal.ONE)));
+            esperarSecuencia(suscripcion, 5);
+            banco.desactivarFlujo();
+
+            assertEquals(Arrays.asList(
+                    "0 DEBITO " + cuenta1.getId() + ": 100",
+                    "1 CREDITO " + cuenta2.getId() + ": 0.877",
+                    "2 TRANSFERENCIA_ENVIADA " + cuenta1.getId() + " -> " + cuenta2.getId() + ": 400",
+                    "3 CREDITO " + fija.getId() + ": 2.50",
+                    "4 SALDO_ASIGNADO " + cuenta1.getId() + ": 5",
+                    "5 TRANSFERENCIA_ENVIADA " + cuenta2.getId() + " -> " + cuenta1.getId() + ": 1"), recibidos);
+            assertNull(banco.getFlujo());
+        }
+
+        @Test
+        @DisplayName("Un suscriptor bloqueante que llama al banco desde su hilo no se bloquea a si mismo")
+        void testSuscriptorBloqueantePublicaDesdeSuHilo() throws Exception {
+            banco.desactivarFlujo();
+            FlujoSaldos chico = banco.activarFlujo(4);
+            AtomicLong recibidos = new AtomicLong();
+            SuscripcionSaldos suscripcion = chico.suscribir((evento, secuencia, finDeLote) -> {
+                recibidos.incrementAndGet();
+                if (secuencia == 0) {
+                    for (int i = 0; i < 20; i++) {
+                        cuenta2.credito(BigDecimal.ONE);
+                    }
+                }
+            }, PoliticaSuscriptor.BLOQUEAR);
+
+            cuenta1.debito(BigDecimal.ONE);
+            esperarSecuencia(suscripcion, 20);
+            banco.desactivarFlujo();
+
+            assertEquals("1520.123", cuenta2.getSaldo().toPlainString());
+            assertTrue(suscripcion.getOmitidos() > 0);
+            assertEquals(21, recibidos.get() + suscripcion.getOmitidos());
+        }
+
+        @Test
+        @Tag("concurrencia")
+        void testPoliticasConSuscriptorLento() throws Exception {
+            AtomicLong bloqueante = new AtomicLong();
+            AtomicLong descartados = new AtomicLong();
+            SuscripcionSaldos bloquear = flujo.suscribir((evento, secuencia, finDeLote) -> {
+                bloqueante.incrementAndGet();
+                if (secuencia % 1000 == 0) {
+                    Thread.yield();
+                }
+            }, PoliticaSuscriptor.BLOQUEAR);
+            SuscripcionSaldos descartar = flujo.suscribir((evento, secuencia, finDeLote) -> {
+                descartados.incrementAndGet();
+                pausar();
+            }, PoliticaSuscriptor.DESCARTAR);
+            SuscripcionSaldos muestrear = flujo.suscribir((evento, secuencia, finDeLote) -> pausar(),
+                    PoliticaSuscriptor.MUESTREAR);
+            ExecutorService hilos = Executors.newFixedThreadPool(4);
+            for (int h = 0; h < 4; h++) {
+                hilos.submit(() -> {
+                    for (int i = 0; i < 25_000; i++) {
+                        cuenta1.credito(BigDecimal.ONE);
+                    }
+                });
+            }
+            hilos.shutdown();
+            assertTrue(hilos.awaitTermination(30, TimeUnit.SECONDS));
+            esperarSecuencia(bloquear, 99_999);
+            esperarSecuencia(descartar, 99_999);
+            esperarSecuencia(muestrear, 99_999);
+            flujo.close();
+
+            //El bloqueante no pierde nada; los lentos pierden eventos pero cada uno se cuenta como entregado u omitido
+            assertEquals(100_000, bloqueante.get());
+            assertEquals(0, bloquear.getOmitidos());
+            assertTrue(descartar.getOmitidos() > 0);
+            assertEquals(100_000, descartados.get() + descartar.getOmitidos());
+            assertTrue(muestrear.getOmitidos() > 0);
+            assertEquals(new BigDecimal("102500"), cuenta1.getSaldo());
+        }
+
+        @Test
+        @Tag("concurrencia")
+        @DisplayName("Sin suscriptores bloqueantes un evento nunca se entrega a medias")
+        void testProductoresEnLaMismaRanuraNoMezclanEventos() throws Exception {
+            FlujoSaldos chico = new FlujoSaldos(2);
+            AtomicLong mezclados = new AtomicLong();
+            AtomicLong entregados = new AtomicLong();
+            SuscripcionSaldos descartar = chico.suscribir((evento, secuencia, finDeLote) -> {
+                entregados.incrementAndGet();
+                //Cada productor publica con su propia cuenta y unidades = escala
+                if (evento.getCuenta() != cuenta1 && evento.getCuenta() != cuenta2 || evento.unidades != evento.escala) {
+                    mezclados.incrementAndGet();
+                }
+            }, PoliticaSuscriptor.DESCARTAR);
+            ExecutorService hilos = Executors.newFixedThreadPool(4);
+            for (int h = 0; h < 4; h++) {
+                Cuenta cuenta = h % 2 == 0 ? cuenta1 : cuenta2;
+                int valor = h + 1;
+                hilos.submit(() -> {
+                    for (int i = 0; i < 25_000; i++) {
+                        chico.publicarUnidades(TipoMovimiento.CREDITO, cuenta, valor, valor);
+                    }
+                });
+            }
+            hilos.shutdown();
+            assertTrue(hilos.awaitTermination(30, TimeUnit.SECONDS));
+            chico.publicarUnidades(TipoMovimiento.CREDITO, cuenta1, 1, 1);
+            esperarSecuencia(descartar, 100_000);
+            chico.close();
+
+            assertEquals(0, mezclados.get());
+            assertEquals(100_001, entregados.get() + descartar.getOmitidos());
+        }
+
+        void pausar() {
+            long fin = System.nanoTime() + 20_000;
+            while (System.nanoTime() < fin) {
+                Thread.onSpinWait();
+            }
+        }
+
+        void esperarSecuencia(SuscripcionSaldos suscripcion, long secuencia) throws InterruptedException {
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (suscripcion.getSecuencia() < secuencia && System.nanoTime() < limite) {
+                Thread.sleep(1);
+            }
+            assertEquals(secuencia, suscripcion.getSecuencia());
+        }
+    }
+}
@@ -15,7 +15,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assumptions.*;
@@ -104,8 +108,8 @@ class CuentaTest {
             Cuenta cuenta1 = new Cuenta("Jhon", new BigDecimal("8990.1234"));
             Cuenta cuenta2 = new Cuenta("Jhon", new BigDecimal("8990.1234"));
 
-            //assertNotEquals(cuenta1, cuenta2); //Compara por referencia
-            assertEquals(cuenta1, cuenta2); //Compara por valor
+            assertNotEquals(cuenta1, cuenta2); //Compara por id, la misma persona y saldo no las hace iguales
+            assertEquals(cuenta1, new Cuenta(cuenta1.getId(), "Otra", BigDecimal.ZERO)); //Mismo id, misma cuenta
 
         }
     }
@@ -146,6 +150,114 @@ class CuentaTest {
     }
 
 
+    @Tag("cuenta")
+    @Nested
+    @DisplayName("probando cuentas con saldo en punto fijo")
+    class CuentaPuntoFijoTest{
+        Cuenta cuentaFija;
+
+        @BeforeEach
+        void initCuentaFija() {
+            cuentaFija = new Cuenta("Andres", new BigDecimal("1000.1234"), 4);
+        }
+
+        @Test
+        void testDebitoCreditoPuntoFijo() {
+            cuentaFija.debito(new BigDecimal(100));
+            cuentaFija.credito(new BigDecimal("0.5"));
+            assertEquals("900.6234", cuentaFija.getSaldo().toPlainString());
+            assertEquals(9006234L, cuentaFija.getSaldoUnidades());
+        }
+
+        @Test
+        void testOperacionesEnUnidades() {
+            cuentaFija.debitoUnidades(1234);
+            cuentaFija.creditoUnidades(10_000);
+            assertEquals("1001.0000", cuentaFija.getSaldo().toPlainString());
+            assertThrows(DineroInsuficienteException.class, () -> cuentaFija.debitoUnidades(10_010_001));
+            assertEquals(10_010_000L, cuentaFija.getSaldoUnidades());
+        }
+
+        @Test
+        void testMontoConMasDecimalesQueLaEscala() {
+            assertThrows(ArithmeticException.class, () -> cuentaFija.credito(new BigDecimal("0.00001")));
+        }
+
+        @Test
+        void testDesbordamiento() {
+            cuentaFija.setSaldo(BigDecimal.valueOf(Long.MAX_VALUE, 4));
+            assertThrows(ArithmeticException.class, () -> cuentaFija.creditoUnidades(1));
+            assertEquals(Long.MAX_VALUE, cuentaFija.getSaldoUnidades());
+        }
+
+        @Test
+        void testUnidadesEnCuentaDecimal() {
+            assertThrows(IllegalStateException.class, () -> cuenta.debitoUnidades(1));
+        }
+    }
+
+    @Tag("cuenta")
+    @Tag("concurrencia")
+    @Nested
+    class CuentaConcurrenciaTest{
+        //Varios hilos operan sobre la misma cuenta al mismo tiempo, al final no se debe perder ninguna operacion
+
+        @Test
+        void testCreditoDebitoConcurrenteSinPerdidas() throws InterruptedException {
+            int hilos = 8;
+            int operaciones = 10_000;
+            Cuenta cuentaCompartida = new Cuenta("Andres", new BigDecimal("1000"));
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            CountDownLatch inicio = new CountDownLatch(1);
+            for (int i = 0; i < hilos; i++) {
+                executor.execute(() -> {
+                    try {
+                        inicio.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < operaciones; j++) {
+                        cuentaCompartida.credito(new BigDecimal("2"));
+                        cuentaCompartida.debito(BigDecimal.ONE);
+                    }
+                });
+            }
+            inicio.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            //Cada operacion suma 1 neto al saldo
+            assertEquals(new BigDecimal(1000 + hilos * operaciones), cuentaCompartida.getSaldo());
+        }
+
+        @Test
+        void testDebitoConcurrenteNuncaSobregira() throws InterruptedException {
+            int hilos = 8;
+            Cuenta cuentaCompartida = new Cuenta("Andres", new BigDecimal("1000"));
+            AtomicInteger exitosos = new AtomicInteger();
+            AtomicInteger rechazados = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            for (int i = 0; i < hilos; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < 500; j++) {
+                        try {
+                            cuentaCompartida.debito(BigDecimal.ONE);
+                            exitosos.incrementAndGet();
+                        } catch (DineroInsuficienteException e) {
+                            rechazados.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            //Solo pueden pasar exactamente 1000 debitos de 1, el resto debe ser rechazado
+            assertEquals(1000, exitosos.get());
+            assertEquals(hilos * 500 - 1000, rechazados.get());
+            assertEquals(0, cuentaCompartida.getSaldo().compareTo(BigDecimal.ZERO));
+        }
+    }
+
     @Tag("cuenta")
     @Tag("error")
     @Test
@@ -477,4 +589,95 @@ class CuentaTest {
         }
     }
 
-}
\ No newline at end of file
+    @Tag("cuenta")
+    @Nested
+    @DisplayName("probando el historial de movimientos")
+    class CuentaHistorialTest{
+
+        @Test
+        void testMovimientosConSaldoResultante() {
+            Banco banco = new Banco();
+            Cuenta pedro = new Cuenta("Pedro", new BigDecimal("100"));
+            banco.addCuenta(cuenta);
+            banco.addCuenta(pedro);
+            HistorialCuenta historial = cuenta.activarHistorial(16, 4);
+
+            cuenta.debito(new BigDecimal("0.12345"));
+            banco.transferir(cuenta, pedro, new BigDecimal("100"));
+            banco.transferirLote(Arrays.asList(new Transferencia(pedro, cuenta, new BigDecimal("50")),
+                    new Transferencia(pedro, cuenta, new BigDecimal("20"))));
+            cuenta.setSaldo(new BigDecimal("10"));
+
+            List<Movimiento> ultimos = historial.ultimos(10);
+            assertEquals(5, ultimos.size());
+            assertEquals(TipoMovimiento.SALDO_ASIGNADO, ultimos.get(0).getTipo());
+            assertEquals("10.00000", ultimos.get(0).getSaldo().toPlainString());
+            assertEquals(TipoMovimiento.TRANSFERENCIA_RECIBIDA, ultimos.get(1).getTipo());
+            assertEquals("969.99995", ultimos.get(1).getSaldo().toPlainString());
+            assertEquals("949.99995", ultimos.get(2).getSaldo().toPlainString());
+            assertEquals(TipoMovimiento.TRANSFERENCIA_ENVIADA, ultimos.get(3).getTipo());
+            assertEquals(pedro.getId(), ultimos.get(3).getContraparte());
+            assertEquals("899.99995", ultimos.get(3).getSaldo().toPlainString());
+            assertEquals("0.12345", ultimos.get(4).getMonto().toPlainString());
+            assertNull(pedro.getHistorial());
+        }
+
+        @Test
+        void testPaginasYRangoDeTiempo() {
+            Cuenta fija = new Cuenta("Andres", new BigDecimal("1000"), 2);
+            HistorialCuenta historial = fija.activarHistorial(8, 2);
+            long inicio = System.currentTimeMillis();
+            for (int i = 1; i <= 30; i++) {
+                if (i % 3 == 0) {
+                    fija.debitoUnidades(i);
+                } else {
+                    fija.creditoUnidades(i);
+                }
+            }
+            //Se generan 6 paginas de 4 movimientos y solo se conservan las 2 mas recientes
+            assertEquals(30, historial.getTotalMovimientos());
+            assertEquals(16, historial.getDescartados());
+            List<Movimiento> ultimos = historial.ultimos(100);
+            assertEquals(14, ultimos.size());
+            assertEquals(fija.getSaldo(), ultimos.get(0).getSaldo());
+            for (int i = 0; i < ultimos.size() - 1; i++) {
+                Movimiento nuevo = ultimos.get(i);
+                BigDecimal anterior = nuevo.getTipo() == TipoMovimiento.DEBITO ? nuevo.getSaldo().add(nuevo.getMonto())
+                        : nuevo.getSaldo().subtract(nuevo.getMonto());
+                assertEquals(anterior, ultimos.get(i + 1).getSaldo());
+            }
+            List<Movimiento> rango = historial.entre(inicio, Long.MAX_VALUE);
+            assertEquals(14, rango.size());
+            assertEquals("0.17", rango.get(0).getMonto().toPlainString());
+            assertTrue(historial.entre(0, inicio).isEmpty());
+        }
+
+        @Test
+        void testEscalasDistintasYMontosQueNoCaben() {
+            HistorialCuenta historial = cuenta.activarHistorial(8, 1);
+            cuenta.credito(new BigDecimal("1E+2"));
+            cuenta.credito(new BigDecimal("0.001"));
+            cuenta.credito(new BigDecimal("1E+30"));
+            cuenta.debito(new BigDecimal("1E-30"));
+
+            List<Movimiento> ultimos = historial.ultimos(4);
+            assertEquals(new BigDecimal("1E-30"), ultimos.get(0).getMonto());
+            assertEquals(new BigDecimal("1E+30"), ultimos.get(1).getMonto());
+            assertEquals("1000000000000000000000000001100.1244", ultimos.get(1).getSaldo().toPlainString());
+            assertEquals("0.0010", ultimos.get(2).getMonto().toPlainString());
+            assertEquals("1100.1244", ultimos.get(2).getSaldo().toPlainString());
+            assertEquals("100.0000", ultimos.get(3).getMonto().toPlainString());
+
+            //Los montos que no caben en un long tambien se conservan al pasar a una pagina
+            for (int i = 0; i < 8; i++) {
+                cuenta.credito(BigDecimal.ONE);
+            }
+            List<Movimiento> todos = historial.ultimos(12);
+            assertEquals(12, todos.size());
+            for (int i = 0; i < ultimos.size(); i++) {
+                assertEquals(ultimos.get(i).getMonto(), todos.get(8 + i).getMonto());
+                assertEquals(ultimos.get(i).getSaldo(), todos.get(8 + i).getSaldo());
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.cano.junitapp.ejemplo.motor;
+
+import org.cano.junitapp.ejemplo.exceptions.MovimientoAplicadoException;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ObservadorMovimientos;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("motor")
+class MotorParticionadoTest {
+
+    @Test
+    void testTransferenciasEntreParticionesConservanElDinero() throws Exception {
+        Banco banco = new Banco();
+        Cuenta[] cuentas = new Cuenta[64];
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = new Cuenta("Persona" + i, new BigDecimal("100"));
+            banco.addCuenta(cuentas[i]);
+        }
+        MotorParticionado motor = new MotorParticionado(banco, 4, 128);
+        ExecutorService clientes = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<ResultadoOperacion>> resultados = new ArrayList<>();
+        List<Future<List<CompletableFuture<ResultadoOperacion>>>> envios = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            long semilla = c;
+            envios.add(clientes.submit(() -> {
+                SplittableRandom aleatorio = new SplittableRandom(semilla);
+                List<CompletableFuture<ResultadoOperacion>> propios = new ArrayList<>();
+                for (int i = 0; i < 5_000; i++) {
+                    Cuenta origen = cuentas[aleatorio.nextInt(cuentas.length)];
+                    Cuenta destino = cuentas[aleatorio.nextInt(cuentas.length)];
+                    propios.add(motor.transferir(origen, destino, new BigDecimal(aleatorio.nextInt(1, 30))));
+                }
+                return propios;
+            }));
+        }
+        for (Future<List<CompletableFuture<ResultadoOperacion>>> envio : envios) {
+            resultados.addAll(envio.get(30, TimeUnit.SECONDS));
+        }
+        clientes.shutdown();
+        CompletableFuture.allOf(resultados.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        motor.close();
+
+        long exitosas = resultados.stream().filter(r -> r.join() == ResultadoOperacion.EXITOSA).count();
+        assertTrue(exitosas > 0);
+        assertEquals(0, motor.getEnTransito().signum());
+        BigDecimal total = banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(new BigDecimal(6400), total);
+        banco.forEachCuenta(c -> assertTrue(c.getSaldo().signum() >= 0));
+        assertThrows(RejectedExecutionException.class, () -> motor.credito(cuentas[0], BigDecimal.ONE));
+    }
+
+    @Test
+    void testDebitoYCredito() throws Exception {
+        Banco banco = new Banco();
+        Cuenta cuenta = new Cuenta("Juan", new BigDecimal("10"));
+        banco.addCuenta(cuenta);
+        try (MotorParticionado motor = new MotorParticionado(banco, 2, 4)) {
+            assertEquals(ResultadoOperacion.DINERO_INSUFICIENTE, motor.debito(cuenta, new BigDecimal("11")).get());
+            assertEquals(ResultadoOperacion.EXITOSA, motor.credito(cuenta, BigDecimal.ONE).get());
+            assertEquals(ResultadoOperacion.EXITOSA, motor.debito(cuenta, new BigDecimal("11")).get());
+        }
+        assertEquals(0, cuenta.getSaldo().signum());
+    }
+
+    @Test
+    void testCreditoFallidoEntreParticionesDevuelveElMonto() throws Exception {
+        Banco banco = new Banco();
+        Cuenta origen = new Cuenta("Juan", new BigDecimal("10"));
+        banco.addCuenta(origen);
+        try (MotorParticionado motor = new MotorParticionado(banco, 2, 4)) {
+            Cuenta fija;
+            Cuenta llena;
+            //Se buscan cuentas de destino en la otra particion
+            do {
+                fija = new Cuenta("Ana", new BigDecimal("1.00"), 2);
+            } while (motor.particion(fija) == motor.particion(origen));
+            do {
+                llena = new Cuenta("Max", BigDecimal.valueOf(Long.MAX_VALUE - 50, 2), 2);
+            } while (motor.particion(llena) == motor.particion(origen));
+            banco.addCuenta(fija);
+            banco.addCuenta(llena);
+
+            //El monto no cabe en la escala del destino: se rechaza antes del debito
+            CompletableFuture<ResultadoOperacion> sinEscala = motor.transferir(origen, fija, new BigDecimal("0.001"));
+            ExecutionException error = assertThrows(ExecutionException.class, sinEscala::get);
+            assertTrue(error.getCause() instanceof ArithmeticException);
+
+            //El credito desborda al destino despues del debito: el monto regresa al origen
+            CompletableFuture<ResultadoOperacion> desborde = motor.transferir(origen, llena, BigDecimal.ONE);
+            error = assertThrows(ExecutionException.class, desborde::get);
+            assertTrue(error.getCause() instanceof ArithmeticException);
+            assertEquals(0, motor.getEnTransito().signum());
+            assertEquals("1.00", fija.getSaldo().toPlainString());
+        }
+        assertEquals("10", origen.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testTransferenciaSeNotificaUnaVez() throws Exception {
+        Banco banco = new Banco();
+        Cuenta[] cuentas = new Cuenta[16];
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = new Cuenta("Persona" + i, new BigDecimal("100"));
+            banco.addCuenta(cuentas[i]);
+        }
+        AtomicInteger movimientos = new AtomicInteger();
+        AtomicInteger transferencias = new AtomicInteger();
+        banco.addObservador(new ObservadorMovimientos() {
+            @Override
+            public void debito(Cuenta cuenta, BigDecimal monto) {
+                movimientos.incrementAndGet();
+            }
+
+            @Override
+            public void credito(Cuenta cuenta, BigDecimal monto) {
+                movimientos.incrementAndGet();
+            }
+
+            @Override
+            public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+                transferencias.incrementAndGet();
+            }
+        });
+        List<CompletableFuture<ResultadoOperacion>> resultados = new ArrayList<>();
+        try (MotorParticionado motor = new MotorParticionado(banco, 4, 64)) {
+            for (Cuenta origen : cuentas) {
+                for (Cuenta destino : cuentas) {
+                    resultados.add(motor.transferir(origen, destino, BigDecimal.ONE));
+                }
+            }
+        }
+
+        //Las de la misma particion y las de particiones distintas se registran como una sola transferencia
+        resultados.forEach(r -> assertEquals(ResultadoOperacion.EXITOSA, r.join()));
+        assertEquals(resultados.size(), transferencias.get());
+        assertEquals(0, movimientos.get());
+    }
+
+    @Test
+    void testNotificacionFallidaNoDevuelveElMonto() throws Exception {
+        Banco banco = new Banco();
+        Cuenta origen = new Cuenta("Juan", new BigDecimal("10"));
+        banco.addCuenta(origen);
+        banco.addObservador(new ObservadorMovimientos() {
+            @Override
+            public void transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+                throw new IllegalStateException("Falla simulada");
+            }
+        });
+        Cuenta destino;
+        try (MotorParticionado motor = new MotorParticionado(banco, 2, 4)) {
+            do {
+                destino = new Cuenta("Ana", BigDecimal.ZERO);
+            } while (motor.particion(destino) == motor.particion(origen));
+            banco.addCuenta(destino);
+
+            CompletableFuture<ResultadoOperacion> transferencia = motor.transferir(origen, destino, BigDecimal.ONE);
+            ExecutionException error = assertThrows(ExecutionException.class, transferencia::get);
+            assertTrue(error.getCause() instanceof MovimientoAplicadoException);
+            assertEquals(0, motor.getEnTransito().signum());
+        }
+        //El credito ya se habia aplicado: el dinero queda solo en el destino
+        assertEquals("9", origen.getSaldo().toPlainString());
+        assertEquals("1", destino.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testDevolucionFallidaQuedaPendiente() throws Exception {
+        Banco banco = new Banco();
+        Cuenta origen = new Cuenta("Juan", new BigDecimal("10.00"), 2);
+        banco.addCuenta(origen);
+        CountDownLatch liberar = new CountDownLatch(1);
+        try (MotorParticionado motor = new MotorParticionado(banco, 2, 4)) {
+            Cuenta llena;
+            Cuenta bloqueada;
+            do {
+                llena = new Cuenta("Max", BigDecimal.valueOf(Long.MAX_VALUE - 50, 2), 2);
+            } while (motor.particion(llena) == motor.particion(origen));
+            //Detiene la particion de destino hasta que el origen recibe otro credito
+            do {
+                bloqueada = new Cuenta("Ana", BigDecimal.ZERO) {
+                    @Override
+                    public void credito(BigDecimal monto) {
+                        try {
+                            liberar.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        super.credito(monto);
+                    }
+                };
+            } while (motor.particion(bloqueada) == motor.particion(origen));
+            banco.addCuenta(llena);
+            banco.addCuenta(bloqueada);
+
+            motor.credito(bloqueada, BigDecimal.ONE);
+            CompletableFuture<ResultadoOperacion> transferencia = motor.transferir(origen, llena, BigDecimal.ONE);
+            //Despues del debito el origen queda tan lleno que la devolucion no cabe
+            BigDecimal casiLleno = BigDecimal.valueOf(Long.MAX_VALUE - 50 - 900, 2);
+            assertEquals(ResultadoOperacion.EXITOSA, motor.credito(origen, casiLleno).get());
+            liberar.countDown();
+
+            ExecutionException error = assertThrows(ExecutionException.class, transferencia::get);
+            assertTrue(error.getCause() instanceof ArithmeticException);
+            assertEquals(1, error.getCause().getSuppressed().length);
+            assertEquals(1, motor.getDevolucionesPendientes());
+            assertEquals(0, BigDecimal.ONE.compareTo(motor.getEnTransito()));
+
+            //Con espacio en el origen la devolucion se aplica al reintentarla
+            assertEquals(ResultadoOperacion.EXITOSA, motor.debito(origen, casiLleno).get());
+            assertEquals(1, motor.reintentarDevoluciones());
+            assertEquals(ResultadoOperacion.EXITOSA, motor.credito(origen, BigDecimal.ZERO).get());
+            assertEquals(0, motor.getDevolucionesPendientes());
+            assertEquals(0, motor.getEnTransito().signum());
+        }
+        assertEquals("10.00", origen.getSaldo().toPlainString());
+    }
+}
@@ -0,0 +1,82 @@
+package org.cano.junitapp.ejemplo.motor;
+
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.ResultadoOperacion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("motor")
+class ServicioTransferenciasTest {
+    Banco banco;
+    Cuenta juan;
+    Cuenta andres;
+    //Ejecutor que guarda las tareas hasta que la prueba las corre
+    List<Runnable> tareas;
+
+    @BeforeEach
+    void initMetodoTest() {
+        banco = new Banco();
+        juan = new Cuenta("Juan", new BigDecimal("1000"));
+        andres = new Cuenta("Andres", new BigDecimal("1000"));
+        banco.addCuenta(juan);
+        banco.addCuenta(andres);
+        tareas = new ArrayList<>();
+    }
+
+    @Test
+    void testTransferenciasConcurrentesConservanElDinero() throws Exception {
+        List<CompletableFuture<ResultadoOperacion>> resultados = new ArrayList<>();
+        try (ServicioTransferencias servicio = new ServicioTransferencias(banco, 64, PoliticaSaturacion.BLOQUEAR)) {
+            for (int i = 0; i < 10_000; i++) {
+                resultados.add(i % 2 == 0 ? servicio.transferirAsync(juan, andres, BigDecimal.TEN)
+                        : servicio.transferirAsync(andres, juan, BigDecimal.ONE));
+            }
+            CompletableFuture.allOf(resultados.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(new BigDecimal("2000"), juan.getSaldo().add(andres.getSaldo()));
+        assertTrue(resultados.stream().anyMatch(r -> r.join() == ResultadoOperacion.DINERO_INSUFICIENTE));
+    }
+
+    @Test
+    void testRechazarConColaLlena() throws Exception {
+        ServicioTransferencias servicio = new ServicioTransferencias(banco, 2, PoliticaSaturacion.RECHAZAR, tareas::add, 1);
+        CompletableFuture<ResultadoOperacion> primera = servicio.transferirAsync(juan, andres, BigDecimal.ONE);
+        servicio.transferirAsync(juan, andres, BigDecimal.ONE);
+        CompletableFuture<ResultadoOperacion> tercera = servicio.transferirAsync(juan, andres, BigDecimal.ONE);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, tercera::get);
+        assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, tareas.size());
+        tareas.get(0).run();
+        assertEquals(ResultadoOperacion.EXITOSA, primera.get());
+        assertEquals(new BigDecimal("998"), juan.getSaldo());
+        assertEquals(0, servicio.getPendientes());
+    }
+
+    @Test
+    void testDescartarLaMasAntigua() throws Exception {
+        ServicioTransferencias servicio = new ServicioTransferencias(banco, 2, PoliticaSaturacion.DESCARTAR, tareas::add, 1);
+        CompletableFuture<ResultadoOperacion> primera = servicio.transferirAsync(juan, andres, new BigDecimal("100"));
+        servicio.transferirAsync(juan, andres, new BigDecimal("200"));
+        CompletableFuture<ResultadoOperacion> tercera = servicio.transferirAsync(juan, andres, new BigDecimal("300"));
+
+        assertTrue(primera.isCompletedExceptionally());
+        tareas.get(0).run();
+        assertEquals(ResultadoOperacion.EXITOSA, tercera.get());
+        assertEquals(new BigDecimal("500"), juan.getSaldo());
+        servicio.close();
+        assertThrows(ExecutionException.class, () -> servicio.transferirAsync(juan, andres, BigDecimal.ONE).get());
+    }
+}
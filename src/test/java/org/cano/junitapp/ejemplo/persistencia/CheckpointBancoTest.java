@@ -0,0 +1,143 @@
+package org.cano.junitapp.ejemplo.persistencia;
+
+import org.cano.junitapp.ejemplo.models.AlmacenColumnar;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("persistencia")
+class CheckpointBancoTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void testGuardarYCargar() throws IOException {
+        Banco banco = new Banco();
+        banco.setNombre("Banco del estado");
+        for (int i = 0; i < 10_000; i++) {
+            banco.addCuenta(i % 2 == 0
+                    ? new Cuenta("Persona " + i, new BigDecimal(i + ".5"))
+                    : new Cuenta("Persona " + i, new BigDecimal(i + ".25"), 2));
+        }
+        Cuenta sinNombre = new Cuenta(null, new BigDecimal("1"));
+        banco.addCuenta(sinNombre);
+        //Saldos que no caben en escala (byte) y valor sin escala (long)
+        banco.addCuenta(new Cuenta("Grande", new BigDecimal("123456789012345678901234567890.5")));
+        banco.addCuenta(new Cuenta("Escala", new BigDecimal("1E-200")));
+        //Las cuentas de un almacen columnar se guardan y se cargan como cuentas de punto fijo
+        AlmacenColumnar almacen = new AlmacenColumnar(banco, 2, 100);
+        for (int i = 0; i < 100; i++) {
+            almacen.agregarUnidades("Columna " + i, i);
+        }
+        Path archivo = directorio.resolve("banco.ckpt");
+        CheckpointBanco.guardar(banco, archivo);
+
+        CheckpointBanco checkpoint = CheckpointBanco.cargar(archivo);
+        Banco cargado = checkpoint.getBanco();
+        assertEquals(CheckpointBanco.SIN_DIARIO, checkpoint.getPosicionDiario());
+        assertEquals("Banco del estado", cargado.getNombre());
+        assertEquals(banco.getNumeroCuentas(), cargado.getNumeroCuentas());
+        banco.forEachCuenta(original -> {
+            Cuenta copia = cargado.buscarCuenta(original.getId());
+            assertEquals(original.getPersona(), copia.getPersona());
+            assertEquals(original.getSaldo(), copia.getSaldo());
+            assertEquals(original.isPuntoFijo(), copia.isPuntoFijo());
+        });
+    }
+
+    @Test
+    void testCheckpointMasDiario() throws IOException {
+        Path dirDiario = directorio.resolve("diario");
+        Path archivo = directorio.resolve("banco.ckpt");
+        Banco banco = new Banco();
+        Cuenta juan = new Cuenta("Juan", new BigDecimal("2500"));
+        Cuenta pedro = new Cuenta("Pedro", new BigDecimal("1500"));
+        try (DiarioTransacciones diario = new DiarioTransacciones(dirDiario)) {
+            banco.addObservador(diario);
+            banco.addCuenta(juan);
+            banco.addCuenta(pedro);
+            banco.transferir(juan, pedro, new BigDecimal("100"));
+            CheckpointBanco.guardar(banco, archivo, diario);
+            banco.transferir(pedro, juan, new BigDecimal("30"));
+            juan.debito(new BigDecimal("5"));
+        }
+
+        CheckpointBanco checkpoint = CheckpointBanco.cargar(archivo);
+        //Solo se aplican los movimientos posteriores al checkpoint
+        assertEquals(2, DiarioTransacciones.recuperar(dirDiario, checkpoint.getBanco(), checkpoint.getPosicionDiario()));
+        assertEquals("2425", checkpoint.getBanco().buscarCuenta(juan.getId()).getSaldo().toPlainString());
+        assertEquals("1570", checkpoint.getBanco().buscarCuenta(pedro.getId()).getSaldo().toPlainString());
+    }
+
+    @Test
+    void testCheckpointConMovimientosConcurrentes() throws Exception {
+        Path dirDiario = directorio.resolve("diario");
+        Path archivo = directorio.resolve("banco.ckpt");
+        Banco banco = new Banco();
+        Cuenta[] cuentas = new Cuenta[8];
+        try (DiarioTransacciones diario = new DiarioTransacciones(dirDiario)) {
+            banco.addObservador(diario);
+            for (int i = 0; i < cuentas.length; i++) {
+                cuentas[i] = new Cuenta("Persona " + i, new BigDecimal("1000.00"), 2);
+                banco.addCuenta(cuentas[i]);
+            }
+            AtomicBoolean corriendo = new AtomicBoolean(true);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int h = 0; h < 4; h++) {
+                int hilo = h;
+                executor.submit(() -> {
+                    int i = hilo;
+                    while (corriendo.get()) {
+                        Cuenta cuenta = cuentas[i % cuentas.length];
+                        //Debitos y creditos directos mezclados con transferencias mientras se guardan checkpoints
+                        cuenta.creditoUnidades(3);
+                        cuenta.tryDebito(new BigDecimal("0.02"));
+                        banco.tryTransferir(cuenta, cuentas[(i + 1) % cuentas.length], new BigDecimal("0.01"));
+                        i++;
+                    }
+                });
+            }
+            for (int i = 0; i < 20; i++) {
+                CheckpointBanco.guardar(banco, archivo, diario);
+            }
+            corriendo.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        //El checkpoint mas el diario desde su posicion reconstruye los saldos sin aplicar nada dos veces
+        CheckpointBanco checkpoint = CheckpointBanco.cargar(archivo);
+        DiarioTransacciones.recuperar(dirDiario, checkpoint.getBanco(), checkpoint.getPosicionDiario());
+        for (Cuenta cuenta : cuentas) {
+            assertEquals(cuenta.getSaldo(), checkpoint.getBanco().buscarCuenta(cuenta.getId()).getSaldo());
+        }
+    }
+
+    @Test
+    void testCheckpointCorrupto() throws IOException {
+        Banco banco = new Banco();
+        banco.addCuenta(new Cuenta("Juan", new BigDecimal("2500")));
+        Path archivo = directorio.resolve("banco.ckpt");
+        CheckpointBanco.guardar(banco, archivo);
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[]{9}), 40);
+        }
+        assertThrows(IOException.class, () -> CheckpointBanco.cargar(archivo));
+    }
+}
@@ -0,0 +1,170 @@
+package org.cano.junitapp.ejemplo.persistencia;
+
+import org.cano.junitapp.ejemplo.models.AlmacenColumnar;
+import org.cano.junitapp.ejemplo.models.Banco;
+import org.cano.junitapp.ejemplo.models.Cuenta;
+import org.cano.junitapp.ejemplo.models.Transferencia;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("persistencia")
+class DiarioTransaccionesTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void testRecuperarMovimientos() throws IOException {
+        Banco banco = new Banco();
+        long idJuan;
+        long idPedro;
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio)) {
+            banco.addObservador(diario);
+            Cuenta juan = new Cuenta("Juan", new BigDecimal("2500"));
+            Cuenta pedro = new Cuenta("Pedro", new BigDecimal("1500.12"), 2);
+            banco.addCuenta(juan);
+            banco.addCuenta(pedro);
+            juan.debito(new BigDecimal("100.5"));
+            pedro.creditoUnidades(88);
+            banco.transferir(pedro, juan, new BigDecimal("500"));
+            banco.transferirLote(List.of(new Transferencia(juan, pedro, new BigDecimal("1")),
+                    new Transferencia(pedro, juan, new BigDecimal("2"))));
+            idJuan = juan.getId();
+            idPedro = pedro.getId();
+        }
+
+        Banco recuperado = new Banco();
+        assertEquals(7, DiarioTransacciones.recuperar(directorio, recuperado));
+        assertEquals(2, recuperado.getNumeroCuentas());
+        assertEquals("2900.5", recuperado.buscarCuenta(idJuan).getSaldo().toPlainString());
+        assertEquals("1000.00", recuperado.buscarCuenta(idPedro).getSaldo().toPlainString());
+        assertEquals("Pedro", recuperado.buscarCuenta(idPedro).getPersona());
+        assertTrue(recuperado.buscarCuenta(idPedro).isPuntoFijo());
+    }
+
+    @Test
+    void testRodarSegmentosYContinuarDespuesDeReabrir() throws IOException {
+        Banco banco = new Banco();
+        Cuenta cuenta;
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio, 1024, Duration.ZERO)) {
+            banco.addObservador(diario);
+            cuenta = new Cuenta("Maria", BigDecimal.ZERO);
+            banco.addCuenta(cuenta);
+            for (int i = 0; i < 100; i++) {
+                cuenta.credito(BigDecimal.ONE);
+            }
+            banco.removeObservador(diario);
+        }
+        //Al reabrir el diario se sigue escribiendo despues del ultimo registro valido
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio, 1024, Duration.ZERO)) {
+            banco.addObservador(diario);
+            cuenta.debito(new BigDecimal("40"));
+        }
+        try (var archivos = Files.list(directorio)) {
+            assertTrue(archivos.count() > 1, () -> "Se esperaban varios segmentos");
+        }
+
+        Banco recuperado = new Banco();
+        assertEquals(102, DiarioTransacciones.recuperar(directorio, recuperado));
+        assertEquals("60", recuperado.buscarCuenta(cuenta.getId()).getSaldo().toPlainString());
+    }
+
+    @Test
+    void testMontosQueNoCabenEnLong() throws IOException {
+        Banco banco = new Banco();
+        Cuenta cuenta = new Cuenta("Maria", new BigDecimal("99999999999999999999.99"));
+        BigDecimal grande = new BigDecimal("123456789012345678901234567890.5");
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio)) {
+            banco.addObservador(diario);
+            banco.addCuenta(cuenta);
+            //El diario no falla despues de que el saldo ya cambio
+            cuenta.credito(grande);
+            cuenta.debito(new BigDecimal("1E-200"));
+            cuenta.credito(new BigDecimal("-1.5E+130").negate());
+        }
+
+        Banco recuperado = new Banco();
+        assertEquals(4, DiarioTransacciones.recuperar(directorio, recuperado));
+        assertEquals(cuenta.getSaldo(), recuperado.buscarCuenta(cuenta.getId()).getSaldo());
+    }
+
+    @Test
+    void testCuentasDeAlmacenColumnar() throws IOException {
+        Banco banco = new Banco();
+        AlmacenColumnar almacen = new AlmacenColumnar(banco, 2, 10);
+        long ana;
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio)) {
+            banco.addObservador(diario);
+            ana = almacen.agregar("Ana", new BigDecimal("10.50"));
+            almacen.buscarCuenta(ana).debito(BigDecimal.ONE);
+        }
+
+        Banco recuperado = new Banco();
+        assertEquals(2, DiarioTransacciones.recuperar(directorio, recuperado));
+        assertEquals("9.50", recuperado.buscarCuenta(ana).getSaldo().toPlainString());
+        assertEquals("Ana", recuperado.buscarCuenta(ana).getPersona());
+        assertTrue(recuperado.buscarCuenta(ana).isPuntoFijo());
+    }
+
+    @Test
+    void testRegistroMasGrandeQueElSegmento() throws IOException {
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio, 1024, Duration.ZERO)) {
+            diario.alta(new Cuenta("Maria", BigDecimal.ONE));
+            Cuenta grande = new Cuenta("x".repeat(2000), BigDecimal.ONE);
+
+            assertThrows(IllegalArgumentException.class, () -> diario.alta(grande));
+            //El diario sigue en el mismo segmento y acepta los registros que si caben
+            diario.credito(grande, BigDecimal.TEN);
+        }
+        try (var archivos = Files.list(directorio)) {
+            assertEquals(1, archivos.count());
+        }
+        assertEquals(2, DiarioTransacciones.recuperar(directorio, new Banco()));
+    }
+
+    @Test
+    void testEscritoresConcurrentesRodandoSegmentos() throws Exception {
+        Banco banco = new Banco();
+        int hilos = 4;
+        int porHilo = 500;
+        Cuenta[] cuentas = new Cuenta[hilos];
+        try (DiarioTransacciones diario = new DiarioTransacciones(directorio, 1024, Duration.ofMillis(1))) {
+            banco.addObservador(diario);
+            for (int i = 0; i < hilos; i++) {
+                cuentas[i] = new Cuenta("Cuenta" + i, BigDecimal.ZERO, 2);
+                banco.addCuenta(cuentas[i]);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            for (int i = 0; i < hilos; i++) {
+                Cuenta cuenta = cuentas[i];
+                executor.submit(() -> {
+                    for (int j = 0; j < porHilo; j++) {
+                        cuenta.creditoUnidades(1);
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        //Cada hilo escribe en su propio espacio reservado, ningun registro se pierde ni se encima
+        Banco recuperado = new Banco();
+        assertEquals(hilos + hilos * porHilo, DiarioTransacciones.recuperar(directorio, recuperado));
+        for (Cuenta cuenta : cuentas) {
+            assertEquals("5.00", recuperado.buscarCuenta(cuenta.getId()).getSaldo().toPlainString());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.cano.junitapp.ejemplo.simulacion;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("simulacion")
+class GeneradorCargaTest {
+
+    @ParameterizedTest(name = "modo {0}")
+    @EnumSource(ModoEjecucion.class)
+    void testCargaConservaElSaldo(ModoEjecucion modo) throws Exception {
+        ConfiguracionCarga configuracion = ConfiguracionCarga.desdeArgumentos("--cuentas=200", "--hilos=3",
+                "--operaciones=20000", "--calentamiento=1000", "--distribucion=zipf", "--modo=" + modo.name());
+
+        ReporteCarga reporte = new GeneradorCarga(configuracion).ejecutar();
+
+        assertEquals(20000, reporte.getOperaciones());
+        //El 1% de las transferencias pide mas dinero del que existe
+        assertTrue(reporte.getRechazadas() > 0);
+        assertEquals(20000, reporte.getLatencias().getCantidad());
+        assertEquals(new BigDecimal("200000"), reporte.getSaldoInicial());
+        assertTrue(reporte.isSaldoConservado(), reporte::toString);
+    }
+
+    @Test
+    void testLazoAbiertoConTasa() throws Exception {
+        ConfiguracionCarga configuracion = new ConfiguracionCarga();
+        configuracion.setCuentas(100);
+        configuracion.setHilos(2);
+        configuracion.setTasa(20_000);
+        configuracion.setOperaciones(2_000);
+        configuracion.setCalentamiento(0);
+        configuracion.setFraccionInsuficientes(1);
+        configuracion.setModo(ModoEjecucion.SERVICIO);
+
+        ReporteCarga reporte = new GeneradorCarga(configuracion).ejecutar();
+
+        assertEquals(2_000, reporte.getRechazadas());
+        //A 20000 ops/s las 2000 operaciones no pueden terminar antes de ~0.1 s
+        assertTrue(reporte.getSegundos() >= 0.09, reporte::toString);
+        assertTrue(reporte.isSaldoConservado());
+    }
+
+    @Test
+    void testPuntoCalienteConcentraLasOperaciones() {
+        SelectorCuentas selector = new SelectorCuentas(DistribucionAcceso.PUNTO_CALIENTE, 1000, 1.0);
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        int calientes = 0;
+        for (int i = 0; i < 100_000; i++) {
+            int cuenta = selector.siguiente(aleatorio);
+            assertTrue(cuenta >= 0 && cuenta < 1000);
+            if (cuenta < 10) {
+                calientes++;
+            }
+        }
+        assertEquals(0.9, calientes / 100_000.0, 0.01);
+    }
+
+    @Test
+    void testZipfPrefiereLasPrimerasCuentas() {
+        SelectorCuentas selector = new SelectorCuentas(DistribucionAcceso.ZIPF, 1000, 1.0);
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        int[] conteos = new int[1000];
+        for (int i = 0; i < 100_000; i++) {
+            conteos[selector.siguiente(aleatorio)]++;
+        }
+        assertTrue(conteos[0] > conteos[1]);
+        assertTrue(conteos[1] > conteos[100]);
+        //Con exponente 1 la primera cuenta recibe 1/H(1000), cerca del 13%
+        assertEquals(0.134, conteos[0] / 100_000.0, 0.01);
+    }
+
+    @Test
+    void testArgumentosInvalidos() {
+        assertThrows(IllegalArgumentException.class, () -> ConfiguracionCarga.desdeArgumentos("--cuentas=diez"));
+        assertThrows(IllegalArgumentException.class, () -> ConfiguracionCarga.desdeArgumentos("--modo=otro"));
+        assertThrows(IllegalArgumentException.class, () -> ConfiguracionCarga.desdeArgumentos("--desconocida=1"));
+        assertThrows(IllegalArgumentException.class, () -> ConfiguracionCarga.desdeArgumentos("--hilos=0"));
+        assertThrows(IllegalArgumentException.class, () -> ConfiguracionCarga.desdeArgumentos("cuentas"));
+    }
+}
@@ -0,0 +1,89 @@
+package org.cano.junitapp.ejemplo.temporizador;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("temporizador")
+class RuedaTemporizadoresTest {
+    //Reloj manual en milisegundos, la rueda usa ticks de 1 ms
+    AtomicLong ahora;
+
+    @BeforeEach
+    void initMetodoTest() {
+        ahora = new AtomicLong();
+    }
+
+    RuedaTemporizadores rueda(int niveles) {
+        return new RuedaTemporizadores(1, TimeUnit.MILLISECONDS, niveles, () -> TimeUnit.MILLISECONDS.toNanos(ahora.get()));
+    }
+
+    void avanzarA(RuedaTemporizadores rueda, long milis) {
+        ahora.set(milis);
+        rueda.avanzar();
+    }
+
+    @Test
+    void testCadaTemporizadorSeEjecutaEnSuTick() {
+        RuedaTemporizadores rueda = rueda(3);
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        int total = 100_000;
+        long[] vencen = new long[total];
+        long[] ejecutados = new long[total];
+        for (int i = 0; i < total; i++) {
+            int indice = i;
+            vencen[i] = aleatorio.nextLong(0, 300_000);
+            rueda.programar(vencen[i], TimeUnit.MILLISECONDS, () -> ejecutados[indice] = ahora.get());
+        }
+        //Se avanza en pasos de 1 ms para ver el tick exacto de cada uno
+        for (long t = 1; t <= 300_000; t++) {
+            avanzarA(rueda, t);
+        }
+        for (int i = 0; i < total; i++) {
+            assertEquals(Math.max(vencen[i], 1), ejecutados[i], "temporizador " + i);
+        }
+    }
+
+    @Test
+    void testCancelarYAvanzarVariosTicks() {
+        RuedaTemporizadores rueda = rueda(2);
+        AtomicInteger ejecutados = new AtomicInteger();
+        List<Temporizador> temporizadores = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            temporizadores.add(rueda.programar(i * 10L, TimeUnit.MILLISECONDS, ejecutados::incrementAndGet));
+        }
+        avanzarA(rueda, 2500);
+        assertEquals(250, ejecutados.get());
+        for (Temporizador t : temporizadores) {
+            t.cancelar();
+        }
+        assertTrue(temporizadores.get(0).isEjecutado());
+        assertFalse(temporizadores.get(0).cancelar());
+        assertTrue(temporizadores.get(999).isCancelado());
+        //10000 ms esta fuera del alcance de 2 niveles (4096 ticks) y se reacomoda
+        avanzarA(rueda, 20_000);
+        assertEquals(250, ejecutados.get());
+    }
+
+    @Test
+    void testFueraDelAlcance() {
+        RuedaTemporizadores rueda = rueda(1);
+        AtomicLong ejecutado = new AtomicLong(-1);
+        rueda.programar(200, TimeUnit.MILLISECONDS, () -> ejecutado.set(ahora.get()));
+        for (long t = 1; t <= 199; t++) {
+            avanzarA(rueda, t);
+        }
+        assertEquals(-1, ejecutado.get());
+        avanzarA(rueda, 200);
+        assertEquals(200, ejecutado.get());
+    }
+}